@@ -52,7 +52,7 @@ public class CLDFCognateClusteringIWDSC {
                 System.err.print("Attempting to load existing global correspondence model from " + args[0]
                         + "-global-iw.corr ... ");
                 globalCorrModel = CorrespondenceModelStorage.deserializeCorrespondenceModel(
-                        new ObjectInputStream(new FileInputStream(args[0] + "-global-iw.corr")));
+                        new ObjectInputStream(new FileInputStream(args[0] + "-global-iw.corr")), CorrespondenceModelInference.DENSE_GLOBAL_MODEL);
                 System.err.print(
                         "done.\nStage 1: Global sound correspondences - skipped because previously inferred model was found. Delete model file and rerun to cause re-inference.\n");
             } catch (FileNotFoundException e) {
@@ -1,16 +1,20 @@
 package de.jdellert.iwsa;
 
-import de.jdellert.iwsa.align.InformationWeightedSequenceAlignment;
-import de.jdellert.iwsa.align.PhoneticStringAlignment;
+import de.jdellert.iwsa.align.AlignmentCache;
+import de.jdellert.iwsa.align.QueryProfile;
+import de.jdellert.iwsa.align.SelfSimilarityTable;
+import de.jdellert.iwsa.cluster.CondensedDistanceMatrix;
 import de.jdellert.iwsa.cluster.FlatClustering;
 import de.jdellert.iwsa.corrmodel.CorrespondenceModel;
 import de.jdellert.iwsa.corrmodel.CorrespondenceModelInference;
 import de.jdellert.iwsa.corrmodel.CorrespondenceModelStorage;
+import de.jdellert.iwsa.corrmodel.MergedCorrespondenceModel;
 import de.jdellert.iwsa.data.CLDFExport;
 import de.jdellert.iwsa.data.CLDFImport;
 import de.jdellert.iwsa.data.LexicalDatabase;
 import de.jdellert.iwsa.infomodel.InformationModel;
 import de.jdellert.iwsa.infomodel.InformationModelInference;
+import de.jdellert.iwsa.infomodel.InformationModelStorage;
 import de.jdellert.iwsa.sequence.PhoneticString;
 import de.jdellert.iwsa.sequence.PhoneticSymbolTable;
 
@@ -19,14 +23,25 @@ import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.ObjectInputStream;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.TreeMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 public class CognateClusteringIWDSC {
     public static final double THRESHOLD = 0.75;
     public static final double MAX_DIST_VAL = 1.5;
+    // number of concepts clustered at the same time
+    public static int NUM_THREADS = Runtime.getRuntime().availableProcessors();
+    // capacity of the cache for the distances of form pairs which recur across concepts, 0 disables it;
+    // on wordlists with few recurring pairs, the cache costs more than the alignments it saves
+    public static int DISTANCE_CACHE_CAPACITY = 0;
 
     public static void main(String[] args) {
         try {
@@ -35,145 +50,361 @@ public class CognateClusteringIWDSC {
             LexicalDatabase database = CLDFImport.loadDatabase(args[0], true);
             PhoneticSymbolTable symbolTable = database.getSymbolTable();
 
-            InformationModel[] infoModels = InformationModelInference.inferInformationModels(database, symbolTable);
-
-            // default: assume all languages are relevant, and part of the inference
-            String[] relevantLangCodes = database.getLanguageCodes();
-            int[] relevantLangIDs = new int[database.getNumLanguages()];
-            for (int i = 0; i < relevantLangIDs.length; i++) {
-                relevantLangIDs[i] = i;
-            }
+            InformationModel[] infoModels = loadOrInferInformationModels(database, args[0]);
 
             // interpret additional arguments as language IDs
-            if (args.length > 2) {
-                relevantLangCodes = new String[args.length - 2];
-                relevantLangIDs = new int[args.length - 2];
-                for (int i = 2; i < args.length; i++) {
-                    int langID = database.getIDForLanguageCode(args[i]);
-                    if (langID == -1) {
-                        System.err.println("ERROR: language code " + args[i] + " does not occur in database!");
-                        System.exit(1);
+            int[] relevantLangIDs = getRelevantLangIDs(database, args, 2);
+
+            CorrespondenceModel globalCorrModel = loadOrInferGlobalModel(database, args[0], infoModels);
+            CorrespondenceModel[][] localCorrModels = MergedCorrespondenceModel.compile(database, relevantLangIDs,
+                    loadOrInferLocalModels(database, args[0], relevantLangIDs, globalCorrModel, infoModels),
+                    globalCorrModel);
+            database.cacheInformationContents(infoModels);
+            SelfSimilarityTable selfSimilarities = new SelfSimilarityTable(database, globalCorrModel,
+                    SelfSimilarityTable.selfSimModels(localCorrModels), infoModels);
+            AlignmentCache<Double> distanceCache = createDistanceCache();
+
+            // the concepts are clustered concurrently, but their cognate sets are stored in concept order
+            ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, NUM_THREADS));
+            List<Future<List<List<Integer>>>> cognateSetsPerConcept = new ArrayList<Future<List<List<Integer>>>>();
+            for (int conceptID = 0; conceptID < database.getNumConcepts(); conceptID++) {
+                int concept = conceptID;
+                cognateSetsPerConcept.add(executor.submit(() -> clusterConcept(database, concept, relevantLangIDs,
+                        globalCorrModel, localCorrModels, infoModels, selfSimilarities, distanceCache)));
+            }
+            executor.shutdown();
+            try {
+                for (Future<List<List<Integer>>> cognateSets : cognateSetsPerConcept) {
+                    // store cluster IDs in database
+                    for (List<Integer> cognateSetFormIDs : cognateSets.get()) {
+                        database.addCognateSet(cognateSetFormIDs);
                     }
-                    relevantLangCodes[i - 2] = args[i];
-                    relevantLangIDs[i - 2] = langID;
                 }
+            } catch (InterruptedException | ExecutionException e) {
+                executor.shutdownNow();
+                throw new RuntimeException("clustering a concept failed", e);
             }
 
-            Map<String, Integer> relevantLangToID = new TreeMap<String, Integer>();
-            for (int langID = 0; langID < relevantLangIDs.length; langID++) {
-                relevantLangToID.put(relevantLangCodes[langID], relevantLangIDs[langID]);
+            if (distanceCache != null)
+                System.err.println("Distance cache: " + distanceCache);
+
+            // CLDF output (without header by default)
+            CLDFExport.exportToFile(database, resultFileName, false);
+
+        } catch (IOException e) {
+            // TODO Auto-generated catch block
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * @param firstLangArg the position of the first language code among the
+     *                     arguments; without language codes, all languages are
+     *                     relevant
+     * @return the IDs of the relevant languages
+     */
+    static int[] getRelevantLangIDs(LexicalDatabase database, String[] args, int firstLangArg) {
+        // default: assume all languages are relevant, and part of the inference
+        int[] relevantLangIDs = new int[database.getNumLanguages()];
+        for (int i = 0; i < relevantLangIDs.length; i++) {
+            relevantLangIDs[i] = i;
+        }
+
+        if (args.length > firstLangArg) {
+            relevantLangIDs = new int[args.length - firstLangArg];
+            for (int i = firstLangArg; i < args.length; i++) {
+                int langID = database.getIDForLanguageCode(args[i]);
+                if (langID == -1) {
+                    System.err.println("ERROR: language code " + args[i] + " does not occur in database!");
+                    System.exit(1);
+                }
+                relevantLangIDs[i - firstLangArg] = langID;
             }
+        }
+        return relevantLangIDs;
+    }
 
-            CorrespondenceModel globalCorrModel = null;
-            try {
-                System.err.print("Attempting to load existing global correspondence model from " + args[0]
-                        + "-global-iw.corr ... ");
-                globalCorrModel = CorrespondenceModelStorage.deserializeCorrespondenceModel(
-                        new ObjectInputStream(new FileInputStream(args[0] + "-global-iw.corr")));
+    /**
+     * Loads the information models stored next to the database, or infers and
+     * stores them if there are none. Only the models of languages missing from the
+     * stored ones, e.g. languages added to the database since, are inferred, so
+     * that forms added to the other languages do not change the models by which
+     * the correspondence models and distances were computed.
+     *
+     * @return the models of all languages of the database
+     */
+    static InformationModel[] loadOrInferInformationModels(LexicalDatabase database, String dbFileName)
+            throws IOException {
+        Map<String, Integer> langToID = new TreeMap<String, Integer>();
+        for (int langID = 0; langID < database.getNumLanguages(); langID++) {
+            langToID.put(database.getLanguageCode(langID), langID);
+        }
+
+        InformationModel[] infoModels = null;
+        try {
+            System.err.print("Attempting to load existing information models from " + dbFileName
+                    + "-info-iw.models ... ");
+            infoModels = InformationModelStorage.deserializeInformationModels(
+                    new ObjectInputStream(new FileInputStream(dbFileName + "-info-iw.models")), langToID);
+            if (!hasSymbols(infoModels, database.getSymbolTable())) {
+                // the trigram IDs of the stored models refer to other symbols
+                System.err.print(" symbol table has changed, need to reinfer information models.\n");
+                infoModels = null;
+            } else {
+                System.err.print("done.\n");
+            }
+        } catch (FileNotFoundException e) {
+            System.err.print(" file not found, need to infer information models first.\n");
+        } catch (IOException e) {
+            System.err.print(" format error, need to reinfer information models.\n");
+        } catch (ClassNotFoundException e) {
+            e.printStackTrace();
+            System.exit(0);
+        }
+        if (infoModels == null) {
+            System.err.print("Stage 0: Inference of information models for each language\n");
+            infoModels = InformationModelInference.inferInformationModels(database, database.getSymbolTable());
+            InformationModelStorage.serializeInformationModelsToFile(infoModels, database.getLanguageCodes(),
+                    database.getSymbolTable(), dbFileName + "-info-iw.models");
+        } else {
+            int numMissing = InformationModelInference.countMissingInformationModels(database, infoModels);
+            if (numMissing == 0) {
                 System.err.print(
-                        "done.\nStage 1: Global sound correspondences - skipped because previously inferred model was found. Delete model file and rerun to cause re-inference.\n");
-            } catch (FileNotFoundException e) {
-                System.err.print(" file not found, need to infer global model first.\n");
-            } catch (IOException e) {
-                System.err.print(" format error, need to reinfer global model.\n");
-            } catch (ClassNotFoundException e) {
-                e.printStackTrace();
-                System.exit(0);
+                        "Stage 0: Information models - skipped because previously inferred models were found. Delete model file and rerun to cause re-inference.\n");
+            } else {
+                System.err.print("Stage 0: Inference of the " + numMissing
+                        + " information models missing from the previously inferred models\n");
+                infoModels = InformationModelInference.inferMissingInformationModels(database,
+                        database.getSymbolTable(), infoModels);
+                InformationModelStorage.serializeInformationModelsToFile(infoModels, database.getLanguageCodes(),
+                        database.getSymbolTable(), dbFileName + "-info-iw.models");
             }
+        }
+        return infoModels;
+    }
 
-            if (globalCorrModel == null) {
-                System.err.print("Stage 1: Inference of global PMI scores\n");
-                globalCorrModel = CorrespondenceModelInference.inferGlobalCorrespondenceModel(database, symbolTable,
-                        infoModels);
-                CorrespondenceModelStorage.serializeGlobalModelToFile(globalCorrModel, args[0] + "-global-iw.corr");
+    private static boolean hasSymbols(InformationModel[] infoModels, PhoneticSymbolTable symbolTable) {
+        for (InformationModel infoModel : infoModels) {
+            if (infoModel == null)
+                continue;
+            PhoneticSymbolTable storedSymbolTable = infoModel.getSymbolTable();
+            if (storedSymbolTable.getSize() != symbolTable.getSize())
+                return false;
+            for (int i = 0; i < symbolTable.getSize(); i++) {
+                if (!symbolTable.toSymbol(i).equals(storedSymbolTable.toSymbol(i)))
+                    return false;
             }
+        }
+        return true;
+    }
 
-            CorrespondenceModel[][] localCorrModels = null;
-            try {
-                System.err.print("Attempting to load existing local correspondence models from " + args[0]
-                        + "-local-iw.corr ... ");
-                localCorrModels = CorrespondenceModelStorage.deserializeCorrespondenceModels(
-                        new ObjectInputStream(new FileInputStream(args[0] + "-local-iw.corr")), relevantLangToID);
+    /**
+     * Loads the global correspondence model stored next to the database, or infers
+     * and stores it if there is none.
+     */
+    static CorrespondenceModel loadOrInferGlobalModel(LexicalDatabase database, String dbFileName,
+            InformationModel[] infoModels) throws IOException {
+        CorrespondenceModel globalCorrModel = null;
+        try {
+            System.err.print("Attempting to load existing global correspondence model from " + dbFileName
+                    + "-global-iw.corr ... ");
+            globalCorrModel = CorrespondenceModelStorage.deserializeCorrespondenceModel(
+                    new ObjectInputStream(new FileInputStream(dbFileName + "-global-iw.corr")), CorrespondenceModelInference.DENSE_GLOBAL_MODEL);
+            System.err.print(
+                    "done.\nStage 1: Global sound correspondences - skipped because previously inferred model was found. Delete model file and rerun to cause re-inference.\n");
+        } catch (FileNotFoundException e) {
+            System.err.print(" file not found, need to infer global model first.\n");
+        } catch (IOException e) {
+            System.err.print(" format error, need to reinfer global model.\n");
+        } catch (ClassNotFoundException e) {
+            e.printStackTrace();
+            System.exit(0);
+        }
+
+        if (globalCorrModel == null) {
+            System.err.print("Stage 1: Inference of global PMI scores\n");
+            globalCorrModel = CorrespondenceModelInference.inferGlobalCorrespondenceModel(database, database.getSymbolTable(),
+                    infoModels);
+            CorrespondenceModelStorage.serializeGlobalModelToFile(globalCorrModel, dbFileName + "-global-iw.corr");
+        }
+        return globalCorrModel;
+    }
+
+    /**
+     * Loads the local correspondence models stored next to the database, or infers
+     * and stores them if there are none. Models missing from the stored ones, e.g.
+     * for languages added to the database since, are inferred and stored as well.
+     *
+     * @return the models of the pairs of relevant languages
+     */
+    static CorrespondenceModel[][] loadOrInferLocalModels(LexicalDatabase database, String dbFileName,
+            int[] relevantLangIDs, CorrespondenceModel globalCorrModel, InformationModel[] infoModels)
+            throws IOException {
+        // the models of all languages are loaded, so that they are kept when the file is completed
+        Map<String, Integer> langToID = new TreeMap<String, Integer>();
+        for (int langID = 0; langID < database.getNumLanguages(); langID++) {
+            langToID.put(database.getLanguageCode(langID), langID);
+        }
+
+        CorrespondenceModel[][] localCorrModels = null;
+        try {
+            System.err.print("Attempting to load existing local correspondence models from " + dbFileName
+                    + "-local-iw.corr ... ");
+            localCorrModels = CorrespondenceModelStorage.deserializeCorrespondenceModels(
+                    new ObjectInputStream(new FileInputStream(dbFileName + "-local-iw.corr")), langToID);
+            System.err.print("done.\n");
+        } catch (FileNotFoundException e) {
+            System.err.print(" file not found, need to infer pairwise correspondence models first.\n");
+        } catch (IOException e) {
+            System.err.print(" format error, need to reinfer pairwise correspondence models.\n");
+        } catch (ClassNotFoundException e) {
+            e.printStackTrace();
+            System.exit(0);
+        }
+        if (localCorrModels == null) {
+            System.err.print("Stage 2: Inference of sound correspondence matrices for each language pair\n");
+            localCorrModels = CorrespondenceModelInference.inferLocalCorrespondenceModels(database, database.getSymbolTable(),
+                    relevantLangIDs, globalCorrModel, infoModels);
+            CorrespondenceModelStorage.serializeLocalModelsToFile(localCorrModels, database.getLanguageCodes(),
+                    database.getSymbolTable(), dbFileName + "-local-iw.corr");
+        } else {
+            int numMissing = CorrespondenceModelInference.countMissingLocalCorrespondenceModels(localCorrModels,
+                    relevantLangIDs);
+            if (numMissing == 0) {
                 System.err.print(
-                        "done.\nStage 2: Pairwise sound correspondences - skipped because previously inferred models were found. Delete model file and rerun to cause re-inference.\n");
-
-            } catch (FileNotFoundException e) {
-                System.err.print(" file not found, need to infer pairwise correspondence models first.\n");
-            } catch (IOException e) {
-                System.err.print(" format error, need to reinfer pairwise correspondence models.\n");
-            } catch (ClassNotFoundException e) {
-                e.printStackTrace();
-                System.exit(0);
-            }
-            if (localCorrModels == null) {
-                System.err.print("Stage 2: Inference of sound correspondence matrices for each language pair\n");
-                localCorrModels = CorrespondenceModelInference.inferLocalCorrespondenceModels(database, symbolTable,
-                        relevantLangIDs, globalCorrModel, infoModels);
+                        "Stage 2: Pairwise sound correspondences - skipped because previously inferred models were found. Delete model file and rerun to cause re-inference.\n");
+            } else {
+                System.err.print("Stage 2: Inference of the " + numMissing
+                        + " sound correspondence matrices missing from the previously inferred models\n");
+                localCorrModels = CorrespondenceModelInference.inferMissingLocalCorrespondenceModels(database,
+                        database.getSymbolTable(), relevantLangIDs, globalCorrModel, infoModels, localCorrModels);
                 CorrespondenceModelStorage.serializeLocalModelsToFile(localCorrModels, database.getLanguageCodes(),
-                        symbolTable, args[0] + "-local-iw.corr");
+                        database.getSymbolTable(), dbFileName + "-local-iw.corr");
             }
+        }
 
-            for (int conceptID = 0; conceptID < database.getNumConcepts(); conceptID++) {
-                System.err.println("Clustering words for concept #" + conceptID + " (" + database.getConceptName(conceptID) + ")");
+        CorrespondenceModel[][] relevantCorrModels = new CorrespondenceModel[database.getNumLanguages()][database.getNumLanguages()];
+        for (int lang1ID : relevantLangIDs) {
+            for (int lang2ID : relevantLangIDs) {
+                relevantCorrModels[lang1ID][lang2ID] = localCorrModels[lang1ID][lang2ID];
+            }
+        }
+        return relevantCorrModels;
+    }
 
-                // build distance matrix
-                List<Integer> formIDs = database.getFormIDsForConcept(conceptID);
-                Map<Integer, Integer> formIDToIndex = new TreeMap<Integer, Integer>();
-                for (int index = 0; index < formIDs.size(); index++) {
-                    formIDToIndex.put(formIDs.get(index), index);
-                }
+    /**
+     * The distance between two forms by which they are clustered, with the same
+     * alignments as in the distance matrices of clusterConcept(). Of a pair of
+     * forms from the same language, the later form has to come first.
+     */
+    static double formDistance(LexicalDatabase database, int lang1FormID, int lang2FormID,
+            CorrespondenceModel globalCorrModel, CorrespondenceModel[][] localCorrModels, InformationModel[] infoModels,
+            SelfSimilarityTable selfSimilarities, AlignmentCache<Double> distanceCache) {
+        int lang1ID = database.getIDForLanguageCode(database.getLanguageCodeForForm(lang1FormID));
+        int lang2ID = database.getIDForLanguageCode(database.getLanguageCodeForForm(lang2FormID));
+        PhoneticString lang1Form = database.getForm(lang1FormID);
+        PhoneticString lang2Form = database.getForm(lang2FormID);
+        if (distanceCache == null) {
+            return clusteringDistance(QueryProfile.forCurrentThread().setQuery(lang1Form, globalCorrModel,
+                    localCorrModels[lang1ID][lang2ID], selfSimilarities.getSelfSimilarity(lang1FormID),
+                    database.getInformationContents(lang1FormID))
+                    .distance(lang2Form, selfSimilarities.getSelfSimilarity(lang2FormID), database.getInformationContents(lang2FormID)));
+        }
+        double localWeightDistance = distanceCache.get(lang1Form, lang2Form,
+                () -> QueryProfile.forCurrentThread().setQuery(lang1Form, globalCorrModel,
+                        localCorrModels[lang1ID][lang2ID], selfSimilarities.getSelfSimilarity(lang1FormID),
+                        database.getInformationContents(lang1FormID))
+                        .distance(lang2Form, selfSimilarities.getSelfSimilarity(lang2FormID), database.getInformationContents(lang2FormID)),
+                globalCorrModel, localCorrModels[lang1ID][lang2ID], localCorrModels[lang1ID][lang1ID], localCorrModels[lang2ID][lang2ID],
+                infoModels[lang1ID], infoModels[lang2ID]);
+        return clusteringDistance(localWeightDistance);
+    }
 
-                double[][] distanceMatrix = new double[formIDs.size()][formIDs.size()];
-
-                List<List<Integer>> formsPerLang = database.getFormIDsForConceptPerLanguage(conceptID);
-                for (int i = 0; i < relevantLangIDs.length; i++) {
-                    int lang1ID = relevantLangIDs[i];
-                    for (int j = i; j < relevantLangIDs.length; j++) {
-                        int lang2ID = relevantLangIDs[j];
-                        for (int lang1FormID : formsPerLang.get(lang1ID)) {
-                            int index1 = formIDToIndex.get(lang1FormID);
-                            PhoneticString lang1Form = database.getForm(lang1FormID);
-                            for (int lang2FormID : formsPerLang.get(lang2ID)) {
-                                int index2 = formIDToIndex.get(lang2FormID);
-                                PhoneticString lang2Form = database.getForm(lang2FormID);
-                                PhoneticStringAlignment localWeightsAlignment = InformationWeightedSequenceAlignment
-                                        .constructAlignment(lang1Form, lang2Form, globalCorrModel,
-                                                localCorrModels[lang1ID][lang2ID], localCorrModels[lang1ID][lang1ID],
-                                                localCorrModels[lang2ID][lang2ID], infoModels[lang1ID],
-                                                infoModels[lang2ID]);
-                                double localWeightDistance = localWeightsAlignment.normalizedDistanceScore;
-                                if (localWeightDistance < 0.0) localWeightDistance = 0.0;
-                                localWeightDistance *= localWeightDistance;
-                                if (localWeightDistance > MAX_DIST_VAL) localWeightDistance = MAX_DIST_VAL;
-                                localWeightDistance /= MAX_DIST_VAL;
-                                if (index1 == index2) localWeightDistance = 0.0;
-                                distanceMatrix[index1][index2] = localWeightDistance;
-                                distanceMatrix[index2][index1] = localWeightDistance;
-                            }
-                        }
-                    }
-                }
+    /**
+     * @return a cache for the distances of form pairs with DISTANCE_CACHE_CAPACITY
+     *         entries, or null if it is disabled
+     */
+    public static AlignmentCache<Double> createDistanceCache() {
+        return DISTANCE_CACHE_CAPACITY > 0 ? new AlignmentCache<>(DISTANCE_CACHE_CAPACITY) : null;
+    }
+
+    /**
+     * Squares an information-weighted distance, and scales it into [0,1] with
+     * MAX_DIST_VAL as the maximum.
+     */
+    private static double clusteringDistance(double localWeightDistance) {
+        if (localWeightDistance < 0.0) localWeightDistance = 0.0;
+        localWeightDistance *= localWeightDistance;
+        if (localWeightDistance > MAX_DIST_VAL) localWeightDistance = MAX_DIST_VAL;
+        localWeightDistance /= MAX_DIST_VAL;
+        return localWeightDistance;
+    }
+
+    /**
+     * Clusters the forms of one concept by UPGMA over their information-weighted
+     * distances. Safe to call concurrently for different concepts.
+     *
+     * @return the form IDs of each cognate set, the sets ordered by their smallest
+     *         form ID
+     */
+    private static List<List<Integer>> clusterConcept(LexicalDatabase database, int conceptID, int[] relevantLangIDs,
+            CorrespondenceModel globalCorrModel, CorrespondenceModel[][] localCorrModels, InformationModel[] infoModels,
+            SelfSimilarityTable selfSimilarities, AlignmentCache<Double> distanceCache) {
+        System.err.println("Clustering words for concept #" + conceptID + " (" + database.getConceptName(conceptID) + ")");
+
+        // build distance matrix
+        List<Integer> formIDs = database.getFormIDsForConcept(conceptID);
+        Map<Integer, Integer> formIDToIndex = new TreeMap<Integer, Integer>();
+        for (int index = 0; index < formIDs.size(); index++) {
+            formIDToIndex.put(formIDs.get(index), index);
+        }
 
-                // UPGMA clustering
-                Set<Set<Integer>> cognateSets = FlatClustering.upgma(distanceMatrix, THRESHOLD);
+        CondensedDistanceMatrix distanceMatrix = new CondensedDistanceMatrix(formIDs.size());
 
-                // store cluster IDs in database
-                for (Set<Integer> cognateSet : cognateSets) {
-                    List<Integer> cognateSetFormIDs = new ArrayList<Integer>(cognateSet.size());
-                    for (Integer index : cognateSet) {
-                        int formID = formIDs.get(index);
-                        cognateSetFormIDs.add(formID);
+        List<List<Integer>> formsPerLang = database.getFormIDsForConceptPerLanguage(conceptID);
+        for (int i = 0; i < relevantLangIDs.length; i++) {
+            int lang1ID = relevantLangIDs[i];
+            for (int j = i; j < relevantLangIDs.length; j++) {
+                int lang2ID = relevantLangIDs[j];
+                for (int lang1FormID : formsPerLang.get(lang1ID)) {
+                    int index1 = formIDToIndex.get(lang1FormID);
+                    PhoneticString lang1Form = database.getForm(lang1FormID);
+                    QueryProfile lang1Profile = QueryProfile.forCurrentThread().setQuery(lang1Form, globalCorrModel,
+                            localCorrModels[lang1ID][lang2ID], selfSimilarities.getSelfSimilarity(lang1FormID),
+                            database.getInformationContents(lang1FormID));
+                    for (int lang2FormID : formsPerLang.get(lang2ID)) {
+                        int index2 = formIDToIndex.get(lang2FormID);
+                        PhoneticString lang2Form = database.getForm(lang2FormID);
+                        CorrespondenceModel lang2SelfCorr = localCorrModels[lang2ID][lang2ID];
+                        double localWeightDistance;
+                        if (distanceCache == null) {
+                            localWeightDistance = lang1Profile.distance(lang2Form, selfSimilarities.getSelfSimilarity(lang2FormID), database.getInformationContents(lang2FormID));
+                        } else {
+                            localWeightDistance = distanceCache.get(lang1Form, lang2Form,
+                                    () -> lang1Profile.distance(lang2Form, selfSimilarities.getSelfSimilarity(lang2FormID), database.getInformationContents(lang2FormID)),
+                                    globalCorrModel, localCorrModels[lang1ID][lang2ID], localCorrModels[lang1ID][lang1ID], lang2SelfCorr,
+                                    infoModels[lang1ID], infoModels[lang2ID]);
+                        }
+                        if (index1 != index2)
+                            distanceMatrix.set(index1, index2, clusteringDistance(localWeightDistance));
                     }
-                    database.addCognateSet(cognateSetFormIDs);
                 }
             }
+        }
 
-            // CLDF output (without header by default)
-            CLDFExport.exportToFile(database, resultFileName, false);
+        // UPGMA clustering
+        Set<Set<Integer>> cognateSets = FlatClustering.upgma(distanceMatrix, THRESHOLD);
 
-        } catch (IOException e) {
-            // TODO Auto-generated catch block
-            e.printStackTrace();
+        List<List<Integer>> cognateSetFormIDs = new ArrayList<List<Integer>>(cognateSets.size());
+        for (Set<Integer> cognateSet : cognateSets) {
+            List<Integer> formIDsInSet = new ArrayList<Integer>(cognateSet.size());
+            for (Integer index : cognateSet) {
+                formIDsInSet.add(formIDs.get(index));
+            }
+            Collections.sort(formIDsInSet);
+            cognateSetFormIDs.add(formIDsInSet);
         }
+        cognateSetFormIDs.sort(Comparator.comparing(formIDsInSet -> formIDsInSet.get(0)));
+        return cognateSetFormIDs;
     }
 }
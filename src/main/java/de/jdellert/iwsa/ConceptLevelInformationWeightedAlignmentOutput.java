@@ -63,7 +63,7 @@ public class ConceptLevelInformationWeightedAlignmentOutput {
                 System.err.print("Attempting to load existing global correspondence model from " + args[0]
                         + "-global-iw.corr ... ");
                 globalCorrModel = CorrespondenceModelStorage
-                        .deserializeCorrespondenceModel(new ObjectInputStream(new FileInputStream(args[0] + "-global-iw.corr")));
+                        .deserializeCorrespondenceModel(new ObjectInputStream(new FileInputStream(args[0] + "-global-iw.corr")), CorrespondenceModelInference.DENSE_GLOBAL_MODEL);
                 System.err.print(
                         "done.\nStage 1: Global sound correspondences - skipped because previously inferred model was found. Delete model file and rerun to cause re-inference.\n");
             } catch (FileNotFoundException e) {
@@ -119,6 +119,7 @@ public class ConceptLevelInformationWeightedAlignmentOutput {
 
     public static void alignmentOutput(LexicalDatabase database, PhoneticSymbolTable symbolTable, int[] relevantLangIDs,
                                        CorrespondenceModel globalCorrModel, CorrespondenceModel[][] localCorrModels, InformationModel[] infoModels) {
+        database.cacheInformationContents(infoModels);
         for (int conceptID = 0; conceptID < database.getNumConcepts(); conceptID++) {
             List<List<Integer>> formsPerLang = database.getFormIDsForConceptPerLanguage(conceptID);
             for (int i = 0; i < relevantLangIDs.length; i++) {
@@ -132,8 +133,8 @@ public class ConceptLevelInformationWeightedAlignmentOutput {
                             PhoneticStringAlignment alignment = InformationWeightedSequenceAlignment
                                     .constructAlignment(lang1Form, lang2Form, globalCorrModel,
                                             localCorrModels[lang1ID][lang2ID], localCorrModels[lang1ID][lang1ID],
-                                            localCorrModels[lang2ID][lang2ID], infoModels[lang1ID],
-                                            infoModels[lang2ID]);
+                                            localCorrModels[lang2ID][lang2ID], database.getInformationContents(lang1FormID),
+                                            database.getInformationContents(lang2FormID));
                             double score = alignment.normalizedDistanceScore;
                             System.out.print(database.getConceptName(conceptID) + ",");
                             System.out.print(database.getLanguageCode(lang1ID) + ",");
@@ -63,7 +63,7 @@ public class ConceptLevelInformationWeightedEditDistanceOutput {
                 System.err.print("Attempting to load existing global correspondence model from " + args[0]
                         + "-global-iw.corr ... ");
                 globalCorrModel = CorrespondenceModelStorage
-                        .deserializeCorrespondenceModel(new ObjectInputStream(new FileInputStream(args[0] + "-global-iw.corr")));
+                        .deserializeCorrespondenceModel(new ObjectInputStream(new FileInputStream(args[0] + "-global-iw.corr")), CorrespondenceModelInference.DENSE_GLOBAL_MODEL);
                 System.err.print(
                         "done.\nStage 1: Global sound correspondences - skipped because previously inferred model was found. Delete model file and rerun to cause re-inference.\n");
             } catch (FileNotFoundException e) {
@@ -91,6 +91,7 @@ public class ConceptLevelInformationWeightedEditDistanceOutput {
 
     public static void distanceOutput(LexicalDatabase database, PhoneticSymbolTable symbolTable, int[] relevantLangIDs,
                                       CorrespondenceModel globalCorrModel, InformationModel[] infoModels) {
+        database.cacheInformationContents(infoModels);
         for (int conceptID = 0; conceptID < database.getNumConcepts(); conceptID++) {
             List<List<Integer>> formsPerLang = database.getFormIDsForConceptPerLanguage(conceptID);
             for (int lang1ID : relevantLangIDs) {
@@ -101,7 +102,7 @@ public class ConceptLevelInformationWeightedEditDistanceOutput {
                             PhoneticString lang2Form = database.getForm(lang2FormID);
                             PhoneticStringAlignment globalWeightsAlignment = InformationWeightedSequenceAlignment
                                     .constructAlignment(lang1Form, lang2Form, globalCorrModel, globalCorrModel,
-                                            globalCorrModel, globalCorrModel, infoModels[lang1ID], infoModels[lang2ID]);
+                                            globalCorrModel, globalCorrModel, database.getInformationContents(lang1FormID), database.getInformationContents(lang2FormID));
                             double globalWeightDistance = globalWeightsAlignment.normalizedDistanceScore;
                             if (ALIGNMENT_OUTPUT)
                                 System.out.println(PhoneticStringAlignmentOutput.iwsaToString(globalWeightsAlignment,
@@ -6,6 +6,7 @@ import de.jdellert.iwsa.align.PhoneticStringAlignmentOutput;
 import de.jdellert.iwsa.corrmodel.CorrespondenceModel;
 import de.jdellert.iwsa.corrmodel.CorrespondenceModelInference;
 import de.jdellert.iwsa.corrmodel.CorrespondenceModelStorage;
+import de.jdellert.iwsa.corrmodel.MergedCorrespondenceModel;
 import de.jdellert.iwsa.data.CLDFImport;
 import de.jdellert.iwsa.data.LexicalDatabase;
 import de.jdellert.iwsa.sequence.PhoneticString;
@@ -62,7 +63,7 @@ public class ConceptLevelWeightedEditDistanceOutput {
                 System.err.print("Attempting to load existing global correspondence model from " + args[0]
                         + "-global-nw.corr ... ");
                 globalCorrModel = CorrespondenceModelStorage
-                        .deserializeCorrespondenceModel(new ObjectInputStream(new FileInputStream(args[0] + "-global-nw.corr")));
+                        .deserializeCorrespondenceModel(new ObjectInputStream(new FileInputStream(args[0] + "-global-nw.corr")), CorrespondenceModelInference.DENSE_GLOBAL_MODEL);
                 System.err.print(
                         "done.\nStage 1: Global sound correspondences - skipped because previously inferred model was found. Delete model file and rerun to cause re-inference.\n");
             } catch (FileNotFoundException e) {
@@ -121,18 +122,17 @@ public class ConceptLevelWeightedEditDistanceOutput {
 
     public static void distanceOutput(LexicalDatabase database, PhoneticSymbolTable symbolTable, int lang1ID,
                                       int lang2ID, CorrespondenceModel globalCorrModel, CorrespondenceModel localCorrModel) {
+        localCorrModel = MergedCorrespondenceModel.compile(database, lang1ID, lang2ID, localCorrModel, globalCorrModel);
         for (int conceptID = 0; conceptID < database.getNumConcepts(); conceptID++) {
             List<List<Integer>> formsPerLang = database.getFormIDsForConceptPerLanguage(conceptID);
             for (int lang1FormID : formsPerLang.get(lang1ID)) {
                 PhoneticString lang1Form = database.getForm(lang1FormID);
                 for (int lang2FormID : formsPerLang.get(lang2ID)) {
                     PhoneticString lang2Form = database.getForm(lang2FormID);
-                    PhoneticStringAlignment globalWeightsAlignment = NeedlemanWunschAlgorithm
-                            .constructAlignment(lang1Form, lang2Form, globalCorrModel, globalCorrModel, globalCorrModel, globalCorrModel);
-                    double globalWeightDistance = globalWeightsAlignment.normalizedDistanceScore;
-                    PhoneticStringAlignment localWeightsAlignment = NeedlemanWunschAlgorithm
-                            .constructAlignment(lang1Form, lang2Form, globalCorrModel, localCorrModel, globalCorrModel, globalCorrModel);
-                    double localWeightDistance = localWeightsAlignment.normalizedDistanceScore;
+                    double globalWeightDistance = NeedlemanWunschAlgorithm
+                            .distanceOnly(lang1Form, lang2Form, globalCorrModel, globalCorrModel, globalCorrModel, globalCorrModel);
+                    double localWeightDistance = NeedlemanWunschAlgorithm
+                            .distanceOnly(lang1Form, lang2Form, globalCorrModel, localCorrModel, globalCorrModel, globalCorrModel);
                     double minDistance = Math.min(globalWeightDistance, localWeightDistance);
                     System.out.print(database.getConceptName(conceptID) + "\t");
                     System.out
@@ -156,12 +156,10 @@ public class ConceptLevelWeightedEditDistanceOutput {
                 PhoneticString form1 = new PhoneticString(symbolTable.encode(form1inCLDF.getSegments()));
                 for (CLDFForm form2inCLDF : formsByParamID.get(lang2)) {
                     PhoneticString form2 = new PhoneticString(symbolTable.encode(form2inCLDF.getSegments()));
-                    PhoneticStringAlignment globalWeightsAlignment = NeedlemanWunschAlgorithm
-                            .constructAlignment(form1, form2, globalCorrModel, globalCorrModel, globalCorrModel, globalCorrModel);
-                    double globalWeightDistance = globalWeightsAlignment.normalizedDistanceScore;
-                    PhoneticStringAlignment localWeightsAlignment = NeedlemanWunschAlgorithm
-                            .constructAlignment(form1, form2, globalCorrModel, localCorrModel, globalCorrModel, globalCorrModel);
-                    double localWeightDistance = localWeightsAlignment.normalizedDistanceScore;
+                    double globalWeightDistance = NeedlemanWunschAlgorithm
+                            .distanceOnly(form1, form2, globalCorrModel, globalCorrModel, globalCorrModel, globalCorrModel);
+                    double localWeightDistance = NeedlemanWunschAlgorithm
+                            .distanceOnly(form1, form2, globalCorrModel, localCorrModel, globalCorrModel, globalCorrModel);
                     double minDistance = Math.min(globalWeightDistance, localWeightDistance);
                     System.out.print(concept.getName() + "\t");
 
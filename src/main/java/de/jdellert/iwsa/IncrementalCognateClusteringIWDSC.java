@@ -0,0 +1,295 @@
+package de.jdellert.iwsa;
+
+import de.jdellert.iwsa.align.AlignmentCache;
+import de.jdellert.iwsa.align.SelfSimilarityTable;
+import de.jdellert.iwsa.cluster.IncrementalUPGMA;
+import de.jdellert.iwsa.corrmodel.CorrespondenceModel;
+import de.jdellert.iwsa.corrmodel.MergedCorrespondenceModel;
+import de.jdellert.iwsa.data.CLDFExport;
+import de.jdellert.iwsa.data.CLDFImport;
+import de.jdellert.iwsa.data.LexicalDatabase;
+import de.jdellert.iwsa.infomodel.InformationModel;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Incremental variant of CognateClusteringIWDSC, for databases to which forms
+ * have been added since the last run. The clusters of each concept are stored
+ * next to the database together with their average-linkage statistics, so that
+ * new forms only need to be aligned with the forms of their concept, and are
+ * then attached to or merged with the existing clusters (see IncrementalUPGMA).
+ * Without stored clusters, all forms are new, and the result is that of
+ * CognateClusteringIWDSC.
+ *
+ * Forms are recognized across runs by their ID column, or by language, concept
+ * and segments if there is none. If forms of a concept have been removed or
+ * changed, that concept is clustered from scratch. The clusters are stored with
+ * fingerprints of the models by which the distances were computed, and all
+ * forms are clustered from scratch if one of these models has changed. The
+ * information models are stored next to the database as well, and are only
+ * inferred for added languages, so that forms added to the other languages
+ * keep the models and are clustered incrementally. Forms of added languages
+ * only require the information model of the new language and the
+ * correspondence models of the new language pairs, which are inferred and
+ * stored with the others. To re-infer the models from all forms, delete the
+ * model files, which clusters all forms from scratch. The arguments are those
+ * of CognateClusteringIWDSC.
+ */
+public class IncrementalCognateClusteringIWDSC {
+
+    public static void main(String[] args) {
+        try {
+            String resultFileName = args[1];
+            String clustersFileName = args[0] + "-cognates-iw.clusters";
+
+            LexicalDatabase database = CLDFImport.loadDatabase(args[0], true);
+            InformationModel[] infoModels = CognateClusteringIWDSC.loadOrInferInformationModels(database, args[0]);
+
+            // interpret additional arguments as language IDs
+            int[] relevantLangIDs = CognateClusteringIWDSC.getRelevantLangIDs(database, args, 2);
+
+            CorrespondenceModel globalCorrModel = CognateClusteringIWDSC.loadOrInferGlobalModel(database, args[0],
+                    infoModels);
+            CorrespondenceModel[][] inferredLocalCorrModels = CognateClusteringIWDSC.loadOrInferLocalModels(database,
+                    args[0], relevantLangIDs, globalCorrModel, infoModels);
+            CorrespondenceModel[][] localCorrModels = MergedCorrespondenceModel.compile(database, relevantLangIDs,
+                    inferredLocalCorrModels, globalCorrModel);
+            database.cacheInformationContents(infoModels);
+            SelfSimilarityTable selfSimilarities = new SelfSimilarityTable(database, globalCorrModel,
+                    SelfSimilarityTable.selfSimModels(localCorrModels), infoModels);
+            AlignmentCache<Double> distanceCache = CognateClusteringIWDSC.createDistanceCache();
+
+            Map<String, Long> modelFingerprints = modelFingerprints(database, relevantLangIDs, globalCorrModel,
+                    inferredLocalCorrModels, infoModels);
+            Map<String, ConceptClusters> clustersPerConcept = loadClusters(clustersFileName, modelFingerprints);
+            for (int conceptID = 0; conceptID < database.getNumConcepts(); conceptID++) {
+                clustersPerConcept.computeIfAbsent(database.getConceptName(conceptID), concept -> new ConceptClusters());
+            }
+
+            // the concepts are updated concurrently, but their cognate sets are stored in concept order
+            ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, CognateClusteringIWDSC.NUM_THREADS));
+            List<Future<List<List<Integer>>>> cognateSetsPerConcept = new ArrayList<Future<List<List<Integer>>>>();
+            for (int conceptID = 0; conceptID < database.getNumConcepts(); conceptID++) {
+                int concept = conceptID;
+                ConceptClusters clusters = clustersPerConcept.get(database.getConceptName(conceptID));
+                cognateSetsPerConcept.add(executor.submit(() -> updateConcept(database, concept, clusters,
+                        relevantLangIDs, globalCorrModel, localCorrModels, infoModels, selfSimilarities,
+                        distanceCache)));
+            }
+            executor.shutdown();
+            try {
+                for (Future<List<List<Integer>>> cognateSets : cognateSetsPerConcept) {
+                    // store cluster IDs in database
+                    for (List<Integer> cognateSetFormIDs : cognateSets.get()) {
+                        database.addCognateSet(cognateSetFormIDs);
+                    }
+                }
+            } catch (InterruptedException | ExecutionException e) {
+                executor.shutdownNow();
+                throw new RuntimeException("clustering a concept failed", e);
+            }
+
+            if (distanceCache != null)
+                System.err.println("Distance cache: " + distanceCache);
+            saveClusters(clustersPerConcept, modelFingerprints, clustersFileName);
+
+            // CLDF output (without header by default)
+            CLDFExport.exportToFile(database, resultFileName, false);
+
+        } catch (IOException e) {
+            // TODO Auto-generated catch block
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Adds the new forms of one concept to its clusters. Safe to call concurrently
+     * for different concepts.
+     *
+     * @return the form IDs of each cognate set, the sets ordered by their smallest
+     *         form ID
+     */
+    private static List<List<Integer>> updateConcept(LexicalDatabase database, int conceptID,
+            ConceptClusters clusters, int[] relevantLangIDs, CorrespondenceModel globalCorrModel,
+            CorrespondenceModel[][] localCorrModels, InformationModel[] infoModels, SelfSimilarityTable selfSimilarities,
+            AlignmentCache<Double> distanceCache) {
+        // forms of the relevant languages in the order of the distance matrices of CognateClusteringIWDSC
+        List<Integer> formIDs = new ArrayList<Integer>();
+        List<String> formKeys = new ArrayList<String>();
+        Map<Integer, Integer> langPosition = new HashMap<Integer, Integer>();
+        Map<String, Integer> occurrences = new HashMap<String, Integer>();
+        for (int i = 0; i < relevantLangIDs.length; i++) {
+            langPosition.put(relevantLangIDs[i], i);
+            for (int formID : database.getFormIDsForLanguageAndConcept(relevantLangIDs[i], conceptID)) {
+                String key = formKey(database, formID);
+                int occurrence = occurrences.merge(key, 1, Integer::sum);
+                formIDs.add(formID);
+                formKeys.add(occurrence == 1 ? key : key + "\t" + occurrence);
+            }
+        }
+
+        Map<String, Integer> formIDForKey = new HashMap<String, Integer>();
+        for (int i = 0; i < formIDs.size(); i++) {
+            formIDForKey.put(formKeys.get(i), formIDs.get(i));
+        }
+        if (clusters.clustering != null && !formIDForKey.keySet().containsAll(clusters.formKeys)) {
+            System.err.println("Forms of concept #" + conceptID + " (" + database.getConceptName(conceptID)
+                    + ") have been removed or changed, clustering them from scratch");
+            clusters.clear();
+        }
+        if (clusters.clustering == null) {
+            clusters.clustering = new IncrementalUPGMA(CognateClusteringIWDSC.THRESHOLD);
+        }
+
+        // point number => form ID
+        List<Integer> pointFormIDs = new ArrayList<Integer>();
+        for (String key : clusters.formKeys) {
+            pointFormIDs.add(formIDForKey.get(key));
+        }
+        int numOldPoints = pointFormIDs.size();
+        Set<String> oldFormKeys = new HashSet<String>(clusters.formKeys);
+        for (int i = 0; i < formIDs.size(); i++) {
+            if (oldFormKeys.contains(formKeys.get(i)))
+                continue;
+            int formID = formIDs.get(i);
+            int langPos = langPosition.get(database.getIDForLanguageCode(database.getLanguageCodeForForm(formID)));
+            double[] distances = new double[pointFormIDs.size()];
+            for (int point = 0; point < distances.length; point++) {
+                int otherFormID = pointFormIDs.get(point);
+                int otherLangPos = langPosition
+                        .get(database.getIDForLanguageCode(database.getLanguageCodeForForm(otherFormID)));
+                // the orientation in which CognateClusteringIWDSC aligns the pair
+                boolean formFirst = langPos < otherLangPos || (langPos == otherLangPos && formID > otherFormID);
+                distances[point] = CognateClusteringIWDSC.formDistance(database, formFirst ? formID : otherFormID,
+                        formFirst ? otherFormID : formID, globalCorrModel, localCorrModels, infoModels,
+                        selfSimilarities, distanceCache);
+            }
+            clusters.clustering.addPoint(distances);
+            clusters.formKeys.add(formKeys.get(i));
+            pointFormIDs.add(formID);
+        }
+        System.err.println("Clustered " + (pointFormIDs.size() - numOldPoints) + " new and " + numOldPoints
+                + " previous forms for concept #" + conceptID + " (" + database.getConceptName(conceptID) + ")");
+        Set<Set<Integer>> cognateSets = clusters.clustering.fuse();
+
+        List<List<Integer>> cognateSetFormIDs = new ArrayList<List<Integer>>(cognateSets.size());
+        for (Set<Integer> cognateSet : cognateSets) {
+            List<Integer> formIDsInSet = new ArrayList<Integer>(cognateSet.size());
+            for (Integer point : cognateSet) {
+                formIDsInSet.add(pointFormIDs.get(point));
+            }
+            Collections.sort(formIDsInSet);
+            cognateSetFormIDs.add(formIDsInSet);
+        }
+        cognateSetFormIDs.sort(Comparator.comparing(formIDsInSet -> formIDsInSet.get(0)));
+        return cognateSetFormIDs;
+    }
+
+    private static String formKey(LexicalDatabase database, int formID) {
+        String id = database.getAnnotation("ID", formID);
+        if (!id.equals("?"))
+            return id;
+        return database.getLanguageCodeForForm(formID) + "\t" + database.getConceptNameForForm(formID) + "\t"
+                + database.getForm(formID).toString(database.getSymbolTable());
+    }
+
+    /**
+     * Fingerprints of the symbol table and of the models by which the distances
+     * between the forms of the relevant languages are computed, by model name.
+     */
+    static Map<String, Long> modelFingerprints(LexicalDatabase database, int[] relevantLangIDs,
+            CorrespondenceModel globalCorrModel, CorrespondenceModel[][] localCorrModels,
+            InformationModel[] infoModels) {
+        Map<String, Long> fingerprints = new TreeMap<String, Long>();
+        long symbolsFingerprint = 0;
+        for (int symbolID = 0; symbolID < database.getSymbolTable().getSize(); symbolID++) {
+            symbolsFingerprint = 31 * symbolsFingerprint + database.getSymbolTable().toSymbol(symbolID).hashCode();
+        }
+        fingerprints.put("symbol table", symbolsFingerprint);
+        fingerprints.put("global model", globalCorrModel.fingerprint());
+        for (int lang1ID : relevantLangIDs) {
+            String lang1 = database.getLanguageCode(lang1ID);
+            fingerprints.put("information model\t" + lang1, infoModels[lang1ID].fingerprint());
+            for (int lang2ID : relevantLangIDs) {
+                fingerprints.put("local model\t" + lang1 + "\t" + database.getLanguageCode(lang2ID),
+                        localCorrModels[lang1ID][lang2ID].fingerprint());
+            }
+        }
+        return fingerprints;
+    }
+
+    /**
+     * @return the stored clusters, or none if they were computed with models
+     *         other than the current ones; models of languages that were not
+     *         clustered before are not compared
+     */
+    @SuppressWarnings("unchecked")
+    private static Map<String, ConceptClusters> loadClusters(String fileName, Map<String, Long> modelFingerprints) {
+        try {
+            System.err.print("Attempting to load existing cognate clusters from " + fileName + " ... ");
+            ObjectInputStream inputStream = new ObjectInputStream(new FileInputStream(fileName));
+            Map<String, Long> storedFingerprints = (Map<String, Long>) inputStream.readObject();
+            Map<String, ConceptClusters> clustersPerConcept = (Map<String, ConceptClusters>) inputStream.readObject();
+            inputStream.close();
+            for (Map.Entry<String, Long> storedFingerprint : storedFingerprints.entrySet()) {
+                Long fingerprint = modelFingerprints.get(storedFingerprint.getKey());
+                if (fingerprint != null && !fingerprint.equals(storedFingerprint.getValue())) {
+                    System.err.print(" the " + storedFingerprint.getKey().replace('\t', ' ')
+                            + " has changed since, clustering all forms.\n");
+                    return new TreeMap<String, ConceptClusters>();
+                }
+            }
+            System.err.print("done.\n");
+            return clustersPerConcept;
+        } catch (FileNotFoundException e) {
+            System.err.print(" file not found, clustering all forms.\n");
+        } catch (IOException | ClassNotFoundException | ClassCastException e) {
+            System.err.print(" format error, clustering all forms.\n");
+        }
+        return new TreeMap<String, ConceptClusters>();
+    }
+
+    private static void saveClusters(Map<String, ConceptClusters> clustersPerConcept,
+            Map<String, Long> modelFingerprints, String fileName) throws IOException {
+        ObjectOutputStream outputStream = new ObjectOutputStream(new FileOutputStream(new File(fileName)));
+        outputStream.writeObject(modelFingerprints);
+        outputStream.writeObject(clustersPerConcept);
+        outputStream.close();
+    }
+
+    /**
+     * The clusters of one concept, with the keys of the forms in the order in
+     * which they were added as points.
+     */
+    private static class ConceptClusters implements Serializable {
+        private static final long serialVersionUID = 1L;
+
+        List<String> formKeys = new ArrayList<String>();
+        IncrementalUPGMA clustering = null;
+
+        void clear() {
+            formKeys = new ArrayList<String>();
+            clustering = null;
+        }
+    }
+}
@@ -0,0 +1,152 @@
+package de.jdellert.iwsa.align;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+import de.jdellert.iwsa.sequence.PhoneticString;
+
+/**
+ * Bounded memo cache for the results of aligning pairs of forms, for wordlists
+ * in which identical forms recur across languages and concepts. Entries are
+ * keyed by the contents of both forms and the identity of the models the
+ * result depends on (correspondence models, information models), so a result
+ * is only reused for an alignment that would compute exactly the same.
+ *
+ * The cache is split into segments with a lock and a least-recently-used
+ * eviction order each, so that many threads can use it at once. Results are
+ * computed outside the locks; if two threads miss the same key at the same
+ * time, both compute it. Null results (e.g. pairs rejected by a threshold) are
+ * cached as well.
+ */
+public class AlignmentCache<V> {
+	public static final int DEFAULT_CAPACITY = 1 << 16;
+
+	// stands for a cached null result
+	private static final Object NULL_RESULT = new Object();
+
+	private final Segment[] segments;
+	private final LongAdder hits = new LongAdder();
+	private final LongAdder misses = new LongAdder();
+	private final LongAdder evictions = new LongAdder();
+
+	public AlignmentCache() {
+		this(DEFAULT_CAPACITY);
+	}
+
+	/**
+	 * @param capacity the maximum number of cached results
+	 */
+	public AlignmentCache(int capacity) {
+		int numSegments = Integer.highestOneBit(Math.max(1, Runtime.getRuntime().availableProcessors()) * 4);
+		while (numSegments > 1 && capacity / numSegments < 16) {
+			numSegments /= 2;
+		}
+		segments = new Segment[numSegments];
+		for (int i = 0; i < numSegments; i++) {
+			int segmentCapacity = capacity / numSegments + (i < capacity % numSegments ? 1 : 0);
+			segments[i] = new Segment(Math.max(1, segmentCapacity), evictions);
+		}
+	}
+
+	/**
+	 * Returns the cached result for the pair of forms under the given models, or
+	 * computes and caches it on a miss.
+	 *
+	 * @param alignment computes the result for the pair
+	 * @param models    the models the result depends on, compared by identity
+	 */
+	@SuppressWarnings("unchecked")
+	public V get(PhoneticString str1, PhoneticString str2, Supplier<? extends V> alignment, Object... models) {
+		Key key = new Key(str1.segments, str2.segments, models);
+		Segment segment = segments[(key.hash ^ (key.hash >>> 16)) & (segments.length - 1)];
+		Object cached = segment.get(key);
+		if (cached != null) {
+			hits.increment();
+			return cached == NULL_RESULT ? null : (V) cached;
+		}
+		misses.increment();
+		V result = alignment.get();
+		segment.put(key, result == null ? NULL_RESULT : result);
+		return result;
+	}
+
+	public long getHits() {
+		return hits.sum();
+	}
+
+	public long getMisses() {
+		return misses.sum();
+	}
+
+	public long getEvictions() {
+		return evictions.sum();
+	}
+
+	public String toString() {
+		return getHits() + " hits, " + getMisses() + " misses, " + getEvictions() + " evictions";
+	}
+
+	private static final class Segment {
+		private final LinkedHashMap<Key, Object> entries;
+
+		Segment(int capacity, LongAdder evictions) {
+			entries = new LinkedHashMap<Key, Object>(16, 0.75f, true) {
+				private static final long serialVersionUID = 1L;
+
+				protected boolean removeEldestEntry(Map.Entry<Key, Object> eldest) {
+					if (size() > capacity) {
+						evictions.increment();
+						return true;
+					}
+					return false;
+				}
+			};
+		}
+
+		synchronized Object get(Key key) {
+			return entries.get(key);
+		}
+
+		synchronized void put(Key key, Object value) {
+			entries.put(key, value);
+		}
+	}
+
+	private static final class Key {
+		final int[] segments1;
+		final int[] segments2;
+		final Object[] models;
+		final int hash;
+
+		Key(int[] segments1, int[] segments2, Object[] models) {
+			this.segments1 = segments1;
+			this.segments2 = segments2;
+			this.models = models;
+			int hash = 31 * Arrays.hashCode(segments1) + Arrays.hashCode(segments2);
+			for (Object model : models) {
+				hash = 31 * hash + System.identityHashCode(model);
+			}
+			this.hash = hash;
+		}
+
+		public int hashCode() {
+			return hash;
+		}
+
+		public boolean equals(Object obj) {
+			if (!(obj instanceof Key))
+				return false;
+			Key other = (Key) obj;
+			if (hash != other.hash || models.length != other.models.length)
+				return false;
+			for (int i = 0; i < models.length; i++) {
+				if (models[i] != other.models[i])
+					return false;
+			}
+			return Arrays.equals(segments1, other.segments1) && Arrays.equals(segments2, other.segments2);
+		}
+	}
+}
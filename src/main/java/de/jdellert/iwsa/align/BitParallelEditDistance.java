@@ -0,0 +1,123 @@
+package de.jdellert.iwsa.align;
+
+import java.util.Arrays;
+
+import de.jdellert.iwsa.sequence.PhoneticString;
+
+/**
+ * Bit-parallel computation of the edit distance (Myers 1999, in the formulation
+ * by Hyyrö 2001) between one query string and any number of target strings. A
+ * column of the edit distance matrix is represented by bit vectors of the
+ * vertical differences between neighbouring cells, which for queries of up to
+ * 64 segments fit into a single long, so that each target segment is processed
+ * with a constant number of word operations.
+ *
+ * The match masks of the query are computed once by setQuery(). Longer queries,
+ * or queries with undefined symbols, fall back to the rolling-row computation
+ * of LevenshteinAlignmentAlgorithm.distanceOnly().
+ *
+ * Instances are not thread-safe; forCurrentThread() provides one per thread.
+ */
+public class BitParallelEditDistance {
+	public static final int MAX_QUERY_LENGTH = 64;
+
+	private static final ThreadLocal<BitParallelEditDistance> INSTANCE_PER_THREAD = ThreadLocal
+			.withInitial(BitParallelEditDistance::new);
+
+	// symbol ID => bit i is set iff the query has that symbol at position i
+	private long[] matchMasks = new long[0];
+	private PhoneticString query;
+	private boolean bitParallel;
+
+	public static BitParallelEditDistance forCurrentThread() {
+		return INSTANCE_PER_THREAD.get();
+	}
+
+	/**
+	 * Precomputes the match masks for a new query string.
+	 *
+	 * @return this object, for computing distances to the query
+	 */
+	public BitParallelEditDistance setQuery(PhoneticString query) {
+		if (this.query != null && bitParallel) {
+			for (int symbol : this.query.segments) {
+				matchMasks[symbol] = 0;
+			}
+		}
+		this.query = query;
+		int[] segments = query.segments;
+		bitParallel = segments.length <= MAX_QUERY_LENGTH;
+		int maxSymbol = 0;
+		for (int symbol : segments) {
+			if (symbol < 0) {
+				bitParallel = false;
+			}
+			maxSymbol = Math.max(maxSymbol, symbol);
+		}
+		if (bitParallel) {
+			if (matchMasks.length <= maxSymbol) {
+				matchMasks = Arrays.copyOf(matchMasks, Math.max(maxSymbol + 1, 2 * matchMasks.length));
+			}
+			for (int i = 0; i < segments.length; i++) {
+				matchMasks[segments[i]] |= 1L << i;
+			}
+		}
+		return this;
+	}
+
+	/**
+	 * @return the edit distance between the query and the target
+	 */
+	public int editDistance(PhoneticString target) {
+		int m = query.segments.length;
+		if (!bitParallel) {
+			return LevenshteinAlignmentAlgorithm.editDistance(query, target);
+		}
+		if (m == 0) {
+			return target.segments.length;
+		}
+		long[] matchMasks = this.matchMasks;
+		long lastBit = 1L << (m - 1);
+		// vertical differences: +1 everywhere in the first column
+		long positive = -1L;
+		long negative = 0L;
+		int distance = m;
+		for (int symbol : target.segments) {
+			long match = symbol >= 0 && symbol < matchMasks.length ? matchMasks[symbol] : 0L;
+			long xv = match | negative;
+			long xh = (((match & positive) + positive) ^ positive) | match;
+			long horizontalPositive = negative | ~(xh | positive);
+			long horizontalNegative = positive & xh;
+			if ((horizontalPositive & lastBit) != 0) {
+				distance++;
+			} else if ((horizontalNegative & lastBit) != 0) {
+				distance--;
+			}
+			// the first row of the matrix grows by one in every column
+			horizontalPositive = (horizontalPositive << 1) | 1L;
+			horizontalNegative <<= 1;
+			positive = horizontalNegative | ~(xv | horizontalPositive);
+			negative = horizontalPositive & xv;
+		}
+		return distance;
+	}
+
+	/**
+	 * @return the normalized edit distance, defined as in
+	 *         LevenshteinAlignmentAlgorithm.constructAlignment()
+	 */
+	public double normalizedDistance(PhoneticString target) {
+		return (double) editDistance(target) / Math.max(query.segments.length, target.segments.length);
+	}
+
+	/**
+	 * Computes the normalized edit distances of the query to a batch of targets.
+	 *
+	 * @param distances receives the distance to targets[i] at position i
+	 */
+	public void normalizedDistances(PhoneticString[] targets, double[] distances) {
+		for (int i = 0; i < targets.length; i++) {
+			distances[i] = normalizedDistance(targets[i]);
+		}
+	}
+}
@@ -13,6 +13,30 @@ public class InformationWeightedSequenceAlignment extends PhoneticStringAlignmen
 	public static PhoneticStringAlignment constructAlignment(PhoneticString str1, PhoneticString str2, CorrespondenceModel gloCorrModel,
 			CorrespondenceModel locCorrModel, CorrespondenceModel selfSimModel1, CorrespondenceModel selfSimModel2,
 			InformationModel infoModel1, InformationModel infoModel2) {
+		return constructAlignment(str1, str2, gloCorrModel, locCorrModel, selfSimModel1, selfSimModel2,
+				infoModel1.informationContents(str1.segments), infoModel2.informationContents(str2.segments));
+	}
+
+	/**
+	 * Variant of constructAlignment() for precomputed information content vectors
+	 * (see InformationModel.informationContents()), which avoids recomputing the
+	 * information content of each position once per matrix cell.
+	 */
+	public static PhoneticStringAlignment constructAlignment(PhoneticString str1, PhoneticString str2, CorrespondenceModel gloCorrModel,
+			CorrespondenceModel locCorrModel, CorrespondenceModel selfSimModel1, CorrespondenceModel selfSimModel2,
+			double[] infoContents1, double[] infoContents2) {
+		return constructAlignment(str1, str2, gloCorrModel, locCorrModel,
+				selfSimilarity(str1, gloCorrModel, selfSimModel1, infoContents1),
+				selfSimilarity(str2, gloCorrModel, selfSimModel2, infoContents2), infoContents1, infoContents2);
+	}
+
+	/**
+	 * Variant of constructAlignment() for precomputed self-similarities of the two
+	 * strings (see selfSimilarity() and SelfSimilarityTable).
+	 */
+	public static PhoneticStringAlignment constructAlignment(PhoneticString str1, PhoneticString str2, CorrespondenceModel gloCorrModel,
+			CorrespondenceModel locCorrModel, double str1SelfSimilarity, double str2SelfSimilarity,
+			double[] infoContents1, double[] infoContents2) {
 		int m = str1.getLength() + 1;
 		int n = str2.getLength() + 1;
 
@@ -22,22 +46,22 @@ public class InformationWeightedSequenceAlignment extends PhoneticStringAlignmen
 		mtx[0][0] = 0;
 		for (int i = 1; i < m; i++) {
 			mtx[i][0] = mtx[i - 1][0]
-					+ getCorrespondenceScore(gloCorrModel, locCorrModel, str1.segments[i - 1], 1) * getMeanInfoScore(str1, str1, i - 1, i - 1, infoModel1, infoModel1);
+					+ getCorrespondenceScore(gloCorrModel, locCorrModel, str1.segments[i - 1], 1) * getMeanInfoScore(infoContents1[i - 1], infoContents1[i - 1]);
 			aSubst[i][0] = str1.segments[i - 1];
 			bSubst[i][0] = 1; // corresponds to gap symbol
 		}
 		for (int j = 1; j < n; j++) {
 			mtx[0][j] = mtx[0][j - 1]
-					+ getCorrespondenceScore(gloCorrModel, locCorrModel, 1, str2.segments[j - 1]) * getMeanInfoScore(str2, str2, j - 1, j - 1, infoModel2, infoModel2);
+					+ getCorrespondenceScore(gloCorrModel, locCorrModel, 1, str2.segments[j - 1]) * getMeanInfoScore(infoContents2[j - 1], infoContents2[j - 1]);
 			aSubst[0][j] = 1; // corresponds to gap symbol
 			bSubst[0][j] = str2.segments[j - 1];
 		}
 		for (int i = 1; i < m; i++) {
 			for (int j = 1; j < n; j++) {
 				double matchValue = mtx[i - 1][j - 1] + getCorrespondenceScore(gloCorrModel, locCorrModel, str1.segments[i - 1], str2.segments[j - 1])
-						* getMeanInfoScore(str1, str2, i - 1, j - 1, infoModel1, infoModel2);
-				double insertionValue = mtx[i][j - 1] + getCorrespondenceScore(gloCorrModel, locCorrModel, 1, str2.segments[j - 1]) * getMeanInfoScore(str2, str2, j - 1, j - 1, infoModel2, infoModel2);
-				double deletionValue = mtx[i - 1][j] + getCorrespondenceScore(gloCorrModel, locCorrModel, str1.segments[i - 1], 1) * getMeanInfoScore(str1, str1, i - 1, i - 1, infoModel1, infoModel1);
+						* getMeanInfoScore(infoContents1[i - 1], infoContents2[j - 1]);
+				double insertionValue = mtx[i][j - 1] + getCorrespondenceScore(gloCorrModel, locCorrModel, 1, str2.segments[j - 1]) * getMeanInfoScore(infoContents2[j - 1], infoContents2[j - 1]);
+				double deletionValue = mtx[i - 1][j] + getCorrespondenceScore(gloCorrModel, locCorrModel, str1.segments[i - 1], 1) * getMeanInfoScore(infoContents1[i - 1], infoContents1[i - 1]);
 				mtx[i][j] = Math.max(matchValue, Math.max(insertionValue, deletionValue));
 
 				if (insertionValue > matchValue) {
@@ -87,15 +111,6 @@ public class InformationWeightedSequenceAlignment extends PhoneticStringAlignmen
 		}
 
 		double similarityScore = mtx[m - 1][n - 1];
-		double str1SelfSimilarity = 0.0;
-		for (i = 0; i < str1.getLength(); i++) {
-			str1SelfSimilarity += getCorrespondenceScore(gloCorrModel, selfSimModel1, str1.segments[i], str1.segments[i]) * getMeanInfoScore(str1, str1, i, i, infoModel1, infoModel1);
-		}
-		double str2SelfSimilarity = 0.0;
-		for (j = 0; j < str2.getLength(); j++) {
-			str2SelfSimilarity += getCorrespondenceScore(gloCorrModel, selfSimModel2, str2.segments[j], str2.segments[j]) * getMeanInfoScore(str2, str2, j, j, infoModel2, infoModel2);
-		}
-		
 		if (NEW_DISTANCE_TRANSFORMATION)
 		{
 			similarityScore /= result1.size();
@@ -114,6 +129,113 @@ public class InformationWeightedSequenceAlignment extends PhoneticStringAlignmen
 		return alignment;
 	}
 
+	/**
+	 * Computes the same normalized distance as constructAlignment() using two
+	 * rolling rows instead of the full matrix and backpointers. The alignment
+	 * length for NEW_DISTANCE_TRANSFORMATION is tracked in the rows as well.
+	 */
+	public static double distanceOnly(PhoneticString str1, PhoneticString str2, CorrespondenceModel gloCorrModel,
+			CorrespondenceModel locCorrModel, CorrespondenceModel selfSimModel1, CorrespondenceModel selfSimModel2,
+			InformationModel infoModel1, InformationModel infoModel2) {
+		return distanceOnly(str1, str2, gloCorrModel, locCorrModel, selfSimModel1, selfSimModel2,
+				infoModel1.informationContents(str1.segments), infoModel2.informationContents(str2.segments));
+	}
+
+	public static double distanceOnly(PhoneticString str1, PhoneticString str2, CorrespondenceModel gloCorrModel,
+			CorrespondenceModel locCorrModel, CorrespondenceModel selfSimModel1, CorrespondenceModel selfSimModel2,
+			double[] infoContents1, double[] infoContents2) {
+		return distanceOnly(str1, str2, gloCorrModel, locCorrModel,
+				selfSimilarity(str1, gloCorrModel, selfSimModel1, infoContents1),
+				selfSimilarity(str2, gloCorrModel, selfSimModel2, infoContents2), infoContents1, infoContents2);
+	}
+
+	/**
+	 * Variant of distanceOnly() for precomputed self-similarities of the two
+	 * strings.
+	 */
+	public static double distanceOnly(PhoneticString str1, PhoneticString str2, CorrespondenceModel gloCorrModel,
+			CorrespondenceModel locCorrModel, double str1SelfSimilarity, double str2SelfSimilarity,
+			double[] infoContents1, double[] infoContents2) {
+		int m = str1.getLength() + 1;
+		int n = str2.getLength() + 1;
+
+		// gap costs only depend on one position, so they are computed once
+		double[] deletionScores = new double[m];
+		for (int i = 1; i < m; i++) {
+			deletionScores[i] = getCorrespondenceScore(gloCorrModel, locCorrModel, str1.segments[i - 1], 1) * getMeanInfoScore(infoContents1[i - 1], infoContents1[i - 1]);
+		}
+		double[] insertionScores = new double[n];
+		for (int j = 1; j < n; j++) {
+			insertionScores[j] = getCorrespondenceScore(gloCorrModel, locCorrModel, 1, str2.segments[j - 1]) * getMeanInfoScore(infoContents2[j - 1], infoContents2[j - 1]);
+		}
+
+		double[] prevScores = new double[n];
+		double[] scores = new double[n];
+		int[] prevLengths = new int[n];
+		int[] lengths = new int[n];
+		for (int j = 1; j < n; j++) {
+			prevScores[j] = prevScores[j - 1] + insertionScores[j];
+			prevLengths[j] = j;
+		}
+		for (int i = 1; i < m; i++) {
+			scores[0] = prevScores[0] + deletionScores[i];
+			lengths[0] = i;
+			for (int j = 1; j < n; j++) {
+				double matchValue = prevScores[j - 1] + getCorrespondenceScore(gloCorrModel, locCorrModel, str1.segments[i - 1], str2.segments[j - 1])
+						* getMeanInfoScore(infoContents1[i - 1], infoContents2[j - 1]);
+				double insertionValue = scores[j - 1] + insertionScores[j];
+				double deletionValue = prevScores[j] + deletionScores[i];
+
+				if (insertionValue > matchValue) {
+					if (deletionValue > insertionValue) {
+						scores[j] = deletionValue;
+						lengths[j] = prevLengths[j] + 1;
+					} else {
+						scores[j] = insertionValue;
+						lengths[j] = lengths[j - 1] + 1;
+					}
+				} else {
+					if (deletionValue > matchValue) {
+						scores[j] = deletionValue;
+						lengths[j] = prevLengths[j] + 1;
+					} else {
+						scores[j] = matchValue;
+						lengths[j] = prevLengths[j - 1] + 1;
+					}
+				}
+			}
+			double[] swapScores = prevScores;
+			prevScores = scores;
+			scores = swapScores;
+			int[] swapLengths = prevLengths;
+			prevLengths = lengths;
+			lengths = swapLengths;
+		}
+
+		double similarityScore = prevScores[n - 1];
+		if (NEW_DISTANCE_TRANSFORMATION)
+		{
+			similarityScore /= prevLengths[n - 1];
+			str1SelfSimilarity /= m - 1;
+			str2SelfSimilarity /= n - 1;
+		}
+
+		return 1 - (2 * similarityScore) / (str1SelfSimilarity + str2SelfSimilarity);
+	}
+
+	/**
+	 * @return the information-weighted self-similarity of the string, by which the
+	 *         alignment scores are normalized
+	 */
+	public static double selfSimilarity(PhoneticString str, CorrespondenceModel gloCorrModel,
+			CorrespondenceModel selfSimModel, double[] infoContents) {
+		double selfSimilarity = 0.0;
+		for (int i = 0; i < str.getLength(); i++) {
+			selfSimilarity += getCorrespondenceScore(gloCorrModel, selfSimModel, str.segments[i], str.segments[i]) * getMeanInfoScore(infoContents[i], infoContents[i]);
+		}
+		return selfSimilarity;
+	}
+
 	public static double getInfoScore(PhoneticString str, int pos, InformationModel infoModel) {
 		return infoModel.informationContent(str.segments, pos);
 	}
@@ -125,26 +247,31 @@ public class InformationWeightedSequenceAlignment extends PhoneticStringAlignmen
 		return Math.sqrt((infoContent1 * infoContent1 + infoContent2 * infoContent2) / 2);
 	}
 	
+	public static double getMeanInfoScore(double infoContent1, double infoContent2) {
+		return Math.sqrt((infoContent1 * infoContent1 + infoContent2 * infoContent2) / 2);
+	}
+	
 	public static double getCorrespondenceScore(CorrespondenceModel gloCorrModel, CorrespondenceModel locCorrModel,
 			int ci, int cj) {
-		Double score = locCorrModel.getScoreOrNull(ci, cj);
-		if (score == null) {
-			score = gloCorrModel.getScoreOrNull(ci, cj);
-		}
-		if (score == null) {
-			score = 0.0;
-		}
-		return score;
+		return locCorrModel.getScoreOrFallback(ci, cj, gloCorrModel);
 	}
 	
 	public static double[] combinedInfoScoresForAlignment(PhoneticStringAlignment alignment, InformationModel infoModel1, InformationModel infoModel2)
+	{
+		return combinedInfoScoresForAlignment(alignment,
+				infoModel1.informationContents(alignment.str1.copyWithoutGaps().segments),
+				infoModel2.informationContents(alignment.str2.copyWithoutGaps().segments));
+	}
+
+	/**
+	 * Variant of combinedInfoScoresForAlignment() for precomputed information
+	 * content vectors of the two (gap-free) aligned strings.
+	 */
+	public static double[] combinedInfoScoresForAlignment(PhoneticStringAlignment alignment, double[] infoContents1, double[] infoContents2)
 	{
 		int pos1 = -1;
 		int pos2 = -1;
 
-		PhoneticString str1Reduced = alignment.str1.copyWithoutGaps();
-		PhoneticString str2Reduced = alignment.str2.copyWithoutGaps();
-		
 		double[] infoScores = new double[alignment.getLength()];
 		
 		for (int pos = 0; pos < alignment.getLength(); pos++)
@@ -157,15 +284,15 @@ public class InformationWeightedSequenceAlignment extends PhoneticStringAlignmen
 
 			if (symb1 == 1)
 			{
-				infoScores[pos] = InformationWeightedSequenceAlignment.getMeanInfoScore(str2Reduced, str2Reduced, pos2, pos2, infoModel2, infoModel2);
+				infoScores[pos] = getMeanInfoScore(infoContents2[pos2], infoContents2[pos2]);
 			}
 			else if (symb2 == 1)
 			{
-				infoScores[pos] = InformationWeightedSequenceAlignment.getMeanInfoScore(str1Reduced, str1Reduced, pos1, pos1, infoModel1, infoModel1);
+				infoScores[pos] = getMeanInfoScore(infoContents1[pos1], infoContents1[pos1]);
 			}
 			else
 			{
-				infoScores[pos] =  InformationWeightedSequenceAlignment.getMeanInfoScore(str1Reduced, str2Reduced, pos1, pos2, infoModel1, infoModel2);	
+				infoScores[pos] = getMeanInfoScore(infoContents1[pos1], infoContents2[pos2]);
 			}
 		}
 		
@@ -1,120 +1,232 @@
 package de.jdellert.iwsa.align;
 
-import java.util.LinkedList;
-import java.util.List;
+import java.util.Arrays;
 
 import de.jdellert.iwsa.sequence.PhoneticString;
 
 public class LevenshteinAlignmentAlgorithm {
+	/**
+	 * Returned by distanceWithinThreshold() for pairs beyond the threshold. Being
+	 * infinite, it fails every "distance <= threshold" test.
+	 */
+	public static final double REJECTED = Double.POSITIVE_INFINITY;
+
+	// for single comparisons; kept apart from BitParallelEditDistance.forCurrentThread(),
+	// whose query a caller may be iterating over
+	private static final ThreadLocal<BitParallelEditDistance> BIT_PARALLEL_PER_THREAD = ThreadLocal
+			.withInitial(BitParallelEditDistance::new);
+
 	public static double computeNormalizedEditDistance(PhoneticString str1, PhoneticString str2) {
+		return distanceOnly(str1, str2);
+	}
+
+	/**
+	 * Computes the normalized edit distance of constructAlignment() without
+	 * building the alignment, bit-parallel if str1 is short enough.
+	 */
+	public static double distanceOnly(PhoneticString str1, PhoneticString str2) {
+		return BIT_PARALLEL_PER_THREAD.get().setQuery(str1).normalizedDistance(str2);
+	}
+
+	/**
+	 * Computes the (unnormalized) edit distance with two rolling rows of the edit
+	 * distance matrix.
+	 */
+	public static int editDistance(PhoneticString str1, PhoneticString str2) {
 		int m = str1.getLength() + 1;
 		int n = str2.getLength() + 1;
 
-		int[][] mtx = new int[m][n];
-		mtx[0][0] = 0;
-		for (int i = 1; i < m; i++) {
-			mtx[i][0] = mtx[i - 1][0] + 1;
-		}
+		int[] prevRow = new int[n];
+		int[] row = new int[n];
 		for (int j = 1; j < n; j++) {
-			mtx[0][j] = mtx[0][j - 1] + 1;
+			prevRow[j] = j;
 		}
 		for (int i = 1; i < m; i++) {
+			row[0] = i;
+			int symbol1 = str1.segments[i - 1];
 			for (int j = 1; j < n; j++) {
-				int matchValue = mtx[i - 1][j - 1];
-				if (str1.segments[i-1] != str2.segments[j-1])
+				int matchValue = prevRow[j - 1];
+				if (symbol1 != str2.segments[j - 1])
 					matchValue++;
-				int insertionValue = mtx[i][j - 1] + 1;
-				int deletionValue = mtx[i - 1][j] + 1;
-				mtx[i][j] = Math.min(matchValue, Math.min(insertionValue, deletionValue));
+				int insertionValue = row[j - 1] + 1;
+				int deletionValue = prevRow[j] + 1;
+				row[j] = Math.min(matchValue, Math.min(insertionValue, deletionValue));
+			}
+			int[] swap = prevRow;
+			prevRow = row;
+			row = swap;
+		}
+		return prevRow[n - 1];
+	}
+
+	/**
+	 * Computes the normalized edit distance like distanceOnly(), but only if it is
+	 * at most maxDistance. Strings short enough for the bit-parallel computation
+	 * are compared in full, which is faster than any pruning. Otherwise, the
+	 * threshold limits the number of edit operations, so only a diagonal band of
+	 * that width is filled, and the computation stops as soon as a whole row
+	 * exceeds the limit.
+	 *
+	 * @return the normalized edit distance, or REJECTED if it exceeds maxDistance
+	 */
+	public static double distanceWithinThreshold(PhoneticString str1, PhoneticString str2, double maxDistance) {
+		int len1 = str1.getLength();
+		int len2 = str2.getLength();
+		int maxLength = Math.max(len1, len2);
+		if (maxLength == 0 || len1 <= BitParallelEditDistance.MAX_QUERY_LENGTH) {
+			double distance = distanceOnly(str1, str2);
+			return distance <= maxDistance ? distance : REJECTED;
+		}
+		// the largest edit distance which passes, tested in the same way as the result
+		int maxEdits = (int) Math.max(-1, Math.min(maxLength, Math.floor(maxDistance * maxLength)));
+		while (maxEdits < maxLength && (double) (maxEdits + 1) / maxLength <= maxDistance)
+			maxEdits++;
+		while (maxEdits >= 0 && (double) maxEdits / maxLength > maxDistance)
+			maxEdits--;
+		if (maxEdits < 0 || Math.abs(len1 - len2) > maxEdits)
+			return REJECTED;
+
+		// cells outside the band hold maxEdits + 1, which stands for any larger value
+		int outside = maxEdits + 1;
+		int[] prevRow = new int[len2 + 1];
+		int[] row = new int[len2 + 1];
+		for (int j = 0; j <= len2; j++) {
+			prevRow[j] = Math.min(j, outside);
+		}
+		for (int i = 1; i <= len1; i++) {
+			int from = Math.max(1, i - maxEdits);
+			int to = Math.min(len2, i + maxEdits);
+			row[0] = Math.min(i, outside);
+			row[from - 1] = from == 1 ? row[0] : outside;
+			int rowMin = row[from - 1];
+			int symbol1 = str1.segments[i - 1];
+			for (int j = from; j <= to; j++) {
+				int matchValue = prevRow[j - 1];
+				if (symbol1 != str2.segments[j - 1])
+					matchValue++;
+				int insertionValue = row[j - 1] + 1;
+				int deletionValue = prevRow[j] + 1;
+				int value = Math.min(outside, Math.min(matchValue, Math.min(insertionValue, deletionValue)));
+				row[j] = value;
+				rowMin = Math.min(rowMin, value);
 			}
+			if (to < len2)
+				row[to + 1] = outside;
+			if (rowMin > maxEdits)
+				return REJECTED;
+			int[] swap = prevRow;
+			prevRow = row;
+			row = swap;
 		}
-		return (double) mtx[m - 1][n - 1] / Math.max(m - 1, n - 1);
+		if (prevRow[len2] > maxEdits)
+			return REJECTED;
+		return (double) prevRow[len2] / maxLength;
 	}
 
 	public static PhoneticStringAlignment constructAlignment(PhoneticString str1, PhoneticString str2) {
+		return traceBack(editDistanceMatrix(str1, str2), str1, str2, false);
+	}
+
+	/**
+	 * Aligns a pair of strings in both orientations, filling the edit distance
+	 * matrix only once. The edit distance matrix of (str2, str1) is the transpose
+	 * of the one for (str1, str2), but the preference of insertions over deletions
+	 * makes the second alignment more than a mirror image of the first, so it is
+	 * traced back separately.
+	 *
+	 * @return the results of constructAlignment(str1, str2) and
+	 *         constructAlignment(str2, str1)
+	 */
+	public static PhoneticStringAlignment[] constructAlignments(PhoneticString str1, PhoneticString str2) {
+		int[][] mtx = editDistanceMatrix(str1, str2);
+		return new PhoneticStringAlignment[] { traceBack(mtx, str1, str2, false), traceBack(mtx, str2, str1, true) };
+	}
+
+	private static int[][] editDistanceMatrix(PhoneticString str1, PhoneticString str2) {
 		int m = str1.getLength() + 1;
 		int n = str2.getLength() + 1;
 
 		int[][] mtx = new int[m][n];
-		int[][] aSubst = new int[m][n];
-		int[][] bSubst = new int[m][n];
-		mtx[0][0] = 0;
 		for (int i = 1; i < m; i++) {
 			mtx[i][0] = mtx[i - 1][0] + 1;
-			aSubst[i][0] = str1.segments[i - 1];
-			bSubst[i][0] = 1; // corresponds to gap symbol
 		}
 		for (int j = 1; j < n; j++) {
 			mtx[0][j] = mtx[0][j - 1] + 1;
-			aSubst[0][j] = 1; // corresponds to gap symbol
-			bSubst[0][j] = str2.segments[j - 1];
 		}
 		for (int i = 1; i < m; i++) {
 			for (int j = 1; j < n; j++) {
-
 				int matchValue = mtx[i - 1][j - 1];
-				if (str1.segments[i-1] != str2.segments[j-1])
+				if (str1.segments[i - 1] != str2.segments[j - 1])
 					matchValue++;
 				int insertionValue = mtx[i][j - 1] + 1;
 				int deletionValue = mtx[i - 1][j] + 1;
 				mtx[i][j] = Math.min(matchValue, Math.min(insertionValue, deletionValue));
-
-				if (insertionValue < matchValue) {
-					if (deletionValue < insertionValue) {
-						mtx[i][j] = deletionValue;
-						aSubst[i][j] = str1.segments[i - 1];
-						bSubst[i][j] = 1;
-					} else {
-						mtx[i][j] = insertionValue;
-						aSubst[i][j] = 1;
-						bSubst[i][j] = str2.segments[j - 1];
-					}
-				} else {
-					if (deletionValue < matchValue) {
-						mtx[i][j] = deletionValue;
-						aSubst[i][j] = str1.segments[i - 1];
-						bSubst[i][j] = 1;
-					} else {
-						mtx[i][j] = matchValue;
-						aSubst[i][j] = str1.segments[i - 1];
-						bSubst[i][j] = str2.segments[j - 1];
-					}
-				}
 			}
 		}
+		return mtx;
+	}
 
-		double alignmentScore = mtx[m - 1][n - 1];
-		double normalizedAlignmentScore = alignmentScore / Math.max(m - 1, n - 1);
-
-		// build the alignment from the backpointer substrings
+	/**
+	 * Reconstructs the alignment of str1 and str2 from their edit distance matrix,
+	 * or from its transpose if the matrix was filled for (str2, str1). Among
+	 * operations of equal cost, a match is preferred to the others, and an
+	 * insertion to a deletion.
+	 */
+	private static PhoneticStringAlignment traceBack(int[][] mtx, PhoneticString str1, PhoneticString str2,
+			boolean transposed) {
+		int m = str1.getLength() + 1;
+		int n = str2.getLength() + 1;
 		int i = m - 1;
 		int j = n - 1;
-		List<Integer> result1 = new LinkedList<Integer>();
-		List<Integer> result2 = new LinkedList<Integer>();
+		int[] result1 = new int[i + j];
+		int[] result2 = new int[i + j];
+		int pos = result1.length;
 		while (i > 0 || j > 0) {
-			int aPart = aSubst[i][j];
-			int bPart = bSubst[i][j];
-			result1.add(0, aPart);
-			result2.add(0, bPart);
-			if (aPart != 1)
-				i--;
-			if (bPart != 1)
-				j--;
-			if (aPart == 1 && bPart == 1) {
+			boolean deletion;
+			boolean insertion;
+			if (i == 0) {
+				deletion = false;
+				insertion = true;
+			} else if (j == 0) {
+				deletion = true;
+				insertion = false;
+			} else {
+				int matchValue = cell(mtx, i - 1, j - 1, transposed);
+				if (str1.segments[i - 1] != str2.segments[j - 1])
+					matchValue++;
+				int insertionValue = cell(mtx, i, j - 1, transposed) + 1;
+				int deletionValue = cell(mtx, i - 1, j, transposed) + 1;
+				if (insertionValue < matchValue) {
+					deletion = deletionValue < insertionValue;
+					insertion = !deletion;
+				} else {
+					deletion = deletionValue < matchValue;
+					insertion = false;
+				}
+			}
+			pos--;
+			result1[pos] = insertion ? 1 : str1.segments[i - 1]; // 1 corresponds to gap symbol
+			result2[pos] = deletion ? 1 : str2.segments[j - 1];
+			if (!insertion)
 				i--;
+			if (!deletion)
 				j--;
-			}
-			if (i < 0 || j < 0)
-				break;
 		}
 
+		double alignmentScore = cell(mtx, m - 1, n - 1, transposed);
+		double normalizedAlignmentScore = alignmentScore / Math.max(m - 1, n - 1);
+
 		PhoneticStringAlignment alignment = new PhoneticStringAlignment();
-		alignment.str1 = new PhoneticString(result1.stream().mapToInt(Integer::intValue).toArray());
-		alignment.str2 = new PhoneticString(result2.stream().mapToInt(Integer::intValue).toArray());
+		alignment.str1 = new PhoneticString(Arrays.copyOfRange(result1, pos, result1.length));
+		alignment.str2 = new PhoneticString(Arrays.copyOfRange(result2, pos, result2.length));
 		alignment.alignmentScore = alignmentScore;
 		alignment.normalizedDistanceScore = normalizedAlignmentScore;
 
 		return alignment;
 	}
 
+	private static int cell(int[][] mtx, int i, int j, boolean transposed) {
+		return transposed ? mtx[j][i] : mtx[i][j];
+	}
+
 }
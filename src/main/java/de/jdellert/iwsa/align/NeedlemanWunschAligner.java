@@ -0,0 +1,532 @@
+package de.jdellert.iwsa.align;
+
+import java.util.Arrays;
+
+import de.jdellert.iwsa.corrmodel.CorrespondenceModel;
+import de.jdellert.iwsa.sequence.PhoneticString;
+import de.jdellert.iwsa.sequence.PhoneticSymbolTable;
+
+/**
+ * Reusable variant of {@link NeedlemanWunschAlgorithm} which keeps its dynamic
+ * programming matrix, backpointers and traceback buffers between calls, growing
+ * them only when a longer pair of strings comes along. The result of the last
+ * call to align() can be read from the aligner directly, so aligning many pairs
+ * does not create any garbage unless toAlignment() is called.
+ *
+ * Instances are not thread-safe; forCurrentThread() provides one aligner per
+ * thread. The results are only valid until the next call to align().
+ */
+public class NeedlemanWunschAligner {
+	private static final ThreadLocal<NeedlemanWunschAligner> ALIGNER_PER_THREAD = ThreadLocal
+			.withInitial(NeedlemanWunschAligner::new);
+
+	// backpointer values
+	private static final byte MATCH = 0;
+	private static final byte INSERTION = 1;
+	private static final byte DELETION = 2;
+
+	// flat m x n scratch buffers, cell (i,j) is at index i * n + j
+	private double[] mtx = new double[0];
+	private byte[] backpointers = new byte[0];
+
+	// rolling rows for distanceOnly(): scores and lengths of the best paths
+	private double[] scoreRow1 = new double[0];
+	private double[] scoreRow2 = new double[0];
+	private int[] lengthRow1 = new int[0];
+	private int[] lengthRow2 = new int[0];
+
+	// traceback buffers, of which the first alignmentLength positions are valid
+	private int[] alignedSymbols1 = new int[0];
+	private int[] alignedSymbols2 = new int[0];
+	private int alignmentLength;
+
+	// upper bounds for alignWithinThreshold(): per symbol (NaN if not yet computed) and per suffix
+	private CorrespondenceModel boundsGloCorrModel;
+	private CorrespondenceModel boundsLocCorrModel;
+	private double[] symbol1Bounds = new double[0];
+	private double[] symbol2Bounds = new double[0];
+	private double[] suffixBounds1 = new double[0];
+	private double[] suffixBounds2 = new double[0];
+
+	private double alignmentScore;
+	private double normalizedDistanceScore;
+
+	public static NeedlemanWunschAligner forCurrentThread() {
+		return ALIGNER_PER_THREAD.get();
+	}
+
+	/**
+	 * Aligns two phonetic strings exactly like
+	 * NeedlemanWunschAlgorithm.constructAlignment(), but stores the result in this
+	 * aligner.
+	 *
+	 * @return this aligner, for reading the result
+	 */
+	public NeedlemanWunschAligner align(PhoneticString str1, PhoneticString str2, CorrespondenceModel gloCorrModel,
+			CorrespondenceModel locCorrModel, CorrespondenceModel selfSimModel1, CorrespondenceModel selfSimModel2) {
+		return align(str1, str2, gloCorrModel, locCorrModel,
+				NeedlemanWunschAlgorithm.selfSimilarity(str1, selfSimModel1),
+				NeedlemanWunschAlgorithm.selfSimilarity(str2, selfSimModel2));
+	}
+
+	/**
+	 * Variant of align() for precomputed self-similarities of the two strings (see
+	 * NeedlemanWunschAlgorithm.selfSimilarity() and SelfSimilarityTable).
+	 */
+	public NeedlemanWunschAligner align(PhoneticString str1, PhoneticString str2, CorrespondenceModel gloCorrModel,
+			CorrespondenceModel locCorrModel, double str1SelfSimilarity, double str2SelfSimilarity) {
+		int[] s1 = str1.segments;
+		int[] s2 = str2.segments;
+		int m = s1.length + 1;
+		int n = s2.length + 1;
+		ensureCapacity(m, n);
+		double[] mtx = this.mtx;
+		byte[] backpointers = this.backpointers;
+
+		mtx[0] = 0;
+		for (int i = 1; i < m; i++) {
+			mtx[i * n] = mtx[(i - 1) * n] + locCorrModel.getScoreOrFallback(s1[i - 1], 1, gloCorrModel);
+			backpointers[i * n] = DELETION;
+		}
+		for (int j = 1; j < n; j++) {
+			mtx[j] = mtx[j - 1] + locCorrModel.getScoreOrFallback(1, s2[j - 1], gloCorrModel);
+			backpointers[j] = INSERTION;
+		}
+		for (int i = 1; i < m; i++) {
+			int symbol1 = s1[i - 1];
+			double deletionScore = locCorrModel.getScoreOrFallback(symbol1, 1, gloCorrModel);
+			int row = i * n;
+			int prevRow = row - n;
+			for (int j = 1; j < n; j++) {
+				int symbol2 = s2[j - 1];
+				double matchValue = mtx[prevRow + j - 1]
+						+ locCorrModel.getScoreOrFallback(symbol1, symbol2, gloCorrModel);
+				double insertionValue = mtx[row + j - 1]
+						+ locCorrModel.getScoreOrFallback(1, symbol2, gloCorrModel);
+				double deletionValue = mtx[prevRow + j] + deletionScore;
+
+				// same tie-breaking as in NeedlemanWunschAlgorithm
+				if (insertionValue > matchValue) {
+					if (deletionValue > insertionValue) {
+						mtx[row + j] = deletionValue;
+						backpointers[row + j] = DELETION;
+					} else {
+						mtx[row + j] = insertionValue;
+						backpointers[row + j] = INSERTION;
+					}
+				} else {
+					if (deletionValue > matchValue) {
+						mtx[row + j] = deletionValue;
+						backpointers[row + j] = DELETION;
+					} else {
+						mtx[row + j] = matchValue;
+						backpointers[row + j] = MATCH;
+					}
+				}
+			}
+		}
+
+		traceBack(s1, s2, m, n, str1SelfSimilarity, str2SelfSimilarity);
+		return this;
+	}
+
+	/**
+	 * Aligns two phonetic strings like align(), but only if their normalized
+	 * distance can be at most maxDistance. Upper bounds on the score of the
+	 * remaining suffixes are used to discard every cell from which no alignment
+	 * good enough can be reached, so that the computation is restricted to a band
+	 * around the diagonal, and is aborted as soon as a row contains no such cell.
+	 * Pairs which pass get exactly the same result as with align().
+	 *
+	 * The bounds are derived from the maximal scores per symbol in the
+	 * correspondence models, which are cached for the last pair of models used, so
+	 * the models must not be changed while alignments are computed with them.
+	 *
+	 * @return true if the pair was aligned within the threshold, false if it was
+	 *         rejected, in which case the aligner holds no valid result
+	 */
+	public boolean alignWithinThreshold(PhoneticString str1, PhoneticString str2, CorrespondenceModel gloCorrModel,
+			CorrespondenceModel locCorrModel, CorrespondenceModel selfSimModel1, CorrespondenceModel selfSimModel2,
+			double maxDistance) {
+		return alignWithinThreshold(str1, str2, gloCorrModel, locCorrModel,
+				NeedlemanWunschAlgorithm.selfSimilarity(str1, selfSimModel1),
+				NeedlemanWunschAlgorithm.selfSimilarity(str2, selfSimModel2), maxDistance);
+	}
+
+	/**
+	 * Variant of alignWithinThreshold() for precomputed self-similarities of the
+	 * two strings.
+	 */
+	public boolean alignWithinThreshold(PhoneticString str1, PhoneticString str2, CorrespondenceModel gloCorrModel,
+			CorrespondenceModel locCorrModel, double str1SelfSimilarity, double str2SelfSimilarity,
+			double maxDistance) {
+		int[] s1 = str1.segments;
+		int[] s2 = str2.segments;
+		double minScore = minSimilarityScore(s1, s2, str1SelfSimilarity, str2SelfSimilarity, maxDistance);
+		if (minScore == Double.NEGATIVE_INFINITY) {
+			// no bound to prune with, e.g. for empty strings
+			align(str1, str2, gloCorrModel, locCorrModel, str1SelfSimilarity, str2SelfSimilarity);
+			return normalizedDistanceScore <= maxDistance;
+		}
+		int m = s1.length + 1;
+		int n = s2.length + 1;
+		ensureCapacity(m, n);
+		double[] suffixBound1 = suffixBounds(s1, true, gloCorrModel, locCorrModel);
+		double[] suffixBound2 = suffixBounds(s2, false, gloCorrModel, locCorrModel);
+		double[] mtx = this.mtx;
+		byte[] backpointers = this.backpointers;
+
+		// first row: only insertions; discarded cells are set to negative infinity
+		if (suffixBound1[0] + suffixBound2[0] < minScore) {
+			return false;
+		}
+		mtx[0] = 0;
+		int prevFirst = 0;
+		int prevLast = 0;
+		for (int j = 1; j < n; j++) {
+			double value = mtx[j - 1] + locCorrModel.getScoreOrFallback(1, s2[j - 1], gloCorrModel);
+			if (value + suffixBound1[0] + suffixBound2[j] < minScore) {
+				break;
+			}
+			mtx[j] = value;
+			backpointers[j] = INSERTION;
+			prevLast = j;
+		}
+
+		// further rows: cells reachable from the live range [prevFirst, prevLast] of the previous row
+		for (int i = 1; i < m; i++) {
+			int symbol1 = s1[i - 1];
+			double deletionScore = locCorrModel.getScoreOrFallback(symbol1, 1, gloCorrModel);
+			int row = i * n;
+			int prevRow = row - n;
+			int first = -1;
+			int last = -1;
+			double leftValue = Double.NEGATIVE_INFINITY;
+			for (int j = prevFirst; j < n; j++) {
+				if (j > prevLast + 1 && leftValue == Double.NEGATIVE_INFINITY) {
+					break;
+				}
+				double deletionValue = j <= prevLast ? mtx[prevRow + j] + deletionScore : Double.NEGATIVE_INFINITY;
+				double value;
+				byte backpointer;
+				if (j == 0) {
+					value = deletionValue;
+					backpointer = DELETION;
+				} else {
+					int symbol2 = s2[j - 1];
+					double matchValue = j - 1 >= prevFirst && j - 1 <= prevLast
+							? mtx[prevRow + j - 1] + locCorrModel.getScoreOrFallback(symbol1, symbol2, gloCorrModel)
+							: Double.NEGATIVE_INFINITY;
+					double insertionValue = leftValue + locCorrModel.getScoreOrFallback(1, symbol2, gloCorrModel);
+
+					// same tie-breaking as in align()
+					if (insertionValue > matchValue) {
+						if (deletionValue > insertionValue) {
+							value = deletionValue;
+							backpointer = DELETION;
+						} else {
+							value = insertionValue;
+							backpointer = INSERTION;
+						}
+					} else {
+						if (deletionValue > matchValue) {
+							value = deletionValue;
+							backpointer = DELETION;
+						} else {
+							value = matchValue;
+							backpointer = MATCH;
+						}
+					}
+				}
+				if (value + suffixBound1[i] + suffixBound2[j] < minScore) {
+					value = Double.NEGATIVE_INFINITY;
+				} else {
+					if (first < 0) {
+						first = j;
+					}
+					last = j;
+				}
+				mtx[row + j] = value;
+				backpointers[row + j] = backpointer;
+				leftValue = value;
+			}
+			if (first < 0) {
+				return false;
+			}
+			prevFirst = first;
+			prevLast = last;
+		}
+		if (prevLast != n - 1) {
+			return false;
+		}
+
+		traceBack(s1, s2, m, n, str1SelfSimilarity, str2SelfSimilarity);
+		return normalizedDistanceScore <= maxDistance;
+	}
+
+	private void traceBack(int[] s1, int[] s2, int m, int n, double str1SelfSimilarity,
+			double str2SelfSimilarity) {
+		// trace back from the last cell, collecting the alignment in reverse order
+		int i = m - 1;
+		int j = n - 1;
+		int length = 0;
+		while (i > 0 || j > 0) {
+			switch (backpointers[i * n + j]) {
+			case MATCH:
+				alignedSymbols1[length] = s1[--i];
+				alignedSymbols2[length] = s2[--j];
+				break;
+			case INSERTION:
+				alignedSymbols1[length] = 1;
+				alignedSymbols2[length] = s2[--j];
+				break;
+			default:
+				alignedSymbols1[length] = s1[--i];
+				alignedSymbols2[length] = 1;
+			}
+			length++;
+		}
+		reverse(alignedSymbols1, length);
+		reverse(alignedSymbols2, length);
+		alignmentLength = length;
+
+		alignmentScore = mtx[(m - 1) * n + n - 1];
+		if (NeedlemanWunschAlgorithm.NEW_DISTANCE_TRANSFORMATION) {
+			alignmentScore /= length;
+		}
+		normalizedDistanceScore = normalizedDistance(mtx[(m - 1) * n + n - 1], length, s1, s2, str1SelfSimilarity,
+				str2SelfSimilarity);
+	}
+
+	/**
+	 * @return the lowest similarity score (minus a small tolerance for rounding
+	 *         errors) which an alignment of the strings needs to have a normalized
+	 *         distance of at most maxDistance, or negative infinity if there is no
+	 *         such bound
+	 */
+	private static double minSimilarityScore(int[] s1, int[] s2, double str1SelfSimilarity,
+			double str2SelfSimilarity, double maxDistance) {
+		if (s1.length == 0 || s2.length == 0) {
+			return Double.NEGATIVE_INFINITY;
+		}
+		double minScore;
+		if (NeedlemanWunschAlgorithm.NEW_DISTANCE_TRANSFORMATION) {
+			// the score is divided by the alignment length, which lies between these values
+			double selfSimilarity = str1SelfSimilarity / s1.length + str2SelfSimilarity / s2.length;
+			if (!(selfSimilarity > 0)) {
+				return Double.NEGATIVE_INFINITY;
+			}
+			double minScorePerPosition = (1 - maxDistance) * selfSimilarity / 2;
+			minScore = minScorePerPosition >= 0 ? minScorePerPosition * Math.max(s1.length, s2.length)
+					: minScorePerPosition * (s1.length + s2.length);
+		} else {
+			double selfSimilarity = str1SelfSimilarity + str2SelfSimilarity;
+			if (!(selfSimilarity > 0)) {
+				return Double.NEGATIVE_INFINITY;
+			}
+			minScore = (1 - maxDistance) * selfSimilarity / 2;
+		}
+		return minScore - 1e-9 * (1 + Math.abs(minScore));
+	}
+
+	/**
+	 * Computes suffixBounds[i], an upper bound on the contribution of the symbols
+	 * s[i..] to any alignment score. In every alignment column, a symbol is either
+	 * aligned to a gap, or it takes up at most half of the best score for a pair
+	 * with it, the other half being taken up by its partner.
+	 */
+	private double[] suffixBounds(int[] s, boolean first, CorrespondenceModel gloCorrModel,
+			CorrespondenceModel locCorrModel) {
+		if (gloCorrModel != boundsGloCorrModel || locCorrModel != boundsLocCorrModel) {
+			int size = locCorrModel.getSymbolTable().getSize();
+			if (symbol1Bounds.length != size) {
+				symbol1Bounds = new double[size];
+				symbol2Bounds = new double[size];
+			}
+			Arrays.fill(symbol1Bounds, Double.NaN);
+			Arrays.fill(symbol2Bounds, Double.NaN);
+			boundsGloCorrModel = gloCorrModel;
+			boundsLocCorrModel = locCorrModel;
+		}
+		double[] symbolBounds = first ? symbol1Bounds : symbol2Bounds;
+		double[] suffixBounds;
+		if (first) {
+			if (suffixBounds1.length <= s.length) {
+				suffixBounds1 = new double[s.length + 1];
+			}
+			suffixBounds = suffixBounds1;
+		} else {
+			if (suffixBounds2.length <= s.length) {
+				suffixBounds2 = new double[s.length + 1];
+			}
+			suffixBounds = suffixBounds2;
+		}
+		suffixBounds[s.length] = 0;
+		for (int i = s.length - 1; i >= 0; i--) {
+			double bound = symbolBounds[s[i]];
+			if (Double.isNaN(bound)) {
+				double maxPairScore = Double.NEGATIVE_INFINITY;
+				for (int other = 0; other < symbolBounds.length; other++) {
+					double pairScore = first ? locCorrModel.getScoreOrFallback(s[i], other, gloCorrModel)
+							: locCorrModel.getScoreOrFallback(other, s[i], gloCorrModel);
+					maxPairScore = Math.max(maxPairScore, pairScore);
+				}
+				double gapScore = first ? locCorrModel.getScoreOrFallback(s[i], 1, gloCorrModel)
+						: locCorrModel.getScoreOrFallback(1, s[i], gloCorrModel);
+				bound = Math.max(maxPairScore / 2, gapScore);
+				symbolBounds[s[i]] = bound;
+			}
+			suffixBounds[i] = suffixBounds[i + 1] + bound;
+		}
+		return suffixBounds;
+	}
+
+	/**
+	 * Computes only the normalized distance of align(), keeping two rolling rows of
+	 * the score matrix instead of the full matrix and backpointers. The length of
+	 * the alignment, which NEW_DISTANCE_TRANSFORMATION needs, is carried along with
+	 * each cell of the rows, breaking ties in the same way as the traceback.
+	 *
+	 * @return the normalized distance score; the alignment buffers are not updated
+	 */
+	public double distanceOnly(PhoneticString str1, PhoneticString str2, CorrespondenceModel gloCorrModel,
+			CorrespondenceModel locCorrModel, CorrespondenceModel selfSimModel1, CorrespondenceModel selfSimModel2) {
+		return distanceOnly(str1, str2, gloCorrModel, locCorrModel,
+				NeedlemanWunschAlgorithm.selfSimilarity(str1, selfSimModel1),
+				NeedlemanWunschAlgorithm.selfSimilarity(str2, selfSimModel2));
+	}
+
+	/**
+	 * Variant of distanceOnly() for precomputed self-similarities of the two
+	 * strings.
+	 */
+	public double distanceOnly(PhoneticString str1, PhoneticString str2, CorrespondenceModel gloCorrModel,
+			CorrespondenceModel locCorrModel, double str1SelfSimilarity, double str2SelfSimilarity) {
+		int[] s1 = str1.segments;
+		int[] s2 = str2.segments;
+		int m = s1.length + 1;
+		int n = s2.length + 1;
+		if (scoreRow1.length < n) {
+			scoreRow1 = new double[n];
+			scoreRow2 = new double[n];
+			lengthRow1 = new int[n];
+			lengthRow2 = new int[n];
+		}
+		double[] prevScores = scoreRow1;
+		double[] scores = scoreRow2;
+		int[] prevLengths = lengthRow1;
+		int[] lengths = lengthRow2;
+
+		prevScores[0] = 0;
+		prevLengths[0] = 0;
+		for (int j = 1; j < n; j++) {
+			prevScores[j] = prevScores[j - 1] + locCorrModel.getScoreOrFallback(1, s2[j - 1], gloCorrModel);
+			prevLengths[j] = j;
+		}
+		for (int i = 1; i < m; i++) {
+			int symbol1 = s1[i - 1];
+			double deletionScore = locCorrModel.getScoreOrFallback(symbol1, 1, gloCorrModel);
+			scores[0] = prevScores[0] + deletionScore;
+			lengths[0] = i;
+			for (int j = 1; j < n; j++) {
+				int symbol2 = s2[j - 1];
+				double matchValue = prevScores[j - 1] + locCorrModel.getScoreOrFallback(symbol1, symbol2, gloCorrModel);
+				double insertionValue = scores[j - 1] + locCorrModel.getScoreOrFallback(1, symbol2, gloCorrModel);
+				double deletionValue = prevScores[j] + deletionScore;
+
+				if (insertionValue > matchValue) {
+					if (deletionValue > insertionValue) {
+						scores[j] = deletionValue;
+						lengths[j] = prevLengths[j] + 1;
+					} else {
+						scores[j] = insertionValue;
+						lengths[j] = lengths[j - 1] + 1;
+					}
+				} else {
+					if (deletionValue > matchValue) {
+						scores[j] = deletionValue;
+						lengths[j] = prevLengths[j] + 1;
+					} else {
+						scores[j] = matchValue;
+						lengths[j] = prevLengths[j - 1] + 1;
+					}
+				}
+			}
+			double[] swapScores = prevScores;
+			prevScores = scores;
+			scores = swapScores;
+			int[] swapLengths = prevLengths;
+			prevLengths = lengths;
+			lengths = swapLengths;
+		}
+
+		return normalizedDistance(prevScores[n - 1], prevLengths[n - 1], s1, s2, str1SelfSimilarity,
+				str2SelfSimilarity);
+	}
+
+	private static double normalizedDistance(double similarityScore, int length, int[] s1, int[] s2,
+			double str1SelfSimilarity, double str2SelfSimilarity) {
+		if (NeedlemanWunschAlgorithm.NEW_DISTANCE_TRANSFORMATION) {
+			similarityScore /= length;
+			str1SelfSimilarity /= s1.length;
+			str2SelfSimilarity /= s2.length;
+		}
+		return 1 - (2 * similarityScore) / (str1SelfSimilarity + str2SelfSimilarity);
+	}
+
+	private void ensureCapacity(int m, int n) {
+		if (mtx.length < m * n) {
+			mtx = new double[m * n];
+			backpointers = new byte[m * n];
+		}
+		if (alignedSymbols1.length < m + n) {
+			alignedSymbols1 = new int[m + n];
+			alignedSymbols2 = new int[m + n];
+		}
+	}
+
+	private static void reverse(int[] array, int length) {
+		for (int left = 0, right = length - 1; left < right; left++, right--) {
+			int tmp = array[left];
+			array[left] = array[right];
+			array[right] = tmp;
+		}
+	}
+
+	public int getLength() {
+		return alignmentLength;
+	}
+
+	public int getSymbol1IDAtPos(int pos) {
+		return alignedSymbols1[pos];
+	}
+
+	public int getSymbol2IDAtPos(int pos) {
+		return alignedSymbols2[pos];
+	}
+
+	public int getSymbolPairIDAtPos(int pos, PhoneticSymbolTable symbolTable) {
+		return alignedSymbols1[pos] * symbolTable.getSize() + alignedSymbols2[pos];
+	}
+
+	public double getAlignmentScore() {
+		return alignmentScore;
+	}
+
+	public double getNormalizedDistanceScore() {
+		return normalizedDistanceScore;
+	}
+
+	/**
+	 * Copies the result of the last alignment into a new alignment object which
+	 * remains valid after the aligner is reused.
+	 */
+	public PhoneticStringAlignment toAlignment() {
+		PhoneticStringAlignment alignment = new PhoneticStringAlignment();
+		alignment.str1 = new PhoneticString(Arrays.copyOf(alignedSymbols1, alignmentLength));
+		alignment.str2 = new PhoneticString(Arrays.copyOf(alignedSymbols2, alignmentLength));
+		alignment.alignmentScore = alignmentScore;
+		alignment.normalizedDistanceScore = normalizedDistanceScore;
+		return alignment;
+	}
+}
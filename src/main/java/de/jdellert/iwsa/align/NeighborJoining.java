@@ -0,0 +1,138 @@
+package de.jdellert.iwsa.align;
+
+import java.util.Arrays;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.stream.IntStream;
+
+/**
+ * Neighbor joining for the guide trees of TCoffee, working in place on one flat
+ * distance array instead of allocating a new matrix and reordering the list of
+ * node names for every join. The joins and the distance updates are exactly
+ * those of the original implementation in TCoffee, so the resulting guide trees
+ * are identical: the distances of the joined node are written to the column of
+ * the last remaining node, and the row and column of the joined node are zero.
+ * As this makes the distances asymmetric, the full square array is kept.
+ *
+ * Inner nodes are named "proto0", "proto1", ... in the order of the joins, and
+ * the two nodes left over after all joins become the children of the root.
+ */
+public class NeighborJoining {
+
+    // number of remaining nodes from which the rows are scanned in parallel
+    private static final int MIN_PARALLEL_SIZE = 128;
+
+    private NeighborJoining() {
+    }
+
+    /**
+     * @param leaves the names of the leaves
+     * @param dist   the distances between the leaves as a row-major square
+     *               array, which is overwritten
+     */
+    public static GuideTree guideTree(List<String> leaves, double[] dist) {
+        int n = leaves.size();
+        // position in the active node list => node (leaves 0 to n - 1, then the joined nodes)
+        int[] nodes = new int[n];
+        for (int i = 0; i < n; i++) {
+            nodes[i] = i;
+        }
+        // node => node it was joined into, or -1
+        int[] parents = new int[2 * n];
+        Arrays.fill(parents, -1);
+        double[] r = new double[n];
+        double[] rowI = new double[n];
+        double[] rowJ = new double[n];
+        double[] rowMins = new double[n];
+        int[] rowArgMins = new int[n];
+
+        for (int x = 0; x < n - 2; x++) {
+            int m = n - x;
+
+            rows(m).forEach(i -> {
+                double sum = 0.0;
+                int row = i * n;
+                for (int j = 0; j < m; j++) {
+                    sum += dist[row + j];
+                }
+                r[i] = sum / (m - 2);
+            });
+
+            // first strict minimum of each row, then the first row with the smallest one,
+            // which is the first strict minimum of the entire matrix in row-major order
+            rows(m).forEach(i -> {
+                int row = i * n;
+                double ri = r[i];
+                double rowMin = Double.MAX_VALUE;
+                int rowArgMin = -1;
+                for (int j = 0; j < m; j++) {
+                    if (i != j) {
+                        double m_ij = dist[row + j] - (ri + r[j]);
+                        if (m_ij < rowMin) {
+                            rowMin = m_ij;
+                            rowArgMin = j;
+                        }
+                    }
+                }
+                rowMins[i] = rowMin;
+                rowArgMins[i] = rowArgMin;
+            });
+            int minI = -1;
+            int minJ = -1;
+            double minVal = Double.MAX_VALUE;
+            for (int i = 0; i < m; i++) {
+                if (rowMins[i] < minVal) {
+                    minVal = rowMins[i];
+                    minI = i;
+                    minJ = rowArgMins[i];
+                }
+            }
+
+            int newNode = n + x;
+            parents[nodes[minI]] = newNode;
+            parents[nodes[minJ]] = newNode;
+            System.arraycopy(dist, minI * n, rowI, 0, m);
+            System.arraycopy(dist, minJ * n, rowJ, 0, m);
+            double distIJ = dist[minI * n + minJ];
+
+            // remove the rows and columns of the joined nodes, keeping the order of the others;
+            // every cell moves to a lower or equal index, so no cell is overwritten before it is read
+            int a = 0;
+            for (int i = 0; i < m; i++) {
+                if (i == minI || i == minJ)
+                    continue;
+                int b = 0;
+                int row = i * n;
+                int newRow = a * n;
+                for (int j = 0; j < m; j++) {
+                    if (j == minI || j == minJ)
+                        continue;
+                    dist[newRow + b++] = dist[row + j];
+                }
+                nodes[a++] = nodes[i];
+            }
+            int remaining = m - 2;
+            for (a = 0; a < remaining; a++) {
+                dist[a * n + remaining - 1] = (rowI[a] + rowJ[a] - distIJ) / 2;
+                dist[a * n + remaining] = 0.0;
+            }
+            Arrays.fill(dist, remaining * n, remaining * n + remaining + 1, 0.0);
+            nodes[remaining] = newNode;
+        }
+
+        GuideTree guideTree = new GuideTree();
+        for (int leaf = 0; leaf < n; leaf++) {
+            LinkedList<String> path = new LinkedList<>();
+            for (int node = parents[leaf]; node != -1; node = parents[node]) {
+                path.push("proto" + (node - n));
+            }
+            guideTree.enlargeTreeByPath(path, leaves.get(leaf));
+        }
+        return guideTree;
+    }
+
+    private static IntStream rows(int m) {
+        IntStream rows = IntStream.range(0, m);
+        return m >= MIN_PARALLEL_SIZE ? rows.parallel() : rows;
+    }
+}
@@ -197,13 +197,6 @@ public class PhoneticStringAlignmentOutput {
 
 	public static double getCorrespondenceScore(CorrespondenceModel gloCorrModel, CorrespondenceModel locCorrModel,
 			int ci, int cj) {
-		Double score = locCorrModel.getScoreOrNull(ci, cj);
-		if (score == null) {
-			score = gloCorrModel.getScoreOrNull(ci, cj);
-		}
-		if (score == null) {
-			score = 0.0;
-		}
-		return score;
+		return locCorrModel.getScoreOrFallback(ci, cj, gloCorrModel);
 	}
 }
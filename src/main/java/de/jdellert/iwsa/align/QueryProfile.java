@@ -0,0 +1,362 @@
+package de.jdellert.iwsa.align;
+
+import java.util.Arrays;
+import java.util.Optional;
+
+import de.jdellert.iwsa.corrmodel.CorrespondenceModel;
+import de.jdellert.iwsa.infomodel.InformationModel;
+import de.jdellert.iwsa.sequence.PhoneticString;
+
+/**
+ * Profile of one query string for aligning it against many target strings with
+ * the same correspondence models. For every target symbol, the scores against
+ * all query positions are looked up once and kept as a column, so that the
+ * inner loop of the alignment runs over plain arrays instead of querying the
+ * models in every cell. The gap scores of the query are precomputed as well.
+ *
+ * Without information content, the distances are those of
+ * NeedlemanWunschAlgorithm.distanceOnly(), otherwise those of
+ * InformationWeightedSequenceAlignment.distanceOnly(), with the query as the
+ * first string. A profile can be reused for further queries by setQuery(),
+ * which keeps the allocated arrays; instances are not thread-safe, and
+ * forCurrentThread() provides one per thread.
+ *
+ * If the build includes VectorizedAlignmentColumns (Maven profile vector-api)
+ * and the incubating Vector API is available at runtime (--add-modules
+ * jdk.incubator.vector), the match and insertion candidates of each column are
+ * computed in SIMD lanes by that kernel, with identical results.
+ */
+public class QueryProfile {
+	// use the Vector API for queries of at least one vector length, if available
+	public static boolean USE_VECTOR_API = true;
+	// null if the kernel was not compiled in or the Vector API is not available
+	private static final ColumnKernel VECTOR_KERNEL = loadVectorKernel();
+	private static final int VECTOR_LANES = VECTOR_KERNEL == null ? 0 : VECTOR_KERNEL.laneCount();
+
+	private static final ThreadLocal<QueryProfile> PROFILE_PER_THREAD = ThreadLocal.withInitial(QueryProfile::new);
+
+	private int[] query;
+	private CorrespondenceModel gloCorrModel;
+	private CorrespondenceModel locCorrModel;
+	// null for unweighted alignment
+	private double[] queryInfoContents;
+
+	// target symbol => scores against the query positions (valid iff the symbol is in usedSymbols)
+	private double[][] matchScoreColumns = new double[0][];
+	// target symbol => score for aligning it to a gap (NaN until first needed)
+	private double[] insertionScores = new double[0];
+	// target symbols with cached scores, to be invalidated for the next query
+	private int[] usedSymbols = new int[16];
+	private int numUsedSymbols;
+
+	// query position => (weighted) score for aligning it to a gap
+	private double[] deletionScores = new double[0];
+	// query position => squared information content
+	private double[] squaredQueryInfoContents = new double[0];
+	private double querySelfSimilarity;
+
+	// rolling columns of scores and alignment lengths
+	private double[] scoreColumn1 = new double[0];
+	private double[] scoreColumn2 = new double[0];
+	private int[] lengthColumn1 = new int[0];
+	private int[] lengthColumn2 = new int[0];
+	// query position => whether the insertion candidate beat the match candidate
+	private boolean[] fromInsertion = new boolean[0];
+
+	public static QueryProfile forCurrentThread() {
+		return PROFILE_PER_THREAD.get();
+	}
+
+	public QueryProfile() {
+	}
+
+	/**
+	 * Creates a profile for unweighted alignment, as in NeedlemanWunschAlgorithm.
+	 */
+	public QueryProfile(PhoneticString query, CorrespondenceModel gloCorrModel, CorrespondenceModel locCorrModel,
+			CorrespondenceModel selfSimModel1) {
+		setQuery(query, gloCorrModel, locCorrModel, selfSimModel1, (double[]) null);
+	}
+
+	public QueryProfile(PhoneticString query, CorrespondenceModel gloCorrModel, CorrespondenceModel locCorrModel,
+			CorrespondenceModel selfSimModel1, InformationModel infoModel1) {
+		setQuery(query, gloCorrModel, locCorrModel, selfSimModel1,
+				infoModel1 == null ? null : infoModel1.informationContents(query.segments));
+	}
+
+	/**
+	 * Prepares the profile for a new query.
+	 *
+	 * @param queryInfoContents the information content of each query segment, or
+	 *                          null for unweighted alignment
+	 * @return this profile, for computing distances to the query
+	 */
+	public QueryProfile setQuery(PhoneticString query, CorrespondenceModel gloCorrModel,
+			CorrespondenceModel locCorrModel, CorrespondenceModel selfSimModel1, double[] queryInfoContents) {
+		double querySelfSimilarity = queryInfoContents == null
+				? NeedlemanWunschAlgorithm.selfSimilarity(query, selfSimModel1)
+				: InformationWeightedSequenceAlignment.selfSimilarity(query, gloCorrModel, selfSimModel1,
+						queryInfoContents);
+		return setQuery(query, gloCorrModel, locCorrModel, querySelfSimilarity, queryInfoContents);
+	}
+
+	/**
+	 * Variant of setQuery() for a precomputed self-similarity of the query (see
+	 * SelfSimilarityTable).
+	 */
+	public QueryProfile setQuery(PhoneticString query, CorrespondenceModel gloCorrModel,
+			CorrespondenceModel locCorrModel, double querySelfSimilarity, double[] queryInfoContents) {
+		this.query = query.segments;
+		this.gloCorrModel = gloCorrModel;
+		this.locCorrModel = locCorrModel;
+		this.queryInfoContents = queryInfoContents;
+		int size = locCorrModel.getSymbolTable().getSize();
+		if (matchScoreColumns.length != size) {
+			matchScoreColumns = new double[size][];
+			insertionScores = new double[size];
+			Arrays.fill(insertionScores, Double.NaN);
+		} else {
+			for (int i = 0; i < numUsedSymbols; i++) {
+				insertionScores[usedSymbols[i]] = Double.NaN;
+			}
+		}
+		numUsedSymbols = 0;
+
+		int m = this.query.length;
+		if (deletionScores.length < m) {
+			deletionScores = new double[m];
+			squaredQueryInfoContents = new double[m];
+		}
+		if (queryInfoContents == null) {
+			for (int i = 0; i < m; i++) {
+				deletionScores[i] = locCorrModel.getScoreOrFallback(this.query[i], 1, gloCorrModel);
+			}
+		} else {
+			for (int i = 0; i < m; i++) {
+				double infoContent = queryInfoContents[i];
+				squaredQueryInfoContents[i] = infoContent * infoContent;
+				double selfInfoScore = InformationWeightedSequenceAlignment.getMeanInfoScore(infoContent, infoContent);
+				deletionScores[i] = locCorrModel.getScoreOrFallback(this.query[i], 1, gloCorrModel) * selfInfoScore;
+			}
+		}
+		this.querySelfSimilarity = querySelfSimilarity;
+
+		if (scoreColumn1.length <= m) {
+			scoreColumn1 = new double[m + 1];
+			scoreColumn2 = new double[m + 1];
+			lengthColumn1 = new int[m + 1];
+			lengthColumn2 = new int[m + 1];
+			fromInsertion = new boolean[m + 1];
+		}
+		return this;
+	}
+
+	/**
+	 * Computes the normalized distances of the query to a batch of targets.
+	 *
+	 * @param selfSimModel2 the self-similarity model of the targets' language
+	 * @param infoModel2    the information model of the targets' language,
+	 *                      required iff the profile is weighted
+	 * @param distances     receives the distance to targets[i] at position i
+	 */
+	public void distances(PhoneticString[] targets, CorrespondenceModel selfSimModel2, InformationModel infoModel2,
+			double[] distances) {
+		for (int t = 0; t < targets.length; t++) {
+			double[] targetInfoContents = queryInfoContents == null ? null
+					: infoModel2.informationContents(targets[t].segments);
+			distances[t] = distance(targets[t], selfSimModel2, targetInfoContents);
+		}
+	}
+
+	/**
+	 * @param targetInfoContents the information content of each target segment,
+	 *                           required iff the profile is weighted
+	 * @return the normalized distance of the query to the target
+	 */
+	public double distance(PhoneticString target, CorrespondenceModel selfSimModel2, double[] targetInfoContents) {
+		double targetSelfSimilarity = queryInfoContents == null
+				? NeedlemanWunschAlgorithm.selfSimilarity(target, selfSimModel2)
+				: InformationWeightedSequenceAlignment.selfSimilarity(target, gloCorrModel, selfSimModel2,
+						targetInfoContents);
+		return distance(target, targetSelfSimilarity, targetInfoContents);
+	}
+
+	/**
+	 * Variant of distance() for a precomputed self-similarity of the target (see
+	 * SelfSimilarityTable).
+	 */
+	public double distance(PhoneticString target, double targetSelfSimilarity, double[] targetInfoContents) {
+		int[] query = this.query;
+		int[] s2 = target.segments;
+		int m = query.length;
+		boolean weighted = queryInfoContents != null;
+		double[] deletionScores = this.deletionScores;
+		double[] squaredQueryInfoContents = this.squaredQueryInfoContents;
+		boolean[] fromInsertion = this.fromInsertion;
+		boolean vectorized = USE_VECTOR_API && VECTOR_LANES > 0 && m >= VECTOR_LANES;
+
+		double[] prevScores = scoreColumn1;
+		double[] scores = scoreColumn2;
+		int[] prevLengths = lengthColumn1;
+		int[] lengths = lengthColumn2;
+		prevScores[0] = 0;
+		prevLengths[0] = 0;
+		for (int i = 1; i <= m; i++) {
+			prevScores[i] = prevScores[i - 1] + deletionScores[i - 1];
+			prevLengths[i] = i;
+		}
+
+		for (int j = 1; j <= s2.length; j++) {
+			int symbol2 = s2[j - 1];
+			double[] matchScores = matchScoreColumn(symbol2);
+			double insertionScore = insertionScore(symbol2);
+			double squaredTargetInfoContent = 0.0;
+			if (weighted) {
+				double infoContent = targetInfoContents[j - 1];
+				squaredTargetInfoContent = infoContent * infoContent;
+				double selfInfoScore = InformationWeightedSequenceAlignment.getMeanInfoScore(infoContent, infoContent);
+				insertionScore *= selfInfoScore;
+			}
+
+			scores[0] = prevScores[0] + insertionScore;
+			lengths[0] = j;
+			if (vectorized) {
+				VECTOR_KERNEL.matchOrInsertion(prevScores, matchScores,
+						weighted ? squaredQueryInfoContents : null, squaredTargetInfoContent, insertionScore, m, scores,
+						fromInsertion);
+				for (int i = 1; i <= m; i++) {
+					double deletionValue = scores[i - 1] + deletionScores[i - 1];
+					if (deletionValue > scores[i]) {
+						scores[i] = deletionValue;
+						lengths[i] = lengths[i - 1] + 1;
+					} else {
+						lengths[i] = (fromInsertion[i] ? prevLengths[i] : prevLengths[i - 1]) + 1;
+					}
+				}
+			} else {
+				for (int i = 1; i <= m; i++) {
+					double matchScore = matchScores[i - 1];
+					if (weighted) {
+						matchScore *= Math.sqrt((squaredQueryInfoContents[i - 1] + squaredTargetInfoContent) / 2);
+					}
+					double matchValue = prevScores[i - 1] + matchScore;
+					double insertionValue = prevScores[i] + insertionScore;
+					double deletionValue = scores[i - 1] + deletionScores[i - 1];
+
+					// same tie-breaking as in NeedlemanWunschAlgorithm
+					if (insertionValue > matchValue) {
+						if (deletionValue > insertionValue) {
+							scores[i] = deletionValue;
+							lengths[i] = lengths[i - 1] + 1;
+						} else {
+							scores[i] = insertionValue;
+							lengths[i] = prevLengths[i] + 1;
+						}
+					} else {
+						if (deletionValue > matchValue) {
+							scores[i] = deletionValue;
+							lengths[i] = lengths[i - 1] + 1;
+						} else {
+							scores[i] = matchValue;
+							lengths[i] = prevLengths[i - 1] + 1;
+						}
+					}
+				}
+			}
+			double[] swapScores = prevScores;
+			prevScores = scores;
+			scores = swapScores;
+			int[] swapLengths = prevLengths;
+			prevLengths = lengths;
+			lengths = swapLengths;
+		}
+
+		double similarityScore = prevScores[m];
+		double querySelfSimilarity = this.querySelfSimilarity;
+		boolean newDistanceTransformation = weighted ? InformationWeightedSequenceAlignment.NEW_DISTANCE_TRANSFORMATION
+				: NeedlemanWunschAlgorithm.NEW_DISTANCE_TRANSFORMATION;
+		if (newDistanceTransformation) {
+			similarityScore /= prevLengths[m];
+			querySelfSimilarity /= m;
+			targetSelfSimilarity /= s2.length;
+		}
+		return 1 - (2 * similarityScore) / (querySelfSimilarity + targetSelfSimilarity);
+	}
+
+	private double[] matchScoreColumn(int symbol2) {
+		if (symbol2 < 0 || symbol2 >= matchScoreColumns.length) {
+			return computeMatchScoreColumn(symbol2, new double[query.length]);
+		}
+		double[] column = matchScoreColumns[symbol2];
+		if (Double.isNaN(insertionScores[symbol2])) {
+			if (column == null || column.length < query.length) {
+				column = new double[Math.max(query.length, 16)];
+				matchScoreColumns[symbol2] = column;
+			}
+			computeMatchScoreColumn(symbol2, column);
+			insertionScores[symbol2] = locCorrModel.getScoreOrFallback(1, symbol2, gloCorrModel);
+			if (numUsedSymbols == usedSymbols.length) {
+				usedSymbols = Arrays.copyOf(usedSymbols, 2 * usedSymbols.length);
+			}
+			usedSymbols[numUsedSymbols++] = symbol2;
+		}
+		return column;
+	}
+
+	private double[] computeMatchScoreColumn(int symbol2, double[] column) {
+		for (int i = 0; i < query.length; i++) {
+			column[i] = locCorrModel.getScoreOrFallback(query[i], symbol2, gloCorrModel);
+		}
+		return column;
+	}
+
+	private double insertionScore(int symbol2) {
+		if (symbol2 < 0 || symbol2 >= insertionScores.length) {
+			return locCorrModel.getScoreOrFallback(1, symbol2, gloCorrModel);
+		}
+		return insertionScores[symbol2];
+	}
+
+	/**
+	 * @return whether the Vector API kernel has been loaded, which requires the
+	 *         vector-api build profile and the jdk.incubator.vector module
+	 */
+	static boolean vectorKernelAvailable() {
+		return VECTOR_KERNEL != null;
+	}
+
+	private static ColumnKernel loadVectorKernel() {
+		Optional<Module> vectorModule = ModuleLayer.boot().findModule("jdk.incubator.vector");
+		if (vectorModule.isEmpty()) {
+			return null;
+		}
+		try {
+			// the kernel is compiled against the Vector API, which this module does not require
+			QueryProfile.class.getModule().addReads(vectorModule.get());
+			return (ColumnKernel) Class.forName(QueryProfile.class.getPackageName() + ".VectorizedAlignmentColumns")
+					.getDeclaredConstructor().newInstance();
+		} catch (ReflectiveOperationException | LinkageError e) {
+			return null;
+		}
+	}
+
+	/**
+	 * Computation of the match and insertion candidates of a column, implemented
+	 * with the Vector API by VectorizedAlignmentColumns in the optional source
+	 * set src/vector/java.
+	 */
+	interface ColumnKernel {
+		int laneCount();
+
+		/**
+		 * Fills positions 1 to m of the score column with the better of the match and
+		 * the insertion candidate, preferring the match on ties as the scalar
+		 * recurrence does, and marks the cells where the insertion won.
+		 *
+		 * @param squaredQueryInfoContents null for unweighted alignment
+		 */
+		void matchOrInsertion(double[] prevScores, double[] matchScores, double[] squaredQueryInfoContents,
+				double squaredTargetInfoContent, double insertionScore, int m, double[] scores,
+				boolean[] fromInsertion);
+	}
+}
@@ -0,0 +1,136 @@
+package de.jdellert.iwsa.align;
+
+import java.util.Arrays;
+
+import de.jdellert.iwsa.corrmodel.CorrespondenceModel;
+import de.jdellert.iwsa.data.LexicalDatabase;
+import de.jdellert.iwsa.infomodel.InformationModel;
+
+/**
+ * Precomputed self-similarities of the forms of a database, by which the
+ * aligners normalize alignment scores into distances. The self-similarity of a
+ * form only depends on the models of its language, so it is computed once per
+ * form here instead of once per aligned pair. Without information models, the
+ * values are those of NeedlemanWunschAlgorithm.selfSimilarity(), otherwise
+ * those of InformationWeightedSequenceAlignment.selfSimilarity().
+ *
+ * A table is bound to the models it was computed with, which are compared by
+ * identity: forModels() returns a new table whenever the models have changed.
+ * The models must not be modified in place while a table computed from them is
+ * in use.
+ */
+public class SelfSimilarityTable {
+	private final LexicalDatabase database;
+	private final CorrespondenceModel gloCorrModel;
+	// lang ID => self-similarity model, null for languages not covered
+	private final CorrespondenceModel[] selfSimModels;
+	// lang ID => information model, or null for unweighted self-similarities
+	private final InformationModel[] infoModels;
+	// form ID => self-similarity, NaN for forms of languages not covered
+	private final double[] selfSimilarities;
+
+	/**
+	 * Computes the unweighted self-similarities of the forms of all languages with
+	 * a self-similarity model.
+	 *
+	 * @param selfSimModels the self-similarity models, indexed by language ID
+	 */
+	public SelfSimilarityTable(LexicalDatabase database, CorrespondenceModel[] selfSimModels) {
+		this(database, null, selfSimModels, null);
+	}
+
+	/**
+	 * Computes the self-similarities of the forms of all languages with a
+	 * self-similarity model, weighted by information content if information models
+	 * are given.
+	 *
+	 * @param selfSimModels the self-similarity models, indexed by language ID
+	 * @param infoModels    the information models, indexed by language ID, or null
+	 *                      for unweighted self-similarities (also used for
+	 *                      languages without an information model)
+	 */
+	public SelfSimilarityTable(LexicalDatabase database, CorrespondenceModel gloCorrModel,
+			CorrespondenceModel[] selfSimModels, InformationModel[] infoModels) {
+		this.database = database;
+		this.gloCorrModel = gloCorrModel;
+		this.selfSimModels = selfSimModels.clone();
+		this.infoModels = infoModels == null ? null : infoModels.clone();
+		this.selfSimilarities = new double[database.getNumForms()];
+		Arrays.fill(selfSimilarities, Double.NaN);
+		for (int langID = 0; langID < selfSimModels.length; langID++) {
+			CorrespondenceModel selfSimModel = selfSimModels[langID];
+			if (selfSimModel == null)
+				continue;
+			for (int formID : database.getFormIDsForLanguage(langID)) {
+				if (infoModels == null || infoModels[langID] == null) {
+					selfSimilarities[formID] = NeedlemanWunschAlgorithm.selfSimilarity(database.getForm(formID),
+							selfSimModel);
+				} else {
+					selfSimilarities[formID] = InformationWeightedSequenceAlignment.selfSimilarity(
+							database.getForm(formID), gloCorrModel, selfSimModel,
+							database.getInformationContents(formID, infoModels[langID]));
+				}
+			}
+		}
+	}
+
+	/**
+	 * Computes the unweighted self-similarities of all forms under the same model,
+	 * e.g. the global correspondence model.
+	 */
+	public static SelfSimilarityTable forModel(LexicalDatabase database, CorrespondenceModel selfSimModel) {
+		CorrespondenceModel[] selfSimModels = new CorrespondenceModel[database.getNumLanguages()];
+		Arrays.fill(selfSimModels, selfSimModel);
+		return new SelfSimilarityTable(database, selfSimModels);
+	}
+
+	/**
+	 * @return the self-similarity models of the single languages in a matrix of
+	 *         local correspondence models, i.e. its diagonal
+	 */
+	public static CorrespondenceModel[] selfSimModels(CorrespondenceModel[][] localCorrModels) {
+		CorrespondenceModel[] selfSimModels = new CorrespondenceModel[localCorrModels.length];
+		for (int langID = 0; langID < localCorrModels.length; langID++) {
+			if (localCorrModels[langID] != null)
+				selfSimModels[langID] = localCorrModels[langID][langID];
+		}
+		return selfSimModels;
+	}
+
+	/**
+	 * @return this table if it was computed with the same models, otherwise a new
+	 *         table for the given models
+	 */
+	public SelfSimilarityTable forModels(CorrespondenceModel gloCorrModel, CorrespondenceModel[] selfSimModels,
+			InformationModel[] infoModels) {
+		if (isComputedWith(gloCorrModel, selfSimModels, infoModels))
+			return this;
+		return new SelfSimilarityTable(database, gloCorrModel, selfSimModels, infoModels);
+	}
+
+	public boolean isComputedWith(CorrespondenceModel gloCorrModel, CorrespondenceModel[] selfSimModels,
+			InformationModel[] infoModels) {
+		if (!sameModels(this.selfSimModels, selfSimModels) || (this.infoModels == null) != (infoModels == null))
+			return false;
+		// the global model only enters into weighted self-similarities
+		return infoModels == null || (this.gloCorrModel == gloCorrModel && sameModels(this.infoModels, infoModels));
+	}
+
+	private static boolean sameModels(Object[] models1, Object[] models2) {
+		if (models1.length != models2.length)
+			return false;
+		for (int i = 0; i < models1.length; i++) {
+			if (models1[i] != models2[i])
+				return false;
+		}
+		return true;
+	}
+
+	/**
+	 * @return the self-similarity of the form, or NaN if the table does not cover
+	 *         the language of the form
+	 */
+	public double getSelfSimilarity(int formID) {
+		return selfSimilarities[formID];
+	}
+}
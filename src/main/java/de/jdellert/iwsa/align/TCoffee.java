@@ -10,11 +10,10 @@ import java.io.ObjectInputStream;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
-import java.util.HashSet;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.stream.IntStream;
 
 public class TCoffee {
 
@@ -28,8 +27,8 @@ public class TCoffee {
     private GuideTree guideTree;
     private TCoffeeLibrary lib;
 
-    private TCoffee(List<PhoneticString> sequences, List<String> languages,
-                    CorrespondenceModel corrModel, GuideTree guideTree) {
+    TCoffee(List<PhoneticString> sequences, List<String> languages,
+            CorrespondenceModel corrModel, GuideTree guideTree) {
         this.sequences = sequences;
         this.symbols = corrModel.getSymbolTable();
         this.corrModel = corrModel;
@@ -77,60 +76,6 @@ public class TCoffee {
 		return msa;
 	}
 
-    private static double[][] transpose(double[][] M) {
-        return transpose(M, false);
-    }
-
-    private static double[][] transpose(double[][] M, boolean inPlace) {
-        int m = M.length;
-        if (m < 1) return M;
-        int n = M[0].length;
-        double[][] T = (inPlace) ? M : new double[n][m];
-        for (int i = 0; i < m; i++) {
-            for (int j = 0; j < n; j++) {
-                T[j][i] = M[i][j];
-            }
-        }
-        return T;
-    }
-
-    private static double[][] dotProduct(double[][] M1, double[][] M2) {
-        int l = M1.length;
-        int m = M2.length;
-        int n = M2[0].length;
-
-        double[][] P = new double[l][n];
-
-        for (int i = 0; i < l; i++) {
-            for (int j = 0; j < m; j++) {
-                for (int k = 0; k < n; k++) {
-                    P[i][k] += M1[i][j] * M2[j][k];
-                }
-            }
-        }
-
-        return P;
-    }
-
-    private static double[][] matrixAdditionWithScalar(double[][] M1, double[][] M2, double a) {
-        return matrixAdditionWithScalar(M1, M2, a, false);
-    }
-
-    private static double[][] matrixAdditionWithScalar(double[][] M1, double[][] M2, double a, boolean inPlace) {
-        int m = M1.length;
-        int n = M1[0].length;
-
-        double[][] A = (inPlace) ? M1 : new double[m][n];
-
-        for (int i = 0; i < m; i++) {
-            for (int j = 0; j < n; j++) {
-                A[i][j] = M1[i][j] + a * M2[i][j];
-            }
-        }
-
-        return A;
-    }
-
     public static void main(String[] args) {
         //CorrespondenceModel corrModel = CorrespondenceModelStorage.readGlobalModelFromFile(
         //        "/src/test/resources/northeuralex-0.9/global-nw.corr");
@@ -176,96 +121,31 @@ public class TCoffee {
     }
 
     private void createGuideTree(List<String> languages) {
-        languages = new ArrayList<>(languages);
         int n = languages.size();
-        Map<String, Set<String>> ancestorOf = new HashMap<>();
-        this.guideTree = new GuideTree();
-
-        Map<String, LinkedList<String>> paths = new HashMap<>();
-        for (int i = 0; i < n; i++)
-            paths.put(languages.get(i), new LinkedList<>());
-        int node = 0;
-
         // https://de.wikipedia.org/wiki/Neighbor-Joining-Algorithmus
 
         // Use lib score matrix as distance estimation
-        double[][] dist = new double[n][n];
+        double[] dist = new double[n * n];
         for (int i = 0; i < n; i++)
             for (int j = 0; j < n; j++)
-                dist[i][j] = 1.0 - lib.scores[i][j];
+                dist[i * n + j] = 1.0 - lib.scores[i][j];
 
-        for (int x = 0; x < n - 2; x++) {
-            int m = n - x;
-
-            double[] r = new double[m];
-            for (int i = 0; i < m; i++) {
-                for (int j = 0; j < m; j++)
-                    r[i] += dist[i][j];
-                r[i] /= m - 2;
-            }
-
-            int minI = -1;
-            int minJ = -1;
-            double minVal = Double.MAX_VALUE;
-            for (int i = 0; i < m; i++) {
-                for (int j = 0; j < m; j++) {
-                    if (i != j) {
-                        double m_ij = dist[i][j] - (r[i] + r[j]);
-                        if (m_ij < minVal) {
-                            minVal = m_ij;
-                            minI = i;
-                            minJ = j;
-                        }
-                    }
-                }
-            }
+        this.guideTree = NeighborJoining.guideTree(languages, dist);
 
-            String newNode = "proto" + node;
-            String child1 = languages.remove(Math.max(minI, minJ));
-            String child2 = languages.remove(Math.min(minI, minJ));
-            languages.add(newNode);
-            Set<String> descendants = new HashSet<>();
-            if (ancestorOf.containsKey(child1))
-                descendants.addAll(ancestorOf.remove(child1));
-            else
-                descendants.add(child1);
-            if (ancestorOf.containsKey(child2))
-                descendants.addAll(ancestorOf.remove(child2));
-            else
-                descendants.add(child2);
-            ancestorOf.put(newNode, descendants);
-            for (String descendant : descendants) {
-                paths.get(descendant).push(newNode);
-            }
-            node++;
-
-            double[][] newDist = new double[m - 1][m - 1];
-            int skipI = 0;
-            for (int i = 0; i < m; i++) {
-                if (i == minI || i == minJ)
-                    skipI++;
-                else {
-                    int skipJ = 0;
-                    for (int j = 0; j < m; j++) {
-                        if (j == minI || j == minJ)
-                            skipJ++;
-                        else {
-                            newDist[i - skipI][j - skipJ] = dist[i][j];
-                        }
-                    }
+        System.err.println(guideTree.getChildrenOf("ROOT"));
+    }
 
-                    newDist[m - 3][i - skipI] = (dist[minI][i - skipI]
-                            + dist[minJ][i - skipI] - dist[minI][minJ]) / 2;
-                    newDist[i - skipI][m - 3] = newDist[m - 3][i - skipI];
-                }
-            }
-            dist = newDist;
-        }
+    GuideTree getGuideTree() {
+        return guideTree;
+    }
 
-        for (String leaf : paths.keySet())
-            guideTree.enlargeTreeByPath(paths.get(leaf), leaf);
+    // the library of the word pairs, indexed by the positions of the words in the input
+    double getLibraryScore(int word1, int word2) {
+        return lib.scores[word1][word2];
+    }
 
-        System.err.println(guideTree.getChildrenOf("ROOT"));
+    double getLibraryWeight(int word1, int word2, int pos1, int pos2) {
+        return lib.weights[word1][word2].get(pos1, pos2);
     }
 
     private MultipleAlignment align() {
@@ -306,10 +186,9 @@ public class TCoffee {
                 for (int w1 = 0; w1 < msa1.nOfLanguages(); w1++) {
                     for (int w2 = 0; w2 < msa2.nOfLanguages(); w2++) {
                         if (!msa1.hasGapAt(w1, i - 1) && !msa2.hasGapAt(w2, j - 1)) {
-                            match += lib.matrices[lang2ID.get(msa1.getLanguage(w1))]
+                            match += lib.weights[lang2ID.get(msa1.getLanguage(w1))]
                                     [lang2ID.get(msa2.getLanguage(w2))]
-                                    [msa1.getOriginalPosition(w1, i - 1)]
-                                    [msa2.getOriginalPosition(w2, j - 1)];
+                                    .get(msa1.getOriginalPosition(w1, i - 1), msa2.getOriginalPosition(w2, j - 1));
                         }
                     }
                 }
@@ -375,95 +254,152 @@ public class TCoffee {
         return 2;
     }
 
+    /**
+     * The library of pairwise alignments between the words. As each alignment
+     * pairs every position with at most one position of the other word, it is
+     * stored as a list of aligned positions rather than as a 0/1 matrix, and the
+     * extension through all intermediate words only has to follow these lists.
+     */
     private class TCoffeeLibrary {
 
-        // [word1][word2][sym1][sym2]
-        double[][][][] matrices;
+        // [word1][word2][pos1] => position in word2 aligned to pos1, or -1
+        int[][][] alignedPositions;
+        // [word1][word2] => extended weights of the position pairs, see extend()
+        SparseWeights[][] weights;
         // [word1][word2]
         double[][] scores;
 
         TCoffeeLibrary() {
-            matrices = new double[sequences.size()][sequences.size()][][];
-            scores = new double[sequences.size()][sequences.size()];
-
-            for (int i = 0; i < sequences.size(); i++) {
-                for (int j = 0; j < sequences.size(); j++) {
-                    // If (j, i) already in library:
-                    if (j < i) {
-                        matrices[i][j] = transpose(matrices[j][i]);
-                        scores[i][j] = scores[j][i];
-                    } else {
-                        PhoneticString seq1 = sequences.get(i);
-                        PhoneticString seq2 = sequences.get(j);
-                        PhoneticStringAlignment align = NeedlemanWunschAlgorithm.constructAlignment(
-                                seq1, seq2, corrModel, corrModel, corrModel, corrModel);
-                        double[][] matrix = new double[seq1.getLength()][seq2.getLength()];
-                        double hammingDist = 0;
-                        int comparisons = 0;
-                        int k = 0;
-                        int l = 0;
-                        if (align.getLength() == 0) {
-                            System.out.println("WARNING: Alignment of length 0 between" + seq1.toUntokenizedString(symbols) + " and " + seq2.toUntokenizedString(symbols));
-                        }
-                        for (int a = 0; a < align.getLength(); a++) {
-                            int inSym = align.getSymbol1IDAtPos(a);
-                            int outSym = align.getSymbol2IDAtPos(a);
-                            if (inSym == EMPTY_SYMBOL)
-                                l++;
-                            else if (outSym == EMPTY_SYMBOL)
-                                k++;
-                            else {
-                                matrix[k][l] = 1;
-                                comparisons++;
-                                if (inSym != outSym)
-                                    hammingDist++;
-                                k++;
-                                l++;
-                            }
+            int n = sequences.size();
+            alignedPositions = new int[n][n][];
+            scores = new double[n][n];
+
+            // the alignments of the pairs (i, j >= i) are independent of each other
+            IntStream.range(0, n).parallel().forEach(i -> {
+                for (int j = i; j < n; j++) {
+                    PhoneticString seq1 = sequences.get(i);
+                    PhoneticString seq2 = sequences.get(j);
+                    PhoneticStringAlignment align = NeedlemanWunschAlgorithm.constructAlignment(
+                            seq1, seq2, corrModel, corrModel, corrModel, corrModel);
+                    int[] positions = new int[seq1.getLength()];
+                    Arrays.fill(positions, -1);
+                    double hammingDist = 0;
+                    int comparisons = 0;
+                    int k = 0;
+                    int l = 0;
+                    if (align.getLength() == 0) {
+                        System.out.println("WARNING: Alignment of length 0 between" + seq1.toUntokenizedString(symbols) + " and " + seq2.toUntokenizedString(symbols));
+                    }
+                    for (int a = 0; a < align.getLength(); a++) {
+                        int inSym = align.getSymbol1IDAtPos(a);
+                        int outSym = align.getSymbol2IDAtPos(a);
+                        if (inSym == EMPTY_SYMBOL)
+                            l++;
+                        else if (outSym == EMPTY_SYMBOL)
+                            k++;
+                        else {
+                            positions[k] = l;
+                            comparisons++;
+                            if (inSym != outSym)
+                                hammingDist++;
+                            k++;
+                            l++;
                         }
-                        matrices[i][j] = matrix;
-                        scores[i][j] = 1.0;
-                        if (comparisons > 0) scores[i][j] -= (hammingDist / comparisons);
                     }
+                    alignedPositions[i][j] = positions;
+                    scores[i][j] = 1.0;
+                    if (comparisons > 0) scores[i][j] -= (hammingDist / comparisons);
+                }
+            });
+
+            // (j, i) is the inverse of (i, j)
+            for (int i = 0; i < n; i++) {
+                for (int j = 0; j < i; j++) {
+                    int[] inverse = new int[sequences.get(i).getLength()];
+                    Arrays.fill(inverse, -1);
+                    int[] positions = alignedPositions[j][i];
+                    for (int k = 0; k < positions.length; k++) {
+                        if (positions[k] != -1)
+                            inverse[positions[k]] = k;
+                    }
+                    alignedPositions[i][j] = inverse;
+                    scores[i][j] = scores[j][i];
                 }
             }
-
-//            for (int i = 0; i < sequences.size(); i++) {
-//                for (int j = 0; j < sequences.size(); j++) {
-//                    PhoneticString seq1 = sequences.get(i);
-//                    PhoneticString seq2 = sequences.get(j);
-//                    System.out.println(seq1.toString() + ":" + seq2.toString());
-//                    for (int k = 0; k < seq1.getLength(); k++) {
-//                        for (int l = 0; l < seq2.getLength(); l++) {
-//                            System.out.print(matrices[i][j][k][l] + "\t");
-//                        }
-//                        System.out.println();
-//                    }
-//                }
-//            }
         }
 
+        /**
+         * Computes the weight of each position pair (k, l) of two words w1 and w2 as
+         * the sum of scores[w1][w3] + scores[w3][w2] over all words w3 through whose
+         * alignments k and l are connected. The sums are accumulated in the order of
+         * w3, as in the product of the dense alignment matrices, so the weights are
+         * exactly the same.
+         */
         void extend() {
-            int n = matrices.length;
-            double[][][][] ext = new double[n][n][][];
-
-            for (int w1 = 0; w1 < n; w1++) {
+            int n = alignedPositions.length;
+            weights = new SparseWeights[n][n];
+            IntStream.range(0, n).parallel().forEach(w1 -> {
+                int w1len = sequences.get(w1).getLength();
                 for (int w2 = 0; w2 < n; w2++) {
-                    int w1len = matrices[w1][w2].length;
-                    int w2len = matrices[w1][w2][0].length;
-                    double[][] dm = new double[w1len][w2len];
-                    for (int w3 = 0; w3 < n; w3++) {
-                        double[][] m1 = matrices[w1][w3];
-                        double[][] m2 = matrices[w3][w2];
-                        double s1 = scores[w1][w3];
-                        double s2 = scores[w3][w2];
-                        matrixAdditionWithScalar(dm, dotProduct(m1, m2), (s1 + s2), true);
+                    int w2len = sequences.get(w2).getLength();
+                    double[] rowWeights = new double[w2len];
+                    boolean[] inRow = new boolean[w2len];
+                    int[] rowStart = new int[w1len + 1];
+                    int[] columns = new int[Math.min(w1len * w2len, w1len * n)];
+                    double[] values = new double[columns.length];
+                    int numEntries = 0;
+                    for (int k = 0; k < w1len; k++) {
+                        for (int w3 = 0; w3 < n; w3++) {
+                            int m = alignedPositions[w1][w3][k];
+                            if (m == -1)
+                                continue;
+                            int l = alignedPositions[w3][w2][m];
+                            if (l == -1)
+                                continue;
+                            rowWeights[l] += scores[w1][w3] + scores[w3][w2];
+                            inRow[l] = true;
+                        }
+                        rowStart[k] = numEntries;
+                        for (int l = 0; l < w2len; l++) {
+                            if (inRow[l]) {
+                                columns[numEntries] = l;
+                                values[numEntries] = rowWeights[l];
+                                numEntries++;
+                                rowWeights[l] = 0.0;
+                                inRow[l] = false;
+                            }
+                        }
                     }
-                    ext[w1][w2] = dm;
+                    rowStart[w1len] = numEntries;
+                    weights[w1][w2] = new SparseWeights(rowStart, Arrays.copyOf(columns, numEntries),
+                            Arrays.copyOf(values, numEntries));
                 }
-            }
+            });
+        }
+    }
 
-            matrices = ext;
+    /**
+     * Weights of the position pairs of two words in compressed rows: the entries
+     * of row k are at rowStart[k] to rowStart[k + 1] - 1, ordered by column. All
+     * other weights are zero.
+     */
+    private static final class SparseWeights {
+        final int[] rowStart;
+        final int[] columns;
+        final double[] values;
+
+        SparseWeights(int[] rowStart, int[] columns, double[] values) {
+            this.rowStart = rowStart;
+            this.columns = columns;
+            this.values = values;
+        }
+
+        double get(int row, int column) {
+            for (int e = rowStart[row]; e < rowStart[row + 1]; e++) {
+                if (columns[e] >= column)
+                    return columns[e] == column ? values[e] : 0.0;
+            }
+            return 0.0;
         }
     }
 }
@@ -19,12 +19,15 @@ import java.util.Set;
 import java.util.TreeMap;
 
 import de.jdellert.iwsa.CognateClusteringIWDSC;
-import de.jdellert.iwsa.align.InformationWeightedSequenceAlignment;
-import de.jdellert.iwsa.align.PhoneticStringAlignment;
+import de.jdellert.iwsa.align.AlignmentCache;
+import de.jdellert.iwsa.align.QueryProfile;
+import de.jdellert.iwsa.align.SelfSimilarityTable;
+import de.jdellert.iwsa.cluster.CondensedDistanceMatrix;
 import de.jdellert.iwsa.cluster.FlatClustering;
 import de.jdellert.iwsa.corrmodel.CorrespondenceModel;
 import de.jdellert.iwsa.corrmodel.CorrespondenceModelInference;
 import de.jdellert.iwsa.corrmodel.CorrespondenceModelStorage;
+import de.jdellert.iwsa.corrmodel.MergedCorrespondenceModel;
 import de.jdellert.iwsa.data.CLDFImport;
 import de.jdellert.iwsa.data.LexicalDatabase;
 import de.jdellert.iwsa.infomodel.InformationModel;
@@ -86,7 +89,7 @@ public class CognateOverlapAvgFormDistBootstrap {
 				System.err.print("Attempting to load existing global correspondence model from " + args[0]
 						+ "-global-iw.corr ... ");
 				globalCorrModel = CorrespondenceModelStorage
-						.deserializeCorrespondenceModel(new ObjectInputStream(new FileInputStream(args[0] + "-global-iw.corr")));
+						.deserializeCorrespondenceModel(new ObjectInputStream(new FileInputStream(args[0] + "-global-iw.corr")), CorrespondenceModelInference.DENSE_GLOBAL_MODEL);
 				System.err.print(
 						"done.\nStage 1: Global sound correspondences - skipped because previously inferred model was found. Delete model file and rerun to cause re-inference.\n");
 			} catch (FileNotFoundException e) {
@@ -144,6 +147,11 @@ public class CognateOverlapAvgFormDistBootstrap {
 	}
 	
 	public static void aggregateAnalysis(List<Map<Integer,Integer>> formsToCognateSetPerConcept, List<Double[][]> formDistances, LexicalDatabase database, int[] relevantLangIDs, CorrespondenceModel globalCorrModel, CorrespondenceModel localCorrModels[][], InformationModel[] infoModels) {
+		localCorrModels = MergedCorrespondenceModel.compile(database, relevantLangIDs, localCorrModels, globalCorrModel);
+		database.cacheInformationContents(infoModels);
+		SelfSimilarityTable selfSimilarities = new SelfSimilarityTable(database, globalCorrModel,
+				SelfSimilarityTable.selfSimModels(localCorrModels), infoModels);
+		AlignmentCache<Double> distanceCache = CognateClusteringIWDSC.createDistanceCache();
 		for (int conceptID = 0; conceptID < database.getNumConcepts(); conceptID++) {
 			System.err.println("Clustering words for concept #" + conceptID + " (" + database.getConceptName(conceptID) + ")");
 			
@@ -159,7 +167,7 @@ public class CognateOverlapAvgFormDistBootstrap {
 				formIDToIndex.put(formIDs.get(index), index);
 			}
 
-			double[][] distanceMatrix = new double[formIDs.size()][formIDs.size()];
+			CondensedDistanceMatrix distanceMatrix = new CondensedDistanceMatrix(formIDs.size());
 			Double[][] minDistanceMatrix = new Double[relevantLangIDs.length][relevantLangIDs.length];
 			for (Double[] row : minDistanceMatrix) {
 				Arrays.fill(row, Double.POSITIVE_INFINITY);
@@ -173,22 +181,29 @@ public class CognateOverlapAvgFormDistBootstrap {
 					for (int lang1FormID : formsPerLang.get(lang1ID)) {
 						int index1 = formIDToIndex.get(lang1FormID);
 						PhoneticString lang1Form = database.getForm(lang1FormID);
+						QueryProfile lang1Profile = QueryProfile.forCurrentThread().setQuery(lang1Form, globalCorrModel,
+								localCorrModels[lang1ID][lang2ID], selfSimilarities.getSelfSimilarity(lang1FormID),
+								database.getInformationContents(lang1FormID));
 						for (int lang2FormID : formsPerLang.get(lang2ID)) {
 							int index2 = formIDToIndex.get(lang2FormID);
 							PhoneticString lang2Form = database.getForm(lang2FormID);
-							PhoneticStringAlignment localWeightsAlignment = InformationWeightedSequenceAlignment
-									.constructAlignment(lang1Form, lang2Form, globalCorrModel,
-											localCorrModels[lang1ID][lang2ID], localCorrModels[lang1ID][lang1ID],
-											localCorrModels[lang2ID][lang2ID], infoModels[lang1ID],
-											infoModels[lang2ID]);
-							double localWeightDistance = localWeightsAlignment.normalizedDistanceScore;
+							CorrespondenceModel lang2SelfCorr = localCorrModels[lang2ID][lang2ID];
+							double localWeightDistance;
+							if (distanceCache == null) {
+								localWeightDistance = lang1Profile.distance(lang2Form, selfSimilarities.getSelfSimilarity(lang2FormID), database.getInformationContents(lang2FormID));
+							} else {
+								localWeightDistance = distanceCache.get(lang1Form, lang2Form,
+										() -> lang1Profile.distance(lang2Form, selfSimilarities.getSelfSimilarity(lang2FormID), database.getInformationContents(lang2FormID)),
+										globalCorrModel, localCorrModels[lang1ID][lang2ID], localCorrModels[lang1ID][lang1ID], lang2SelfCorr,
+										infoModels[lang1ID], infoModels[lang2ID]);
+							}
 							if (localWeightDistance < 0.0) localWeightDistance = 0.0;
 							localWeightDistance *= localWeightDistance;
 							if (localWeightDistance > CognateClusteringIWDSC.MAX_DIST_VAL) localWeightDistance = CognateClusteringIWDSC.MAX_DIST_VAL;
 							localWeightDistance /= CognateClusteringIWDSC.MAX_DIST_VAL;
 							if (index1 == index2) localWeightDistance = 0.0;
-							distanceMatrix[index1][index2] = localWeightDistance;
-							distanceMatrix[index2][index1] = localWeightDistance;
+							if (index1 != index2)
+								distanceMatrix.set(index1, index2, localWeightDistance);
 							if (localWeightDistance < minDistanceMatrix[i][j]) {
 								minDistanceMatrix[i][j] = localWeightDistance;
 								minDistanceMatrix[j][i] = localWeightDistance;
@@ -217,6 +232,8 @@ public class CognateOverlapAvgFormDistBootstrap {
 			formsToCognateSetPerConcept.add(formsToCognateSet);
 			
 		}
+		if (distanceCache != null)
+			System.err.println("Distance cache: " + distanceCache);
 	}
 	
 	public static double computeCognateOverlap(List<Map<Integer,Integer>> formsToCognateSetPerConcept, int lang1ID, int lang2ID, LexicalDatabase database) {
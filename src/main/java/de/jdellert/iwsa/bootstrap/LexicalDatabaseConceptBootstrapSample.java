@@ -2,8 +2,10 @@ package de.jdellert.iwsa.bootstrap;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.SplittableRandom;
 
 import de.jdellert.iwsa.data.LexicalDatabase;
+import de.jdellert.iwsa.infomodel.InformationModel;
 import de.jdellert.iwsa.sequence.PhoneticString;
 
 /**
@@ -110,6 +112,14 @@ public class LexicalDatabaseConceptBootstrapSample extends LexicalDatabase {
 		return origDatabase.getRandomFormForLanguage(langID);
 	}
 	
+	public PhoneticString getRandomFormForLanguage(int langID, SplittableRandom random) {
+		return origDatabase.getRandomFormForLanguage(langID, random);
+	}
+	
+	public int getRandomFormIDForLanguage(int langID, SplittableRandom random) {
+		return origDatabase.getRandomFormIDForLanguage(langID, random);
+	}
+	
 	public PhoneticString getFormForLangConceptOrth(String lang, String concept, String orth) {
 		return origDatabase.getFormForLangConceptOrth(lang, concept, orth);
 	}
@@ -118,6 +128,18 @@ public class LexicalDatabaseConceptBootstrapSample extends LexicalDatabase {
 		return origDatabase.getCognateSetID(formID);
 	}
 	
+	public void cacheInformationContents(InformationModel[] infoModels) {
+		origDatabase.cacheInformationContents(infoModels);
+	}
+	
+	public double[] getInformationContents(int formID) {
+		return origDatabase.getInformationContents(formID);
+	}
+	
+	public double[] getInformationContents(int formID, InformationModel infoModel) {
+		return origDatabase.getInformationContents(formID, infoModel);
+	}
+	
 	//all other (minor) methods can be inherited because they operate only on symbolTable, langCodes, or conceptNames,
 	//i.e. the objects references to which had to be copied in order to be able to inherit from LexicalDatabase
 	
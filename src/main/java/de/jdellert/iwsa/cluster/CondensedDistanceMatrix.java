@@ -0,0 +1,89 @@
+package de.jdellert.iwsa.cluster;
+
+import java.io.Serializable;
+import java.util.stream.IntStream;
+
+/**
+ * Symmetric distance matrix with a zero diagonal, stored as its upper triangle
+ * in one flat array, i.e. with half the memory of a square matrix and without
+ * the row arrays. Distinct cells can be set concurrently, e.g. by the parallel
+ * producers of fill() or by threads filling disjoint blocks.
+ */
+public class CondensedDistanceMatrix implements Serializable {
+	private static final long serialVersionUID = 1L;
+
+	private final int size;
+	// row-major upper triangle without the diagonal
+	private final double[] distances;
+
+	/**
+	 * Creates a matrix for the given number of points, with all distances 0.0.
+	 */
+	public CondensedDistanceMatrix(int size) {
+		this.size = size;
+		this.distances = new double[Math.toIntExact((long) size * (size - 1) / 2)];
+	}
+
+	/**
+	 * Copies the upper triangle of a square matrix.
+	 */
+	public static CondensedDistanceMatrix fromSquare(double[][] distMtx) {
+		CondensedDistanceMatrix matrix = new CondensedDistanceMatrix(distMtx.length);
+		matrix.fill((i, j) -> distMtx[i][j]);
+		return matrix;
+	}
+
+	public double[][] toSquare() {
+		double[][] distMtx = new double[size][size];
+		for (int i = 0; i < size; i++) {
+			for (int j = i + 1; j < size; j++) {
+				distMtx[i][j] = distMtx[j][i] = distances[index(i, j)];
+			}
+		}
+		return distMtx;
+	}
+
+	/**
+	 * Sets the distance of every pair of distinct points i < j to the value of the
+	 * producer, computing the rows in parallel. The producer must be safe to call
+	 * from several threads.
+	 */
+	public void fill(PairDistance producer) {
+		IntStream.range(0, size).parallel().forEach(i -> {
+			int index = index(i, i + 1);
+			for (int j = i + 1; j < size; j++) {
+				distances[index++] = producer.distance(i, j);
+			}
+		});
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public double get(int i, int j) {
+		if (i == j)
+			return 0.0;
+		return distances[index(i, j)];
+	}
+
+	/**
+	 * Sets the distance between two distinct points, in both directions.
+	 */
+	public void set(int i, int j, double distance) {
+		if (i == j)
+			throw new IllegalArgumentException("the distance of a point to itself is always 0.0");
+		distances[index(i, j)] = distance;
+	}
+
+	private int index(int i, int j) {
+		if (i > j)
+			return index(j, i);
+		return (int) ((long) i * (2 * size - i - 1) / 2) + j - i - 1;
+	}
+
+	@FunctionalInterface
+	public interface PairDistance {
+		double distance(int i, int j);
+	}
+}
@@ -1,14 +1,19 @@
 package de.jdellert.iwsa.cluster;
 
+import java.util.ArrayList;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.Set;
+import java.util.stream.Collectors;
 
 public class FlatClustering {
 	public static boolean VERBOSE = false;
 	public static boolean SHOW_MATRICES = false;
 	public static Map<Integer, String> pointIdentifiers = null;
+	// cluster the connected components under the threshold separately and in parallel
+	public static boolean PREPARTITION = true;
 
 	// implemented linkage criteria
 	public static final int SINGLE_LINKAGE = 0;
@@ -20,19 +25,281 @@ public class FlatClustering {
 		return linkageClustering(distMtx, threshold, SINGLE_LINKAGE);
 	}
 
+	public static Set<Set<Integer>> singleLinkageClustering(CondensedDistanceMatrix distMtx, double threshold) {
+		return linkageClustering(distMtx, threshold, SINGLE_LINKAGE);
+	}
+
 	public static Set<Set<Integer>> completeLinkageClustering(double[][] distMtx, double threshold) {
 		return linkageClustering(distMtx, threshold, COMPLETE_LINKAGE);
 	}
 
+	public static Set<Set<Integer>> completeLinkageClustering(CondensedDistanceMatrix distMtx, double threshold) {
+		return linkageClustering(distMtx, threshold, COMPLETE_LINKAGE);
+	}
+
 	public static Set<Set<Integer>> upgma(double[][] distMtx, double threshold) {
 		return linkageClustering(distMtx, threshold, AVERAGE_LINKAGE);
 	}
 
+	public static Set<Set<Integer>> upgma(CondensedDistanceMatrix distMtx, double threshold) {
+		return linkageClustering(distMtx, threshold, AVERAGE_LINKAGE);
+	}
+
 	public static Set<Set<Integer>> minimumEnergyClustering(double[][] distMtx, double threshold) {
 		return linkageClustering(distMtx, threshold, ENERGY_DIFFERENCE);
 	}
 
+	public static Set<Set<Integer>> minimumEnergyClustering(CondensedDistanceMatrix distMtx, double threshold) {
+		return linkageClustering(distMtx, threshold, ENERGY_DIFFERENCE);
+	}
+
 	private static Set<Set<Integer>> linkageClustering(double[][] distMtx, double threshold, int linkageCriterion) {
+		if (linkageCriterion == ENERGY_DIFFERENCE || SHOW_MATRICES)
+			return exhaustiveLinkageClustering(distMtx, threshold, linkageCriterion);
+		return linkageClustering(CondensedDistanceMatrix.fromSquare(distMtx), threshold, linkageCriterion);
+	}
+
+	private static Set<Set<Integer>> linkageClustering(CondensedDistanceMatrix distMtx, double threshold,
+			int linkageCriterion) {
+		if (linkageCriterion == ENERGY_DIFFERENCE || SHOW_MATRICES)
+			return exhaustiveLinkageClustering(distMtx.toSquare(), threshold, linkageCriterion);
+		if (!PREPARTITION)
+			return nearestNeighborChainClustering(distMtx, identity(distMtx.size()), threshold, linkageCriterion);
+
+		List<int[]> components = thresholdComponents(distMtx, threshold);
+		return components.parallelStream()
+				.flatMap(points -> nearestNeighborChainClustering(distMtx, points, threshold, linkageCriterion).stream())
+				.collect(Collectors.toCollection(HashSet::new));
+	}
+
+	/**
+	 * Splits the points into the connected components of the graph which links two
+	 * points if their distance is at most the threshold. Under single, complete and
+	 * average linkage, two clusters can only be fused if some pair of their points
+	 * is linked, so no cluster extends beyond a component, and the components can
+	 * be clustered independently.
+	 *
+	 * @return the points of each component in ascending order, the components in
+	 *         the order of their first points
+	 */
+	public static List<int[]> thresholdComponents(CondensedDistanceMatrix distMtx, double threshold) {
+		int n = distMtx.size();
+		// union-find forest, with path halving and the smaller point as the root
+		int[] parent = identity(n);
+		for (int i = 0; i < n; i++) {
+			for (int j = i + 1; j < n; j++) {
+				if (distMtx.get(i, j) <= threshold) {
+					int root1 = find(parent, i);
+					int root2 = find(parent, j);
+					if (root1 < root2)
+						parent[root2] = root1;
+					else if (root2 < root1)
+						parent[root1] = root2;
+				}
+			}
+		}
+
+		int[] componentSize = new int[n];
+		for (int i = 0; i < n; i++) {
+			parent[i] = find(parent, i);
+			componentSize[parent[i]]++;
+		}
+		int[][] componentOfRoot = new int[n][];
+		List<int[]> components = new ArrayList<int[]>();
+		int[] filled = new int[n];
+		for (int i = 0; i < n; i++) {
+			int root = parent[i];
+			if (root == i) {
+				componentOfRoot[i] = new int[componentSize[i]];
+				components.add(componentOfRoot[i]);
+			}
+			componentOfRoot[root][filled[root]++] = i;
+		}
+		return components;
+	}
+
+	private static int find(int[] parent, int point) {
+		while (parent[point] != point) {
+			parent[point] = parent[parent[point]];
+			point = parent[point];
+		}
+		return point;
+	}
+
+	private static int[] identity(int n) {
+		int[] points = new int[n];
+		for (int i = 0; i < n; i++) {
+			points[i] = i;
+		}
+		return points;
+	}
+
+	/**
+	 * Agglomerative clustering by the nearest-neighbor chain algorithm for the
+	 * single, complete and average linkage criteria, in O(n^2) time. The linkage
+	 * distances between the clusters are kept in one flat triangular array and
+	 * updated by the Lance-Williams formulas on every fusion: the minimum or the
+	 * maximum of the two distances, or for average linkage the sum of the pairwise
+	 * distances, which is divided by the product of the cluster sizes on lookup.
+	 * These criteria are reducible (a fusion never brings the fused cluster closer
+	 * to a third one than the closer of its parts), so the fusions of reciprocal
+	 * nearest neighbors are those of the exhaustive search, and a cluster whose
+	 * nearest neighbor is beyond the threshold stays as it is. Up to ties between
+	 * linkage distances, which the exhaustive search resolves in the iteration
+	 * order of a hash set, the partition is the same.
+	 *
+	 * @param points the points to cluster, in ascending order
+	 */
+	private static Set<Set<Integer>> nearestNeighborChainClustering(CondensedDistanceMatrix distMtx, int[] points,
+			double threshold, int linkageCriterion) {
+		int n = points.length;
+		CondensedDistanceMatrix linkage = new CondensedDistanceMatrix(n);
+		for (int i = 0; i < n; i++) {
+			for (int j = i + 1; j < n; j++) {
+				double distance = distMtx.get(points[i], points[j]);
+				// as in minimumClusterDistance() and maximumClusterDistance()
+				if (linkageCriterion == SINGLE_LINKAGE && !(distance < Double.MAX_VALUE))
+					distance = Double.MAX_VALUE;
+				else if (linkageCriterion == COMPLETE_LINKAGE && !(distance > 0.0))
+					distance = 0.0;
+				linkage.set(i, j, distance);
+			}
+		}
+
+		// cluster => number of points, 0 once fused into another cluster
+		int[] size = new int[n];
+		// the points of each cluster as a linked list from the cluster index
+		int[] next = new int[n];
+		int[] last = new int[n];
+		for (int i = 0; i < n; i++) {
+			size[i] = 1;
+			next[i] = -1;
+			last[i] = i;
+		}
+		fuseNearestNeighbors(linkage, size, next, last, points, threshold, linkageCriterion);
+
+		Set<Set<Integer>> sets = new HashSet<Set<Integer>>();
+		for (int i = 0; i < n; i++) {
+			if (size[i] > 0)
+				sets.add(members(i, next, points));
+		}
+		return sets;
+	}
+
+	/**
+	 * The nearest-neighbor chain algorithm on clusters of any initial size, e.g.
+	 * clusters from an earlier run which new points are to be added to. The
+	 * linkage distances between all clusters which remain are kept up to date.
+	 *
+	 * @param linkage the linkage distances between the clusters, or for average
+	 *                linkage the sums of the distances between their points
+	 * @param size    the number of points of each cluster, set to 0 for the
+	 *                clusters fused into others
+	 * @param next    the linked lists of the points in each cluster, with -1 as
+	 *                the end, which are concatenated on fusion
+	 * @param last    the last point of each list
+	 * @param points  the labels of the points for the VERBOSE output
+	 */
+	static void fuseNearestNeighbors(CondensedDistanceMatrix linkage, int[] size, int[] next, int[] last,
+			int[] points, double threshold, int linkageCriterion) {
+		int n = size.length;
+		// clusters which can still be fused
+		boolean[] active = new boolean[n];
+		for (int i = 0; i < n; i++) {
+			active[i] = size[i] > 0;
+		}
+
+		int[] chain = new int[n];
+		int chainLength = 0;
+		int firstActive = 0;
+		while (true) {
+			if (chainLength == 0) {
+				while (firstActive < n && !active[firstActive])
+					firstActive++;
+				if (firstActive == n)
+					break;
+				chain[chainLength++] = firstActive;
+			}
+			int cluster = chain[chainLength - 1];
+			int previous = chainLength > 1 ? chain[chainLength - 2] : -1;
+
+			// nearest neighbor, preferring the previous cluster in the chain on ties
+			int neighbor = previous;
+			double minDistance = previous == -1 ? Double.POSITIVE_INFINITY
+					: linkageDistance(linkage, cluster, previous, size, linkageCriterion);
+			for (int other = firstActive; other < n; other++) {
+				if (other == cluster || !active[other])
+					continue;
+				double distance = linkageDistance(linkage, cluster, other, size, linkageCriterion);
+				if (distance < minDistance || neighbor == -1) {
+					minDistance = distance;
+					neighbor = other;
+				}
+			}
+
+			if (neighbor == -1) {
+				// the last remaining cluster
+				active[cluster] = false;
+				chainLength--;
+				continue;
+			}
+			if (neighbor != previous) {
+				chain[chainLength++] = neighbor;
+				continue;
+			}
+
+			// reciprocal nearest neighbors
+			chainLength -= 2;
+			if (minDistance > threshold) {
+				// all other clusters are and will stay farther away than the threshold
+				active[cluster] = false;
+				active[neighbor] = false;
+				continue;
+			}
+			int cluster1 = Math.min(cluster, neighbor);
+			int cluster2 = Math.max(cluster, neighbor);
+			if (VERBOSE)
+				System.err.println("Fusing: " + strRep(members(cluster1, next, points)) + " "
+						+ strRep(members(cluster2, next, points)) + " at " + String.format(Locale.ENGLISH, "%.3f", minDistance));
+			for (int other = 0; other < n; other++) {
+				if (other == cluster1 || other == cluster2 || size[other] == 0)
+					continue;
+				double distance1 = linkage.get(cluster1, other);
+				double distance2 = linkage.get(cluster2, other);
+				if (linkageCriterion == SINGLE_LINKAGE)
+					linkage.set(cluster1, other, Math.min(distance1, distance2));
+				else if (linkageCriterion == COMPLETE_LINKAGE)
+					linkage.set(cluster1, other, Math.max(distance1, distance2));
+				else
+					linkage.set(cluster1, other, distance1 + distance2);
+			}
+			size[cluster1] += size[cluster2];
+			size[cluster2] = 0;
+			active[cluster2] = false;
+			next[last[cluster1]] = cluster2;
+			last[cluster1] = last[cluster2];
+		}
+	}
+
+	private static double linkageDistance(CondensedDistanceMatrix linkage, int cluster1, int cluster2, int[] size,
+			int linkageCriterion) {
+		double distance = linkage.get(cluster1, cluster2);
+		if (linkageCriterion == AVERAGE_LINKAGE)
+			distance /= (size[cluster1] * size[cluster2]);
+		// undefined distances never lead to a fusion in the exhaustive search either
+		return Double.isNaN(distance) ? Double.POSITIVE_INFINITY : distance;
+	}
+
+	private static Set<Integer> members(int cluster, int[] next, int[] points) {
+		Set<Integer> members = new HashSet<Integer>();
+		for (int point = cluster; point != -1; point = next[point]) {
+			members.add(points[point]);
+		}
+		return members;
+	}
+
+	private static Set<Set<Integer>> exhaustiveLinkageClustering(double[][] distMtx, double threshold,
+			int linkageCriterion) {
 		Set<Set<Integer>> sets = new HashSet<Set<Integer>>();
 		for (int i = 0; i < distMtx.length; i++) {
 			HashSet<Integer> unarySet = new HashSet<Integer>();
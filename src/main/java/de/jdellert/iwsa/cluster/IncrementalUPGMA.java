@@ -0,0 +1,143 @@
+package de.jdellert.iwsa.cluster;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Average linkage (UPGMA) clustering which is continued when new points arrive,
+ * instead of clustering all points again. The clusters are kept together with
+ * the sums of the distances between their points, which is all that average
+ * linkage needs, so a new point only has to be compared to the points seen
+ * before. On fuse(), the new points are attached to the existing clusters or
+ * merged with each other, and clusters which have come closer to each other
+ * than the threshold through the new points are merged.
+ *
+ * Clusters are never split again, so the result can differ from clustering all
+ * points at once if the new points would have changed earlier fusions. If all
+ * points are added before the first fusion, the clusters are those of
+ * FlatClustering.upgma().
+ */
+public class IncrementalUPGMA implements Serializable {
+	private static final long serialVersionUID = 1L;
+
+	private final double threshold;
+	private int numPoints;
+	// cluster => its points
+	private List<List<Integer>> clusters;
+	// sums of the distances between the points of each pair of clusters
+	private CondensedDistanceMatrix clusterSums;
+	// points added since the last fusion => sums of their distances to each cluster, then to the earlier new points
+	private List<double[]> newPointSums;
+
+	public IncrementalUPGMA(double threshold) {
+		this.threshold = threshold;
+		this.numPoints = 0;
+		this.clusters = new ArrayList<List<Integer>>();
+		this.clusterSums = new CondensedDistanceMatrix(0);
+		this.newPointSums = new ArrayList<double[]>();
+	}
+
+	public double getThreshold() {
+		return threshold;
+	}
+
+	public int getNumPoints() {
+		return numPoints;
+	}
+
+	/**
+	 * Adds a point which is clustered on the next call of fuse().
+	 *
+	 * @param distances the distances of the new point to all points added before,
+	 *                  indexed by their point numbers
+	 * @return the number of the new point
+	 */
+	public int addPoint(double[] distances) {
+		if (distances.length < numPoints)
+			throw new IllegalArgumentException(
+					"distances to " + numPoints + " points needed, but only " + distances.length + " given");
+		int firstNewPoint = numPoints - newPointSums.size();
+		double[] sums = new double[clusters.size() + newPointSums.size()];
+		for (int cluster = 0; cluster < clusters.size(); cluster++) {
+			double sum = 0.0;
+			for (int point : clusters.get(cluster)) {
+				sum += distances[point];
+			}
+			sums[cluster] = sum;
+		}
+		for (int newPoint = 0; newPoint < newPointSums.size(); newPoint++) {
+			sums[clusters.size() + newPoint] = distances[firstNewPoint + newPoint];
+		}
+		newPointSums.add(sums);
+		return numPoints++;
+	}
+
+	/**
+	 * Clusters the points added since the last call together with the existing
+	 * clusters.
+	 *
+	 * @return the clusters of all points
+	 */
+	public Set<Set<Integer>> fuse() {
+		int numOldClusters = clusters.size();
+		int n = numOldClusters + newPointSums.size();
+		int firstNewPoint = numPoints - newPointSums.size();
+
+		CondensedDistanceMatrix linkage = new CondensedDistanceMatrix(n);
+		int[] size = new int[n];
+		int[] next = new int[n];
+		int[] last = new int[n];
+		int[] labels = new int[n];
+		for (int i = 0; i < n; i++) {
+			size[i] = i < numOldClusters ? clusters.get(i).size() : 1;
+			next[i] = -1;
+			last[i] = i;
+			labels[i] = i < numOldClusters ? clusters.get(i).get(0) : firstNewPoint + i - numOldClusters;
+			for (int j = 0; j < i; j++) {
+				linkage.set(j, i, i < numOldClusters ? clusterSums.get(j, i) : newPointSums.get(i - numOldClusters)[j]);
+			}
+		}
+		FlatClustering.fuseNearestNeighbors(linkage, size, next, last, labels, threshold,
+				FlatClustering.AVERAGE_LINKAGE);
+
+		List<Integer> remaining = new ArrayList<Integer>();
+		List<List<Integer>> fusedClusters = new ArrayList<List<Integer>>();
+		for (int i = 0; i < n; i++) {
+			if (size[i] == 0)
+				continue;
+			List<Integer> points = new ArrayList<Integer>(size[i]);
+			for (int part = i; part != -1; part = next[part]) {
+				if (part < numOldClusters)
+					points.addAll(clusters.get(part));
+				else
+					points.add(firstNewPoint + part - numOldClusters);
+			}
+			remaining.add(i);
+			fusedClusters.add(points);
+		}
+		CondensedDistanceMatrix fusedSums = new CondensedDistanceMatrix(remaining.size());
+		for (int i = 0; i < remaining.size(); i++) {
+			for (int j = i + 1; j < remaining.size(); j++) {
+				fusedSums.set(i, j, linkage.get(remaining.get(i), remaining.get(j)));
+			}
+		}
+		clusters = fusedClusters;
+		clusterSums = fusedSums;
+		newPointSums.clear();
+		return getClusters();
+	}
+
+	/**
+	 * @return the clusters as of the last call of fuse()
+	 */
+	public Set<Set<Integer>> getClusters() {
+		Set<Set<Integer>> sets = new HashSet<Set<Integer>>();
+		for (List<Integer> cluster : clusters) {
+			sets.add(new HashSet<Integer>(cluster));
+		}
+		return sets;
+	}
+}
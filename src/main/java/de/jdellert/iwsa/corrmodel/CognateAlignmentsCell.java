@@ -0,0 +1,39 @@
+package de.jdellert.iwsa.corrmodel;
+
+import de.jdellert.iwsa.sequence.PhoneticString;
+import de.jdellert.iwsa.stat.ObservationBuffer;
+import de.jdellert.iwsa.stat.ObservationSink;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Observations, pair counts and cognate candidates of one (concept, language)
+ * cell of the cognate candidate search. The cells are filled in parallel and
+ * then added to the distribution and confidence score in cell order, so that
+ * the results do not depend on the number of threads or on thread scheduling.
+ */
+class CognateAlignmentsCell {
+    final ObservationBuffer observations = new ObservationBuffer(16);
+    // the two forms of every cognate candidate pair, in the order they were found
+    final List<PhoneticString> cognateForms = new ArrayList<>();
+    int numPairs;
+    int numCognatePairs;
+
+    void addCognatePair(PhoneticString form1, PhoneticString form2) {
+        cognateForms.add(form1);
+        cognateForms.add(form2);
+        numCognatePairs++;
+    }
+
+    /**
+     * Adds the observations of this cell to the distribution, and the forms of its
+     * cognate candidates to the confidence score, in the order they were found.
+     */
+    void addTo(ObservationSink cognatePairCorrespondenceDist, ConfidenceScore confidenceScore) {
+        observations.addTo(cognatePairCorrespondenceDist);
+        for (int i = 0; i < cognateForms.size(); i += 2) {
+            confidenceScore.addAlignment(cognateForms.get(i), cognateForms.get(i + 1));
+        }
+    }
+}
@@ -0,0 +1,50 @@
+package de.jdellert.iwsa.corrmodel;
+
+import java.util.List;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Fork/join task which covers a range of (concept, language) cells and splits
+ * it in halves until single cells remain, so that idle threads can steal work
+ * from busy ones even if concepts differ strongly in size. Every cell is
+ * processed by the shared CognateAlignmentsWorker, and its results are stored
+ * at the cell index, so that they can be combined in cell order.
+ */
+class CognateAlignmentsTask extends RecursiveAction {
+    private static final long serialVersionUID = 1L;
+
+    private final List<String> params;
+    private final List<String> langIDs;
+    private final CognateAlignmentsWorker worker;
+    // cell index = param index * number of languages + language index
+    private final CognateAlignmentsCell[] cells;
+    private final int from;
+    private final int to;
+
+    CognateAlignmentsTask(List<String> params, List<String> langIDs, CognateAlignmentsWorker worker,
+                          CognateAlignmentsCell[] cells) {
+        this(params, langIDs, worker, cells, 0, cells.length);
+    }
+
+    private CognateAlignmentsTask(List<String> params, List<String> langIDs, CognateAlignmentsWorker worker,
+                                  CognateAlignmentsCell[] cells, int from, int to) {
+        this.params = params;
+        this.langIDs = langIDs;
+        this.worker = worker;
+        this.cells = cells;
+        this.from = from;
+        this.to = to;
+    }
+
+    @Override
+    protected void compute() {
+        if (to - from == 1) {
+            String param = params.get(from / langIDs.size());
+            cells[from] = worker.alignFormsForCell(param, from % langIDs.size());
+        } else if (to - from > 1) {
+            int middle = (from + to) >>> 1;
+            invokeAll(new CognateAlignmentsTask(params, langIDs, worker, cells, from, middle),
+                    new CognateAlignmentsTask(params, langIDs, worker, cells, middle, to));
+        }
+    }
+}
@@ -1,19 +1,19 @@
 package de.jdellert.iwsa.corrmodel;
 
+import de.jdellert.iwsa.align.BitParallelEditDistance;
 import de.jdellert.iwsa.align.InformationWeightedSequenceAlignment;
 import de.jdellert.iwsa.align.LevenshteinAlignmentAlgorithm;
-import de.jdellert.iwsa.align.NeedlemanWunschAlgorithm;
+import de.jdellert.iwsa.align.NeedlemanWunschAligner;
 import de.jdellert.iwsa.align.PhoneticStringAlignment;
+import de.jdellert.iwsa.data.CLDFFormIndex;
 import de.jdellert.iwsa.infomodel.InformationModel;
 import de.jdellert.iwsa.sequence.PhoneticString;
 import de.jdellert.iwsa.sequence.PhoneticSymbolTable;
 import de.jdellert.iwsa.stat.CategoricalDistribution;
-import de.tuebingen.sfs.cldfjava.data.CLDFForm;
 import de.tuebingen.sfs.cldfjava.data.CLDFWordlistDatabase;
 
 import java.util.Arrays;
 import java.util.List;
-import java.util.Map;
 
 public class CognateAlignmentsWorker implements Runnable {
     CLDFWordlistDatabase database;
@@ -23,6 +23,7 @@ public class CognateAlignmentsWorker implements Runnable {
     CategoricalDistribution cognatePairCorrespondenceDist;
     CorrespondenceModel globalCorr;
     List<String> langIDs;
+    CLDFFormIndex formIndex;
     int numPairs;
     int numCognatePairs;
     ConfidenceScore confidenceScore;
@@ -36,7 +37,8 @@ public class CognateAlignmentsWorker implements Runnable {
         this.infoModels = infoModels;
         this.relevantParams = relevantParams;
         cognatePairCorrespondenceDist = new CategoricalDistribution(symbolTable.getSize() * symbolTable.getSize());
-        langIDs = database.getLangIDs();
+        formIndex = CLDFFormIndex.of(database, symbolTable);
+        langIDs = formIndex.getLangIDs();
         confidenceScore = new ConfidenceScore(symbolTable);
     }
 
@@ -51,64 +53,131 @@ public class CognateAlignmentsWorker implements Runnable {
         this.relevantParams = relevantParams;
         this.globalCorr = globalCorr;
         cognatePairCorrespondenceDist = new CategoricalDistribution(symbolTable.getSize() * symbolTable.getSize());
-        langIDs = database.getLangIDs();
+        formIndex = CLDFFormIndex.of(database, symbolTable);
+        langIDs = formIndex.getLangIDs();
         confidenceScore = new ConfidenceScore(symbolTable);
     }
 
-
     public void run() {
         for (String param : relevantParams) {
-            Map<String, List<CLDFForm>> formsPerLang = database.getFormsByLanguageByParamID(param);
-            if (formsPerLang == null) {
+            for (int lang1Idx = 0; lang1Idx < langIDs.size(); lang1Idx++) {
+                alignFormsForConcept(param, lang1Idx);
+            }
+        }
+    }
+
+    /**
+     * Aligns the forms of one language for a concept with those of all languages,
+     * adding the results to the counts of this worker.
+     *
+     * @param lang1Idx the index of the language in database.getLangIDs()
+     */
+    public void alignFormsForConcept(String param, int lang1Idx) {
+        CognateAlignmentsCell cell = alignFormsForCell(param, lang1Idx);
+        if (cell != null) {
+            addCell(cell);
+        }
+    }
+
+    /**
+     * Adds the results of a cell to the distribution, counts and confidence score
+     * of this worker.
+     */
+    void addCell(CognateAlignmentsCell cell) {
+        cell.addTo(cognatePairCorrespondenceDist, confidenceScore);
+        numPairs += cell.numPairs;
+        numCognatePairs += cell.numCognatePairs;
+    }
+
+    /**
+     * Aligns the forms of one language for a concept with those of all languages,
+     * recording the results in a cell of their own. This is the unit of work for
+     * the work-stealing inference engine; it does not modify the worker, which can
+     * therefore be shared by all threads.
+     *
+     * In the ED-based search with SYMMETRIC_PAIR_ENUMERATION, only languages from
+     * lang1Idx onwards are compared, and each pair of forms is aligned in both
+     * orientations at once, so that the counts over all languages are the same.
+     *
+     * @param lang1Idx the index of the language in database.getLangIDs()
+     * @return the results for the cell, or null if the language has no forms for
+     *         the concept
+     */
+    CognateAlignmentsCell alignFormsForCell(String param, int lang1Idx) {
+        PhoneticString[][] formsPerLang = formIndex.getFormsPerLanguage(param);
+        if (formsPerLang == null) {
+            return null;
+        }
+        PhoneticString[] lang1Forms = formsPerLang[lang1Idx];
+        if (lang1Forms == null) {
+            return null;
+        }
+        CognateAlignmentsCell cell = new CognateAlignmentsCell();
+        NeedlemanWunschAligner aligner = NeedlemanWunschAligner.forCurrentThread();
+        BitParallelEditDistance editDistance = BitParallelEditDistance.forCurrentThread();
+        boolean symmetric = globalCorr == null && CorrespondenceModelInference.SYMMETRIC_PAIR_ENUMERATION;
+        for (int lang2Idx = symmetric ? lang1Idx : 0; lang2Idx < formsPerLang.length; lang2Idx++) {
+            PhoneticString[] lang2Forms = formsPerLang[lang2Idx];
+            if (lang2Forms == null) {
                 continue;
             }
-            for (String lang1 : langIDs) {
-                List<CLDFForm> lang1Forms = formsPerLang.get(lang1);
-                if (lang1Forms == null) {
-                    continue;
+            InformationModel infoModel1 = null;
+            InformationModel infoModel2 = null;
+            if (infoModels != null) {
+                infoModel1 = infoModels[lang1Idx];
+                infoModel2 = infoModels[lang2Idx];
+            }
+            for (int pos1 = 0; pos1 < lang1Forms.length; pos1++) {
+                PhoneticString form1 = lang1Forms[pos1];
+                if (globalCorr == null) {
+                    editDistance.setQuery(form1);
                 }
-                for (String lang2 : langIDs) {
-                    List<CLDFForm> lang2Forms = formsPerLang.get(lang2);
-                    if (lang2Forms == null) {
-                        continue;
-                    }
-                    for (CLDFForm form1inCLDF : lang1Forms) {
-                        PhoneticString form1 = new PhoneticString(symbolTable.encode(form1inCLDF.getSegments()));
-                        for (CLDFForm form2inCLDF : lang2Forms) {
-                            PhoneticString form2 = new PhoneticString(symbolTable.encode(form2inCLDF.getSegments()));
-                            PhoneticStringAlignment alignment;
-
-                            // if a global correspondence model is given, cognate judgement is WED-based, else it is ED-based
-                            if (globalCorr == null) {
-                                alignment = LevenshteinAlignmentAlgorithm.constructAlignment(form1, form2);
+                // within a language, the symmetric enumeration covers the pairs (pos1, pos2 >= pos1)
+                for (int pos2 = symmetric && lang2Idx == lang1Idx ? pos1 : 0; pos2 < lang2Forms.length; pos2++) {
+                    PhoneticString form2 = lang2Forms[pos2];
+                    // if a global correspondence model is given, cognate judgement is WED-based, else it is ED-based
+                    if (globalCorr == null) {
+                        boolean withReversedPair = symmetric && (lang2Idx != lang1Idx || pos2 != pos1);
+                        cell.numPairs += withReversedPair ? 2 : 1;
+                        // only pairs within the threshold are aligned in full
+                        if (editDistance.normalizedDistance(form2) <= 0.35) {
+                            if (withReversedPair) {
+                                PhoneticStringAlignment[] alignments = LevenshteinAlignmentAlgorithm
+                                        .constructAlignments(form1, form2);
+                                addCognateAlignment(cell, alignments[0], form1, form2, infoModel1, infoModel2);
+                                addCognateAlignment(cell, alignments[1], form2, form1, infoModel2, infoModel1);
                             } else {
-                                alignment = NeedlemanWunschAlgorithm.constructAlignment(
-                                        form1, form2, globalCorr, globalCorr, globalCorr, globalCorr);
-                            }
-                            numPairs++;
-                            double[] infoScores = new double[alignment.getLength()];
-                            if (infoModels == null) {
-                                Arrays.fill(infoScores, 1.0);
-                            }
-                            else {
-                                int lang1ID = langIDs.indexOf(lang1);
-                                int lang2ID = langIDs.indexOf(lang2);
-                                infoScores = InformationWeightedSequenceAlignment.combinedInfoScoresForAlignment(alignment, infoModels[lang1ID], infoModels[lang2ID]);
-                            }
-                            if ((globalCorr == null && alignment.normalizedDistanceScore <= 0.35) ||
-                                    (globalCorr!= null && alignment.normalizedDistanceScore <= 0.6)) {
-                                for (int pos = 0; pos < alignment.getLength(); pos++) {
-                                    cognatePairCorrespondenceDist
-                                            .addObservation(alignment.getSymbolPairIDAtPos(pos, symbolTable), infoScores[pos]);
-                                }
-                                confidenceScore.addAlignment(form1inCLDF.getSegments(), form2inCLDF.getSegments());
-                                numCognatePairs++;
+                                addCognateAlignment(cell, LevenshteinAlignmentAlgorithm.constructAlignment(form1, form2),
+                                        form1, form2, infoModel1, infoModel2);
                             }
                         }
+                    } else {
+                        cell.numPairs++;
+                        if (aligner.alignWithinThreshold(form1, form2, globalCorr, globalCorr, globalCorr, globalCorr, 0.6)) {
+                            CorrespondenceModelInference.addAlignmentObservations(cell.observations,
+                                    aligner, symbolTable, infoModel1, infoModel2);
+                            cell.addCognatePair(form1, form2);
+                        }
                     }
                 }
             }
         }
+        return cell;
+    }
+
+    private void addCognateAlignment(CognateAlignmentsCell cell, PhoneticStringAlignment alignment,
+                                     PhoneticString form1, PhoneticString form2,
+                                     InformationModel infoModel1, InformationModel infoModel2) {
+        double[] infoScores = new double[alignment.getLength()];
+        if (infoModels == null) {
+            Arrays.fill(infoScores, 1.0);
+        } else {
+            infoScores = InformationWeightedSequenceAlignment.combinedInfoScoresForAlignment(alignment, infoModel1, infoModel2);
+        }
+        for (int pos = 0; pos < alignment.getLength(); pos++) {
+            cell.observations.addObservation(alignment.getSymbolPairIDAtPos(pos, symbolTable), infoScores[pos]);
+        }
+        cell.addCognatePair(form1, form2);
     }
 
     public CategoricalDistribution getCognatePairCorrespondenceDist() {
@@ -30,6 +30,16 @@ public class ConfidenceScore {
         }
     }
 
+    public void addAlignment(PhoneticString str1, PhoneticString str2) {
+        for (int symbolIndex : str1.segments) {
+            counts[symbolIndex]++;
+        }
+        for (int symbolIndex : str2.segments) {
+            counts[symbolIndex]++;
+        }
+        sumCounts += str1.segments.length + str2.segments.length;
+    }
+
     public double getConfidenceScoreForPair(String symbol1, String symbol2) {
         return getConfidenceScoreForPair(symbolTable.toInt(symbol1), symbolTable.toInt(symbol2));
     }
@@ -54,6 +54,43 @@ public class CorrespondenceModel {
 		return getScoreOrNull(symbolPairID);
 	}
 
+	/**
+	 * Looks up the score for a symbol pair, resorting to the fallback model if this
+	 * model does not define it, and to 0.0 if neither model does. This is the
+	 * local-over-global lookup performed in every cell of the alignment matrix.
+	 *
+	 * @param fallbackModel the model to consult for undefined pairs, may be null
+	 */
+	public double getScoreOrFallback(int symbol1ID, int symbol2ID, CorrespondenceModel fallbackModel) {
+		Double score = getScoreOrNull(symbol1ID, symbol2ID);
+		if (score != null)
+			return score;
+		if (fallbackModel == null)
+			return 0.0;
+		return fallbackModel.getScoreOrFallback(symbol1ID, symbol2ID, null);
+	}
+
+	/**
+	 * @return the defined scores by symbol pair ID, the representation used for
+	 *         storage
+	 */
+	Map<Long, Double> getScores() {
+		return scores;
+	}
+
+	/**
+	 * @return a hash of the defined scores, by which results computed with this
+	 *         model can be recognized as outdated when the model has changed
+	 */
+	public long fingerprint() {
+		long fingerprint = symbolTable.getSize();
+		for (Map.Entry<Long, Double> entry : new TreeMap<Long, Double>(getScores()).entrySet()) {
+			fingerprint = 31 * fingerprint + entry.getKey();
+			fingerprint = 31 * fingerprint + Double.doubleToLongBits(entry.getValue());
+		}
+		return fingerprint;
+	}
+
 	public String getDbPath() {
 		return dbPath;
 	}
@@ -1,26 +1,36 @@
 package de.jdellert.iwsa.corrmodel;
 
 import de.jdellert.iwsa.ConceptLevelWeightedEditDistanceOutput;
+import de.jdellert.iwsa.align.AlignmentCache;
+import de.jdellert.iwsa.align.BitParallelEditDistance;
 import de.jdellert.iwsa.align.InformationWeightedSequenceAlignment;
 import de.jdellert.iwsa.align.LevenshteinAlignmentAlgorithm;
-import de.jdellert.iwsa.align.NeedlemanWunschAlgorithm;
+import de.jdellert.iwsa.align.NeedlemanWunschAligner;
 import de.jdellert.iwsa.align.PhoneticStringAlignment;
+import de.jdellert.iwsa.align.SelfSimilarityTable;
+import de.jdellert.iwsa.data.CLDFFormIndex;
 import de.jdellert.iwsa.data.LexicalDatabase;
 import de.jdellert.iwsa.infomodel.InformationModel;
 import de.jdellert.iwsa.sequence.PhoneticString;
 import de.jdellert.iwsa.sequence.PhoneticSymbolTable;
 import de.jdellert.iwsa.stat.CategoricalDistribution;
+import de.jdellert.iwsa.stat.ObservationBuffer;
+import de.jdellert.iwsa.stat.ObservationSink;
 import de.jdellert.iwsa.util.io.Formatting;
-import de.tuebingen.sfs.cldfjava.data.CLDFForm;
 import de.tuebingen.sfs.cldfjava.data.CLDFWordlistDatabase;
 
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.SplittableRandom;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
 
 public class CorrespondenceModelInference {
 	public static boolean VERBOSE = false;
@@ -32,6 +42,20 @@ public class CorrespondenceModelInference {
 	public static int NUM_THREADS = 8;
 	
 	public static double LOCAL_PMI_RATIO = 0.5;
+
+	// number of random alignments per parallel task when simulating non-cognates
+	public static int RANDOM_PAIRS_PER_TASK = 10000;
+	// seed for sampling the random alignments; runs with the same seed infer the same models
+	public static long RANDOM_SEED = 42L;
+
+	// score representation of inferred models: flat arrays (fast lookup) or maps (compact if sparse)
+	public static boolean DENSE_GLOBAL_MODEL = true;
+	public static boolean DENSE_LOCAL_MODELS = false;
+
+	// align each unordered form pair only once when searching ED-based cognate candidates
+	public static boolean SYMMETRIC_PAIR_ENUMERATION = true;
+	// number of WED-based candidate alignments to keep for recurring pairs of identical forms (0 to disable)
+	public static int ALIGNMENT_CACHE_CAPACITY = AlignmentCache.DEFAULT_CAPACITY;
 	
 	public static CorrespondenceModel inferGlobalCorrespondenceModel(LexicalDatabase database,
 			PhoneticSymbolTable symbolTable) {
@@ -40,139 +64,275 @@ public class CorrespondenceModelInference {
 
 	public static CorrespondenceModel inferGlobalCorrespondenceModel(LexicalDatabase database,
 			PhoneticSymbolTable symbolTable, InformationModel[] infoModels) {
-		CategoricalDistribution randomPairCorrespondenceDist = new CategoricalDistribution(
-				symbolTable.getSize() * symbolTable.getSize());
-		int numRandomPairs = database.getNumConcepts() * database.getNumLanguages() * database.getNumLanguages();
-		System.err.print("  Step 1: Simulating non-cognates by means of " + numRandomPairs + " random alignments ...");
-		for (int i = 0; i < numRandomPairs; i++) {
-			int randomLang1 = (int) (Math.random() * database.getNumLanguages());
-			int randomLang2 = (int) (Math.random() * database.getNumLanguages());
-			PhoneticString form1 = database.getRandomFormForLanguage(randomLang1);
-			PhoneticString form2 = database.getRandomFormForLanguage(randomLang2);
-			PhoneticStringAlignment alignment = LevenshteinAlignmentAlgorithm.constructAlignment(form1, form2);
-			double[] infoScores = new double[alignment.getLength()];
-			if (infoModels == null) {
-				Arrays.fill(infoScores, 1.0);
+		return inferGlobalCorrespondenceModel(database, symbolTable, infoModels, NUM_THREADS);
+	}
+
+	/**
+	 * Infers the global correspondence model using numThreads threads. The
+	 * alignments are split into tasks (blocks of random pairs, or single concepts)
+	 * which record their observations in buffers, and the buffers are added to the
+	 * distributions in task order. The result is therefore the same for any number
+	 * of threads.
+	 */
+	public static CorrespondenceModel inferGlobalCorrespondenceModel(LexicalDatabase database,
+			PhoneticSymbolTable symbolTable, InformationModel[] infoModels, int numThreads) {
+		if (infoModels != null) {
+			database.cacheInformationContents(infoModels);
+		}
+		ForkJoinPool pool = new ForkJoinPool(numThreads);
+		try {
+			CategoricalDistribution randomPairCorrespondenceDist = new CategoricalDistribution(
+					symbolTable.getSize() * symbolTable.getSize());
+			int numRandomPairs = database.getNumConcepts() * database.getNumLanguages() * database.getNumLanguages();
+			System.err.print("  Step 1: Simulating non-cognates by means of " + numRandomPairs + " random alignments ...");
+			List<ForkJoinTask<ObservationBuffer>> randomPairTasks = new ArrayList<>();
+			SplittableRandom seedRandom = new SplittableRandom(RANDOM_SEED);
+			for (int first = 0; first < numRandomPairs; first += RANDOM_PAIRS_PER_TASK) {
+				int numPairsInTask = Math.min(RANDOM_PAIRS_PER_TASK, numRandomPairs - first);
+				// one generator per task, split off in task order, independently of the number of threads
+				SplittableRandom random = seedRandom.split();
+				randomPairTasks.add(pool.submit(
+						() -> alignRandomPairs(database, symbolTable, infoModels, numPairsInTask, random)));
 			}
-			else {
-				infoScores = InformationWeightedSequenceAlignment.combinedInfoScoresForAlignment(alignment, infoModels[randomLang1], infoModels[randomLang2]);
+			for (ForkJoinTask<ObservationBuffer> task : randomPairTasks) {
+				task.join().addTo(randomPairCorrespondenceDist);
 			}
-			for (int pos = 0; pos < alignment.getLength(); pos++) {
-				randomPairCorrespondenceDist.addObservation(alignment.getSymbolPairIDAtPos(pos, symbolTable), infoScores[pos]);
+			System.err.print(" done.\n");
+
+			System.err.print("  Step 2: Finding ED-based cognate candidates ...");
+			CognateCandidates candidates = findCognateCandidates(database, symbolTable, null, infoModels, pool);
+			CategoricalDistribution cognatePairCorrespondenceDist = candidates.correspondenceDist;
+			System.err.print(" done. Aligned " + candidates.numPairs + " form pairs, of which " + candidates.numCognatePairs
+					+ " look like cognates (normalized edit distance < 0.35)\n");
+
+			System.err.print("          Comparing the distributions of symbol pairs for PMI scores ...");
+			CorrespondenceModel globalCorr = createGlobalModel(symbolTable);
+			for (int symbolPairID = 0; symbolPairID < symbolTable.getSize() * symbolTable.getSize(); symbolPairID++) {
+				double cognateSymbolPairProbability = cognatePairCorrespondenceDist.getProb(symbolPairID);
+				double randomSymbolPairProbability = randomPairCorrespondenceDist.getProb(symbolPairID);
+				double pmiScore = Math.log(cognateSymbolPairProbability / randomSymbolPairProbability);
+				globalCorr.setScore(symbolPairID, pmiScore);
 			}
-		}
-		System.err.print(" done.\n");
+			System.err.print(" done.\n");
 
-		int numPairs = 0;
-		int numCognatePairs = 0;
-		CategoricalDistribution cognatePairCorrespondenceDist = new CategoricalDistribution(
-				symbolTable.getSize() * symbolTable.getSize());
+			System.err.print(
+					"  Step 3: Reestimation based on Needleman-Wunsch (" + NUM_GLOBAL_CORR_REESTIMATIONS + " iterations)\n");
+			for (int iteration = 0; iteration < NUM_GLOBAL_CORR_REESTIMATIONS; iteration++) {
+				System.err.print("    Iteration 0" + (iteration + 1) + ": Finding WED-based cognate candidates ...");
+				candidates = findCognateCandidates(database, symbolTable, globalCorr, infoModels, pool);
+				cognatePairCorrespondenceDist = candidates.correspondenceDist;
+				System.err.print(
+						" done. " + candidates.numCognatePairs + " form pairs look like cognates (normalized aligment score < 0.6)\n");
 
-		System.err.print("  Step 2: Finding ED-based cognate candidates ...");
-		for (int conceptID = 0; conceptID < database.getNumConcepts(); conceptID++) {
-			List<List<Integer>> formsPerLang = database.getFormIDsForConceptPerLanguage(conceptID);
-			for (int lang1ID = 0; lang1ID < database.getNumLanguages(); lang1ID++) {
-				for (int lang2ID = 0; lang2ID < database.getNumLanguages(); lang2ID++) {
-					for (int lang1FormID : formsPerLang.get(lang1ID)) {
-						PhoneticString lang1Form = database.getForm(lang1FormID);
-						for (int lang2FormID : formsPerLang.get(lang2ID)) {
-							PhoneticString lang2Form = database.getForm(lang2FormID);
-							PhoneticStringAlignment alignment = LevenshteinAlignmentAlgorithm.constructAlignment(lang1Form, lang2Form);
-							numPairs++;
-							double[] infoScores = new double[alignment.getLength()];
-							if (infoModels == null) {
-								Arrays.fill(infoScores, 1.0);
-							}
-							else {
-								infoScores = InformationWeightedSequenceAlignment.combinedInfoScoresForAlignment(alignment, infoModels[lang1ID], infoModels[lang2ID]);
-							}		
-							if (alignment.normalizedDistanceScore <= 0.35) {
-								for (int pos = 0; pos < alignment.getLength(); pos++) {
-									cognatePairCorrespondenceDist
-											.addObservation(alignment.getSymbolPairIDAtPos(pos, symbolTable), infoScores[pos]);
-								}
-								numCognatePairs++;
-							}
-						}
-					}
+				System.err.print("          Comparing the distributions of symbol pairs to reestimate PMI scores ...");
+				globalCorr = createGlobalModel(symbolTable);
+				for (int symbolPairID = 0; symbolPairID < symbolTable.getSize() * symbolTable.getSize(); symbolPairID++) {
+					double cognateSymbolPairProbability = cognatePairCorrespondenceDist.getProb(symbolPairID);
+					double randomSymbolPairProbability = randomPairCorrespondenceDist.getProb(symbolPairID);
+					double pmiScore = Math.log(cognateSymbolPairProbability / randomSymbolPairProbability);
+					globalCorr.setScore(symbolPairID, pmiScore);
+					if (VERBOSE)
+						System.err.println(" Global correspondence for " + symbolTable.toSymbolPair(symbolPairID) + " in iteration "
+								+ iteration + ": " + Formatting.str3f(globalCorr.getScore(symbolPairID)) + "\t"
+								+ Formatting.str3f(pmiScore) + "\t"
+								+ "\t" + Formatting.str12f(cognateSymbolPairProbability) + " ("
+								+ (int) cognatePairCorrespondenceDist.getObservationCount(symbolPairID) + "/"
+								+ (int) cognatePairCorrespondenceDist.getObservationCountsSum() + ")\t"
+								+ Formatting.str12f(randomSymbolPairProbability) + " ("
+								+ (int) randomPairCorrespondenceDist.getObservationCount(symbolPairID) + "/"
+								+ (int) randomPairCorrespondenceDist.getObservationCountsSum() + ")\t");
 				}
+				System.err.print(" done.\n");
 			}
+
+			return globalCorr;
+		} finally {
+			pool.shutdown();
 		}
-		System.err.print(" done. Aligned " + numPairs + " form pairs, of which " + numCognatePairs
-				+ " look like cognates (normalized edit distance < 0.35)\n");
+	}
 
-		System.err.print("          Comparing the distributions of symbol pairs for PMI scores ...");
-		CorrespondenceModel globalCorr = new CorrespondenceModel(symbolTable);
-		for (int symbolPairID = 0; symbolPairID < symbolTable.getSize() * symbolTable.getSize(); symbolPairID++) {
-			double cognateSymbolPairProbability = cognatePairCorrespondenceDist.getProb(symbolPairID);
-			double randomSymbolPairProbability = randomPairCorrespondenceDist.getProb(symbolPairID);
-			double pmiScore = Math.log(cognateSymbolPairProbability / randomSymbolPairProbability);
-			globalCorr.setScore(symbolPairID, pmiScore);
+	/**
+	 * Result of a cognate candidate search over all concepts of a LexicalDatabase.
+	 */
+	private static class CognateCandidates {
+		CategoricalDistribution correspondenceDist;
+		int numPairs;
+		int numCognatePairs;
+	}
+
+	/**
+	 * Observations and pair counts for the cognate candidates of one concept.
+	 */
+	private static class ConceptCognateCandidates {
+		ObservationBuffer observations = new ObservationBuffer();
+		int numPairs;
+		int numCognatePairs;
+	}
+
+	/**
+	 * Searches cognate candidates within all concepts in parallel, based on edit
+	 * distance if globalCorr is null, and on weighted edit distance otherwise. The
+	 * observations are added to the distribution in concept order.
+	 */
+	private static CognateCandidates findCognateCandidates(LexicalDatabase database, PhoneticSymbolTable symbolTable,
+			CorrespondenceModel globalCorr, InformationModel[] infoModels, ForkJoinPool pool) {
+		List<ForkJoinTask<ConceptCognateCandidates>> conceptTasks = new ArrayList<>(database.getNumConcepts());
+		AlignmentCache<PhoneticStringAlignment> wedCandidates = globalCorr != null && ALIGNMENT_CACHE_CAPACITY > 0
+				? new AlignmentCache<>(ALIGNMENT_CACHE_CAPACITY)
+				: null;
+		SelfSimilarityTable selfSimilarities = globalCorr == null ? null
+				: SelfSimilarityTable.forModel(database, globalCorr);
+		for (int conceptID = 0; conceptID < database.getNumConcepts(); conceptID++) {
+			int taskConceptID = conceptID;
+			conceptTasks.add(pool.submit(() -> findCognateCandidatesForConcept(database, symbolTable, taskConceptID,
+					globalCorr, selfSimilarities, infoModels, wedCandidates)));
 		}
-		System.err.print(" done.\n");
+		CognateCandidates result = new CognateCandidates();
+		result.correspondenceDist = new CategoricalDistribution(symbolTable.getSize() * symbolTable.getSize());
+		for (ForkJoinTask<ConceptCognateCandidates> task : conceptTasks) {
+			ConceptCognateCandidates conceptResult = task.join();
+			conceptResult.observations.addTo(result.correspondenceDist);
+			result.numPairs += conceptResult.numPairs;
+			result.numCognatePairs += conceptResult.numCognatePairs;
+		}
+		if (VERBOSE && wedCandidates != null)
+			System.err.print(" (alignment cache: " + wedCandidates + ")");
+		return result;
+	}
 
-		System.err.print(
-				"  Step 3: Reestimation based on Needleman-Wunsch (" + NUM_GLOBAL_CORR_REESTIMATIONS + " iterations)\n");
-		for (int iteration = 0; iteration < NUM_GLOBAL_CORR_REESTIMATIONS; iteration++) {
-			cognatePairCorrespondenceDist = new CategoricalDistribution(symbolTable.getSize() * symbolTable.getSize());
-			System.err.print("    Iteration 0" + (iteration + 1) + ": Finding WED-based cognate candidates ...");
-			numPairs = 0;
-			numCognatePairs = 0;
-			for (int conceptID = 0; conceptID < database.getNumConcepts(); conceptID++) {
-				List<List<Integer>> formsPerLang = database.getFormIDsForConceptPerLanguage(conceptID);
-				for (int lang1ID = 0; lang1ID < database.getNumLanguages(); lang1ID++) {
-					for (int lang2ID = 0; lang2ID < database.getNumLanguages(); lang2ID++) {
-						for (int lang1FormID : formsPerLang.get(lang1ID)) {
-							PhoneticString lang1Form = database.getForm(lang1FormID);
-							for (int lang2FormID : formsPerLang.get(lang2ID)) {
-								PhoneticString lang2Form = database.getForm(lang2FormID);
-								PhoneticStringAlignment alignment = NeedlemanWunschAlgorithm.constructAlignment(
-										lang1Form, lang2Form, globalCorr, globalCorr, globalCorr, globalCorr);
-								numPairs++;
+	/**
+	 * Collects the cognate candidates among the forms of one concept, enumerating
+	 * all ordered pairs of forms. In the ED-based search with
+	 * SYMMETRIC_PAIR_ENUMERATION, the edit distance and alignment of a pair are
+	 * computed together with those of the reversed pair, which is kept until the
+	 * enumeration reaches it, so that the observations are the same and are made
+	 * in the same order. In the WED-based search, the candidate alignments of
+	 * identical pairs of forms are taken from wedCandidates if it is not null.
+	 *
+	 * @param selfSimilarities the self-similarities of all forms under globalCorr,
+	 *                         required iff globalCorr is not null
+	 */
+	private static ConceptCognateCandidates findCognateCandidatesForConcept(LexicalDatabase database,
+			PhoneticSymbolTable symbolTable, int conceptID, CorrespondenceModel globalCorr,
+			SelfSimilarityTable selfSimilarities, InformationModel[] infoModels,
+			AlignmentCache<PhoneticStringAlignment> wedCandidates) {
+		ConceptCognateCandidates result = new ConceptCognateCandidates();
+		NeedlemanWunschAligner aligner = NeedlemanWunschAligner.forCurrentThread();
+		BitParallelEditDistance editDistance = BitParallelEditDistance.forCurrentThread();
+		List<List<Integer>> formsPerLang = database.getFormIDsForConceptPerLanguage(conceptID);
+		// (form ID pair) => ED alignment of a candidate pair whose reverse has been aligned already
+		Map<Long, PhoneticStringAlignment> reversedAlignments = globalCorr == null && SYMMETRIC_PAIR_ENUMERATION
+				? new HashMap<>()
+				: null;
+		for (int lang1ID = 0; lang1ID < database.getNumLanguages(); lang1ID++) {
+			List<Integer> lang1FormIDs = formsPerLang.get(lang1ID);
+			for (int lang2ID = 0; lang2ID < database.getNumLanguages(); lang2ID++) {
+				List<Integer> lang2FormIDs = formsPerLang.get(lang2ID);
+				for (int pos1 = 0; pos1 < lang1FormIDs.size(); pos1++) {
+					int lang1FormID = lang1FormIDs.get(pos1);
+					PhoneticString lang1Form = database.getForm(lang1FormID);
+					if (globalCorr == null && (reversedAlignments == null || lang1ID <= lang2ID)) {
+						editDistance.setQuery(lang1Form);
+					}
+					for (int pos2 = 0; pos2 < lang2FormIDs.size(); pos2++) {
+						int lang2FormID = lang2FormIDs.get(pos2);
+						PhoneticString lang2Form = database.getForm(lang2FormID);
+						result.numPairs++;
+						if (globalCorr == null) {
+							PhoneticStringAlignment alignment = null;
+							if (reversedAlignments != null && (lang1ID > lang2ID || lang1ID == lang2ID && pos1 > pos2)) {
+								// the reversed pair came first; null if it was no candidate
+								alignment = reversedAlignments.remove(formPairKey(lang1FormID, lang2FormID));
+							}
+							// only pairs within the threshold are aligned in full
+							else if (editDistance.normalizedDistance(lang2Form) <= 0.35) {
+								if (reversedAlignments != null && (lang1ID != lang2ID || pos1 != pos2)) {
+									PhoneticStringAlignment[] alignments = LevenshteinAlignmentAlgorithm
+											.constructAlignments(lang1Form, lang2Form);
+									alignment = alignments[0];
+									reversedAlignments.put(formPairKey(lang2FormID, lang1FormID), alignments[1]);
+								} else {
+									alignment = LevenshteinAlignmentAlgorithm.constructAlignment(lang1Form, lang2Form);
+								}
+							}
+							if (alignment != null) {
 								double[] infoScores = new double[alignment.getLength()];
 								if (infoModels == null) {
 									Arrays.fill(infoScores, 1.0);
 								}
 								else {
-									infoScores = InformationWeightedSequenceAlignment.combinedInfoScoresForAlignment(alignment, infoModels[lang1ID], infoModels[lang2ID]);
-								}				
-								if (alignment.normalizedDistanceScore <= 0.6) {
-									for (int pos = 0; pos < alignment.getLength(); pos++) {
-										cognatePairCorrespondenceDist
-												.addObservation(alignment.getSymbolPairIDAtPos(pos, symbolTable), infoScores[pos]);
-									}
-									numCognatePairs++;
+									infoScores = InformationWeightedSequenceAlignment.combinedInfoScoresForAlignment(alignment,
+											database.getInformationContents(lang1FormID), database.getInformationContents(lang2FormID));
 								}
+								for (int pos = 0; pos < alignment.getLength(); pos++) {
+									result.observations.addObservation(alignment.getSymbolPairIDAtPos(pos, symbolTable), infoScores[pos]);
+								}
+								result.numCognatePairs++;
+							}
+						} else if (wedCandidates != null) {
+							// the alignment only depends on the forms and the global model, not on the languages
+							PhoneticStringAlignment alignment = wedCandidates.get(lang1Form, lang2Form,
+									() -> aligner.alignWithinThreshold(lang1Form, lang2Form, globalCorr, globalCorr,
+											selfSimilarities.getSelfSimilarity(lang1FormID),
+											selfSimilarities.getSelfSimilarity(lang2FormID), 0.6) ? aligner.toAlignment() : null,
+									globalCorr);
+							if (alignment != null) {
+								addAlignmentObservations(result.observations, alignment, symbolTable,
+										infoModels == null ? null : database.getInformationContents(lang1FormID),
+										infoModels == null ? null : database.getInformationContents(lang2FormID));
+								result.numCognatePairs++;
+							}
+						} else {
+							if (aligner.alignWithinThreshold(lang1Form, lang2Form, globalCorr, globalCorr,
+									selfSimilarities.getSelfSimilarity(lang1FormID),
+									selfSimilarities.getSelfSimilarity(lang2FormID), 0.6)) {
+								addAlignmentObservations(result.observations, aligner, symbolTable,
+										infoModels == null ? null : database.getInformationContents(lang1FormID),
+										infoModels == null ? null : database.getInformationContents(lang2FormID));
+								result.numCognatePairs++;
 							}
 						}
 					}
 				}
 			}
-			System.err.print(
-					" done. " + numCognatePairs + " form pairs look like cognates (normalized aligment score < 0.6)\n");
+		}
+		return result;
+	}
 
-			System.err.print("          Comparing the distributions of symbol pairs to reestimate PMI scores ...");
-			globalCorr = new CorrespondenceModel(symbolTable);
-			for (int symbolPairID = 0; symbolPairID < symbolTable.getSize() * symbolTable.getSize(); symbolPairID++) {
-				double cognateSymbolPairProbability = cognatePairCorrespondenceDist.getProb(symbolPairID);
-				double randomSymbolPairProbability = randomPairCorrespondenceDist.getProb(symbolPairID);
-				double pmiScore = Math.log(cognateSymbolPairProbability / randomSymbolPairProbability);
-				globalCorr.setScore(symbolPairID, pmiScore);
-				if (VERBOSE)
-					System.err.println(" Global correspondence for " + symbolTable.toSymbolPair(symbolPairID) + " in iteration "
-							+ iteration + ": " + Formatting.str3f(globalCorr.getScore(symbolPairID)) + "\t"
-							+ Formatting.str3f(pmiScore) + "\t"
-							+ "\t" + Formatting.str12f(cognateSymbolPairProbability) + " ("
-							+ (int) cognatePairCorrespondenceDist.getObservationCount(symbolPairID) + "/"
-							+ (int) cognatePairCorrespondenceDist.getObservationCountsSum() + ")\t"
-							+ Formatting.str12f(randomSymbolPairProbability) + " ("
-							+ (int) randomPairCorrespondenceDist.getObservationCount(symbolPairID) + "/"
-							+ (int) randomPairCorrespondenceDist.getObservationCountsSum() + ")\t");
+	private static long formPairKey(int form1ID, int form2ID) {
+		return ((long) form1ID << 32) | (form2ID & 0xffffffffL);
+	}
+
+	private static ObservationBuffer alignRandomPairs(LexicalDatabase database, PhoneticSymbolTable symbolTable,
+			InformationModel[] infoModels, int numPairs, SplittableRandom random) {
+		ObservationBuffer observations = new ObservationBuffer();
+		for (int i = 0; i < numPairs; i++) {
+			int randomLang1 = random.nextInt(database.getNumLanguages());
+			int randomLang2 = random.nextInt(database.getNumLanguages());
+			PhoneticString form1 = database.getRandomFormForLanguage(randomLang1, random);
+			PhoneticString form2 = database.getRandomFormForLanguage(randomLang2, random);
+			PhoneticStringAlignment alignment = LevenshteinAlignmentAlgorithm.constructAlignment(form1, form2);
+			double[] infoScores = new double[alignment.getLength()];
+			if (infoModels == null) {
+				Arrays.fill(infoScores, 1.0);
+			}
+			else {
+				infoScores = InformationWeightedSequenceAlignment.combinedInfoScoresForAlignment(alignment, infoModels[randomLang1], infoModels[randomLang2]);
+			}
+			for (int pos = 0; pos < alignment.getLength(); pos++) {
+				observations.addObservation(alignment.getSymbolPairIDAtPos(pos, symbolTable), infoScores[pos]);
 			}
-			System.err.print(" done.\n");
 		}
+		return observations;
+	}
 
-		return globalCorr;
+	/**
+	 * @return the generator for the random alignments of a language pair, which
+	 *         only depends on RANDOM_SEED and the pair, not on the thread running
+	 *         the inference
+	 */
+	private static SplittableRandom randomForPair(int lang1ID, int lang2ID) {
+		return new SplittableRandom(RANDOM_SEED ^ (((long) lang1ID << 32) | (lang2ID & 0xffffffffL)));
 	}
 
 	public static CorrespondenceModel inferGlobalCorrespondenceModel(CLDFWordlistDatabase database,
@@ -185,7 +345,36 @@ public class CorrespondenceModelInference {
 																	 PhoneticSymbolTable symbolTable,
 																	 InformationModel[] infoModels,
 																	 String confidenceScoreFilePath) {
-		List<String> langIDs = database.getLangIDs();
+		return inferGlobalCorrespondenceModel(database, symbolTable, infoModels, confidenceScoreFilePath, NUM_THREADS);
+	}
+
+	/**
+	 * Infers the global correspondence model on a work-stealing pool of numThreads
+	 * threads, which is reused for all steps. Cognate candidates are searched in
+	 * one task per concept and language, so that a few large concepts do not
+	 * leave the other threads idle. As for LexicalDatabase, the random pairs are
+	 * sampled in blocks with generators of their own, and all tasks record their
+	 * observations in buffers which are added in task order, so that the result
+	 * is the same for any number of threads.
+	 */
+	public static CorrespondenceModel inferGlobalCorrespondenceModel(CLDFWordlistDatabase database,
+																	 PhoneticSymbolTable symbolTable,
+																	 InformationModel[] infoModels,
+																	 String confidenceScoreFilePath,
+																	 int numThreads) {
+		ForkJoinPool pool = new ForkJoinPool(numThreads);
+		try {
+			return inferGlobalCorrespondenceModel(database, symbolTable, infoModels, confidenceScoreFilePath, pool);
+		} finally {
+			pool.shutdown();
+		}
+	}
+
+	private static CorrespondenceModel inferGlobalCorrespondenceModel(CLDFWordlistDatabase database,
+																	  PhoneticSymbolTable symbolTable,
+																	  InformationModel[] infoModels,
+																	  String confidenceScoreFilePath,
+																	  ForkJoinPool pool) {
 		database.cacheFormsByLanguage();
 		CategoricalDistribution randomPairCorrespondenceDist = new CategoricalDistribution(
 				symbolTable.getSize() * symbolTable.getSize());
@@ -196,60 +385,47 @@ public class CorrespondenceModelInference {
 			numRandomPairs = 20000000; // prevent integer overflow
 		}
 		System.err.print("  Step 1: Simulating non-cognates by means of " + numRandomPairs + " random alignments ...");
-		ExecutorService executor = Executors.newFixedThreadPool(NUM_THREADS);
-		RandomAlignmentsWorker[] workers = new RandomAlignmentsWorker[NUM_THREADS];
-		for (int i = 0; i < NUM_THREADS; i++) {
+		List<RandomAlignmentsWorker> workers = new ArrayList<>();
+		List<ForkJoinTask<?>> randomAlignmentTasks = new ArrayList<>();
+		SplittableRandom seedRandom = new SplittableRandom(RANDOM_SEED);
+		for (int first = 0; first < numRandomPairs; first += RANDOM_PAIRS_PER_TASK) {
+			int numPairsInTask = Math.min(RANDOM_PAIRS_PER_TASK, numRandomPairs - first);
+			// one generator per task, split off in task order, independently of the number of threads
 			RandomAlignmentsWorker corrModelWorker = new RandomAlignmentsWorker(database,
-					symbolTable, infoModels, numRandomPairs / NUM_THREADS, i == 0);
-			workers[i] = corrModelWorker;
-			executor.execute(corrModelWorker);
+					symbolTable, infoModels, numPairsInTask, seedRandom.split());
+			workers.add(corrModelWorker);
+			randomAlignmentTasks.add(pool.submit(corrModelWorker));
 		}
-		executor.shutdown();
-		while(!executor.isTerminated()) {}
-
-		for (int i = 0; i < workers.length; i++) {
-			randomPairCorrespondenceDist.concatenate(workers[i].getRandomPairCorrespondenceDist());
+		int onePercentOfRandomPairs = Math.max(1, numRandomPairs / 100);
+		int numProcessedPairs = 0;
+		for (int i = 0; i < workers.size(); i++) {
+			randomAlignmentTasks.get(i).join();
+			workers.get(i).getRandomPairObservations().addTo(randomPairCorrespondenceDist);
+			int previouslyProcessedPairs = numProcessedPairs;
+			numProcessedPairs += workers.get(i).numRandomPairs;
+			if (numProcessedPairs / onePercentOfRandomPairs > previouslyProcessedPairs / onePercentOfRandomPairs) {
+				System.err.println("Processed " + numProcessedPairs + " of " + numRandomPairs + " random pairs ("
+						+ (numProcessedPairs * 100L) / numRandomPairs + "%)");
+			}
+			// the observations are no longer needed once they have been added
+			workers.set(i, null);
 		}
 
 		System.err.print(" done.\n");
 
-		int numPairs = 0;
-		int numCognatePairs = 0;
-		CategoricalDistribution cognatePairCorrespondenceDist = new CategoricalDistribution(
-				symbolTable.getSize() * symbolTable.getSize());
-
 		System.err.print("  Step 2: Finding ED-based cognate candidates ...");
 
-		List<String> params = new ArrayList<>(database.getConceptMap().keySet());
-		executor = Executors.newFixedThreadPool(NUM_THREADS);
-		CognateAlignmentsWorker[] cognateAlignmentsWorkers = new CognateAlignmentsWorker[NUM_THREADS];
-		int chunkSize = params.size() / NUM_THREADS;
-		for (int i = 0; i < NUM_THREADS; i++) {
-			CognateAlignmentsWorker alignmentsWorker;
-			if (i < NUM_THREADS - 1) {
-				alignmentsWorker = new CognateAlignmentsWorker(database,
-						symbolTable, infoModels, params.subList(i * chunkSize, (i+1) * chunkSize));
-			} else {
-				alignmentsWorker = new CognateAlignmentsWorker(database,
-						symbolTable, infoModels, params.subList(i * chunkSize, params.size()));
-			}
-			cognateAlignmentsWorkers[i] = alignmentsWorker;
-			executor.execute(alignmentsWorker);
-		}
-		executor.shutdown();
-		while(!executor.isTerminated()) {}
-
-		for (int i = 0; i < cognateAlignmentsWorkers.length; i++) {
-			cognatePairCorrespondenceDist.concatenate(cognateAlignmentsWorkers[i].getCognatePairCorrespondenceDist());
-			numPairs += cognateAlignmentsWorkers[i].getNumPairs();
-			numCognatePairs += cognateAlignmentsWorkers[i].getNumCognatePairs();
-		}
+		List<String> params = CLDFFormIndex.of(database, symbolTable).getParamIDs();
+		CognateAlignmentsWorker cognateCandidates = findCognateCandidates(database, symbolTable, infoModels, params,
+				null, pool);
+		CategoricalDistribution cognatePairCorrespondenceDist = cognateCandidates.getCognatePairCorrespondenceDist();
 
-		System.err.print(" done. Aligned " + numPairs + " form pairs, of which " + numCognatePairs
+		System.err.print(" done. Aligned " + cognateCandidates.getNumPairs() + " form pairs, of which "
+				+ cognateCandidates.getNumCognatePairs()
 				+ " look like cognates (normalized edit distance < 0.35)\n");
 
 		System.err.print("          Comparing the distributions of symbol pairs for PMI scores ...");
-		CorrespondenceModel globalCorr = new CorrespondenceModel(symbolTable);
+		CorrespondenceModel globalCorr = createGlobalModel(symbolTable);
 		for (int symbolPairID = 0; symbolPairID < symbolTable.getSize() * symbolTable.getSize(); symbolPairID++) {
 			double cognateSymbolPairProbability = cognatePairCorrespondenceDist.getProb(symbolPairID);
 			double randomSymbolPairProbability = randomPairCorrespondenceDist.getProb(symbolPairID);
@@ -261,48 +437,23 @@ public class CorrespondenceModelInference {
 		System.err.print(
 				"  Step 3: Reestimation based on Needleman-Wunsch (" + NUM_GLOBAL_CORR_REESTIMATIONS + " iterations)\n");
 		for (int iteration = 0; iteration < NUM_GLOBAL_CORR_REESTIMATIONS; iteration++) {
-			cognatePairCorrespondenceDist = new CategoricalDistribution(symbolTable.getSize() * symbolTable.getSize());
 			System.err.print("    Iteration 0" + (iteration + 1) + ": Finding WED-based cognate candidates ...");
-			numPairs = 0;
-			numCognatePairs = 0;
-			ConfidenceScore confidenceScore = new ConfidenceScore(symbolTable);
-			executor = Executors.newFixedThreadPool(NUM_THREADS);
-
-			for (int i = 0; i < NUM_THREADS; i++) {
-				CognateAlignmentsWorker alignmentsWorker;
-				if (i < NUM_THREADS - 1) {
-					alignmentsWorker = new CognateAlignmentsWorker(database,
-							symbolTable, infoModels, params.subList(i * chunkSize, (i+1) * chunkSize), globalCorr);
-				} else {
-					alignmentsWorker = new CognateAlignmentsWorker(database,
-							symbolTable, infoModels, params.subList(i * chunkSize, params.size()), globalCorr);
-				}
-				cognateAlignmentsWorkers[i] = alignmentsWorker;
-				executor.execute(alignmentsWorker);
-			}
-			executor.shutdown();
-			while(!executor.isTerminated()) {}
-
-			for (int i = 0; i < cognateAlignmentsWorkers.length; i++) {
-				cognatePairCorrespondenceDist.concatenate(cognateAlignmentsWorkers[i].getCognatePairCorrespondenceDist());
-				numPairs += cognateAlignmentsWorkers[i].getNumPairs();
-				numCognatePairs += cognateAlignmentsWorkers[i].getNumCognatePairs();
-				confidenceScore.concatenate(cognateAlignmentsWorkers[i].getConfidenceScore());
-			}
+			cognateCandidates = findCognateCandidates(database, symbolTable, infoModels, params, globalCorr, pool);
+			cognatePairCorrespondenceDist = cognateCandidates.getCognatePairCorrespondenceDist();
 
 			if (confidenceScoreFilePath != null) {
 				try {
-					confidenceScore.toFile(confidenceScoreFilePath);
+					cognateCandidates.getConfidenceScore().toFile(confidenceScoreFilePath);
 				} catch (IOException e) {
 					e.printStackTrace();
 				}
 			}
 
 			System.err.print(
-					" done. " + numCognatePairs + " form pairs look like cognates (normalized aligment score < 0.6)\n");
+					" done. " + cognateCandidates.getNumCognatePairs() + " form pairs look like cognates (normalized aligment score < 0.6)\n");
 
 			System.err.print("          Comparing the distributions of symbol pairs to reestimate PMI scores ...");
-			globalCorr = new CorrespondenceModel(symbolTable);
+			globalCorr = createGlobalModel(symbolTable);
 			for (int symbolPairID = 0; symbolPairID < symbolTable.getSize() * symbolTable.getSize(); symbolPairID++) {
 				double cognateSymbolPairProbability = cognatePairCorrespondenceDist.getProb(symbolPairID);
 				double randomSymbolPairProbability = randomPairCorrespondenceDist.getProb(symbolPairID);
@@ -324,43 +475,159 @@ public class CorrespondenceModelInference {
 
 		return globalCorr;
 	}
+
+	/**
+	 * Runs one cognate candidate search over all (concept, language) cells on the
+	 * pool, blocking until it is done. Every cell records its results separately,
+	 * and the cells are added to the distribution and confidence score of the
+	 * returned worker in (concept, language) order, so that the result is the same
+	 * for any number of threads.
+	 *
+	 * @return a worker holding the distribution, pair counts and confidence score
+	 *         of all cells
+	 */
+	private static CognateAlignmentsWorker findCognateCandidates(CLDFWordlistDatabase database,
+																 PhoneticSymbolTable symbolTable,
+																 InformationModel[] infoModels,
+																 List<String> params,
+																 CorrespondenceModel globalCorr,
+																 ForkJoinPool pool) {
+		CognateAlignmentsWorker worker = new CognateAlignmentsWorker(database, symbolTable, infoModels,
+				Collections.emptyList(), globalCorr);
+		List<String> langIDs = database.getLangIDs();
+		CognateAlignmentsCell[] cells = new CognateAlignmentsCell[params.size() * langIDs.size()];
+		pool.invoke(new CognateAlignmentsTask(params, langIDs, worker, cells));
+		for (int cellIdx = 0; cellIdx < cells.length; cellIdx++) {
+			if (cells[cellIdx] != null) {
+				worker.addCell(cells[cellIdx]);
+				// the observations are no longer needed once they have been added
+				cells[cellIdx] = null;
+			}
+		}
+		return worker;
+	}
 	
 	public static CorrespondenceModel[][] inferLocalCorrespondenceModels(LexicalDatabase database,
 			PhoneticSymbolTable symbolTable, int[] relevantLangIDs, CorrespondenceModel globalCorr) {
-		CorrespondenceModel[][] localCorrModels = new CorrespondenceModel[database.getNumLanguages()][database.getNumLanguages()];
-		for (int langID : relevantLangIDs) {
-			System.err.println("Storing localCorrModels[" + langID + "][" + langID + "]");
-			localCorrModels[langID][langID] = inferCorrModelForPair(database, symbolTable, langID, langID,
-					globalCorr, globalCorr, globalCorr, null, null);
+		return inferLocalCorrespondenceModels(database, symbolTable, relevantLangIDs, globalCorr, null);
+	}
+
+	public static CorrespondenceModel[][] inferLocalCorrespondenceModels(LexicalDatabase database,
+			PhoneticSymbolTable symbolTable, int[] relevantLangIDs, CorrespondenceModel globalCorr, InformationModel[] infoModels) {
+		return inferLocalCorrespondenceModels(database, symbolTable, relevantLangIDs, globalCorr, infoModels, NUM_THREADS);
+	}
+
+	/**
+	 * Infers the local correspondence models for all pairs of relevant languages,
+	 * distributing the language pairs over numThreads threads. The models for
+	 * single languages are inferred first, as the models for pairs depend on them.
+	 */
+	public static CorrespondenceModel[][] inferLocalCorrespondenceModels(LexicalDatabase database,
+			PhoneticSymbolTable symbolTable, int[] relevantLangIDs, CorrespondenceModel globalCorr,
+			InformationModel[] infoModels, int numThreads) {
+		return inferMissingLocalCorrespondenceModels(database, symbolTable, relevantLangIDs, globalCorr, infoModels,
+				new CorrespondenceModel[0][], numThreads);
+	}
+
+	public static CorrespondenceModel[][] inferMissingLocalCorrespondenceModels(LexicalDatabase database,
+			PhoneticSymbolTable symbolTable, int[] relevantLangIDs, CorrespondenceModel globalCorr,
+			InformationModel[] infoModels, CorrespondenceModel[][] localCorrModels) {
+		return inferMissingLocalCorrespondenceModels(database, symbolTable, relevantLangIDs, globalCorr, infoModels,
+				localCorrModels, NUM_THREADS);
+	}
+
+	/**
+	 * Completes previously inferred local correspondence models by the models of
+	 * the pairs of relevant languages which are missing, e.g. because a language
+	 * has been added to the database since. The given models of single languages
+	 * are used for inferring the models of the missing pairs, as if they had been
+	 * inferred along with them.
+	 *
+	 * @param localCorrModels the previous models, which are not modified; may be
+	 *                        smaller than the number of languages
+	 * @return the previous models together with the inferred ones, indexed by the
+	 *         language IDs of the database
+	 */
+	public static CorrespondenceModel[][] inferMissingLocalCorrespondenceModels(LexicalDatabase database,
+			PhoneticSymbolTable symbolTable, int[] relevantLangIDs, CorrespondenceModel globalCorr,
+			InformationModel[] infoModels, CorrespondenceModel[][] localCorrModels, int numThreads) {
+		if (infoModels != null) {
+			database.cacheInformationContents(infoModels);
 		}
-		for (int lang1ID : relevantLangIDs) {
-			for (int lang2ID : relevantLangIDs) {
-				if (lang1ID == lang2ID) continue;
+		CorrespondenceModel[][] completedCorrModels = new CorrespondenceModel[database.getNumLanguages()][database.getNumLanguages()];
+		for (int i = 0; i < Math.min(localCorrModels.length, completedCorrModels.length); i++) {
+			if (localCorrModels[i] != null) {
+				System.arraycopy(localCorrModels[i], 0, completedCorrModels[i], 0,
+						Math.min(localCorrModels[i].length, completedCorrModels[i].length));
+			}
+		}
+		SelfSimilarityTable globalSelfSimilarities = SelfSimilarityTable.forModel(database, globalCorr);
+		ForkJoinPool pool = new ForkJoinPool(numThreads);
+		try {
+			List<Integer> selfCorrLangIDs = new ArrayList<>();
+			List<ForkJoinTask<CorrespondenceModel>> selfCorrTasks = new ArrayList<>(relevantLangIDs.length);
+			for (int langID : relevantLangIDs) {
+				if (!isMissingLocalCorrespondenceModel(completedCorrModels, langID, langID)) continue;
+				InformationModel infoModel = infoModels == null ? null : infoModels[langID];
+				selfCorrLangIDs.add(langID);
+				selfCorrTasks.add(pool.submit(() -> inferCorrModelForPair(database, symbolTable, langID, langID,
+						globalCorr, infoModel, infoModel, globalSelfSimilarities, globalSelfSimilarities)));
+			}
+			for (int i = 0; i < selfCorrTasks.size(); i++) {
+				int langID = selfCorrLangIDs.get(i);
+				System.err.println("Storing localCorrModels[" + langID + "][" + langID + "]");
+				completedCorrModels[langID][langID] = selfCorrTasks.get(i).join();
+			}
+
+			SelfSimilarityTable localSelfSimilarities = new SelfSimilarityTable(database,
+					SelfSimilarityTable.selfSimModels(completedCorrModels));
+			List<int[]> pairs = new ArrayList<>();
+			List<ForkJoinTask<CorrespondenceModel>> pairCorrTasks = new ArrayList<>();
+			for (int lang1ID : relevantLangIDs) {
+				for (int lang2ID : relevantLangIDs) {
+					if (lang1ID == lang2ID || !isMissingLocalCorrespondenceModel(completedCorrModels, lang1ID, lang2ID)) continue;
+					InformationModel infoModel1 = infoModels == null ? null : infoModels[lang1ID];
+					InformationModel infoModel2 = infoModels == null ? null : infoModels[lang2ID];
+					pairs.add(new int[] { lang1ID, lang2ID });
+					pairCorrTasks.add(pool.submit(() -> inferCorrModelForPair(database, symbolTable, lang1ID, lang2ID,
+							globalCorr, infoModel1, infoModel2, globalSelfSimilarities, localSelfSimilarities)));
+				}
+			}
+			for (int i = 0; i < pairCorrTasks.size(); i++) {
+				int lang1ID = pairs.get(i)[0];
+				int lang2ID = pairs.get(i)[1];
 				System.err.println("Storing localCorrModels[" + lang1ID + "][" + lang2ID + "]");
-				localCorrModels[lang1ID][lang2ID] = inferCorrModelForPair(database, symbolTable, lang1ID, lang2ID,
-						globalCorr, localCorrModels[lang1ID][lang1ID], localCorrModels[lang2ID][lang2ID], null, null);
+				completedCorrModels[lang1ID][lang2ID] = pairCorrTasks.get(i).join();
 			}
+		} finally {
+			pool.shutdown();
 		}
-		return localCorrModels;
+		return completedCorrModels;
 	}
 
-	public static CorrespondenceModel[][] inferLocalCorrespondenceModels(LexicalDatabase database,
-			PhoneticSymbolTable symbolTable, int[] relevantLangIDs, CorrespondenceModel globalCorr, InformationModel[] infoModels) {
-		CorrespondenceModel[][] localCorrModels = new CorrespondenceModel[database.getNumLanguages()][database.getNumLanguages()];
-		for (int langID : relevantLangIDs) {
-			System.err.println("Storing localCorrModels[" + langID + "][" + langID + "]");
-			localCorrModels[langID][langID] = inferCorrModelForPair(database, symbolTable, langID, langID,
-					globalCorr, globalCorr, globalCorr, infoModels[langID], infoModels[langID]);
-		}
+	/**
+	 * @return the number of pairs of relevant languages without a local model
+	 */
+	public static int countMissingLocalCorrespondenceModels(CorrespondenceModel[][] localCorrModels,
+			int[] relevantLangIDs) {
+		int numMissing = 0;
 		for (int lang1ID : relevantLangIDs) {
 			for (int lang2ID : relevantLangIDs) {
-				if (lang1ID == lang2ID) continue;
-				System.err.println("Storing localCorrModels[" + lang1ID + "][" + lang2ID + "]");
-				localCorrModels[lang1ID][lang2ID] = inferCorrModelForPair(database, symbolTable, lang1ID, lang2ID,
-						globalCorr, localCorrModels[lang1ID][lang1ID], localCorrModels[lang2ID][lang2ID], infoModels[lang1ID], infoModels[lang2ID]);
+				if (isMissingLocalCorrespondenceModel(localCorrModels, lang1ID, lang2ID))
+					numMissing++;
 			}
 		}
-		return localCorrModels;
+		return numMissing;
+	}
+
+	// models without any scores count as missing, as the model files store those of irrelevant languages that way
+	private static boolean isMissingLocalCorrespondenceModel(CorrespondenceModel[][] localCorrModels, int lang1ID,
+			int lang2ID) {
+		if (lang1ID >= localCorrModels.length || localCorrModels[lang1ID] == null
+				|| lang2ID >= localCorrModels[lang1ID].length)
+			return true;
+		CorrespondenceModel localCorr = localCorrModels[lang1ID][lang2ID];
+		return localCorr == null || localCorr.getScores().isEmpty();
 	}
 
 	public static CorrespondenceModel[][] inferLocalCorrespondenceModels(CLDFWordlistDatabase database,
@@ -427,33 +694,45 @@ public class CorrespondenceModelInference {
 			int lang1ID, int lang2ID, CorrespondenceModel globalCorr, CorrespondenceModel lang1SelfCorr,
 			CorrespondenceModel lang2SelfCorr)
 	{
-		return inferCorrModelForPair(database, symbolTable, lang1ID, lang2ID, globalCorr, lang1SelfCorr, lang2SelfCorr);
+		return inferCorrModelForPair(database, symbolTable, lang1ID, lang2ID, globalCorr, lang1SelfCorr, lang2SelfCorr,
+				null, null);
 	}
 
 	public static CorrespondenceModel inferCorrModelForPair(LexicalDatabase database, PhoneticSymbolTable symbolTable,
 			int lang1ID, int lang2ID, CorrespondenceModel globalCorr, CorrespondenceModel lang1SelfCorr,
 			CorrespondenceModel lang2SelfCorr, InformationModel infoModel1, InformationModel infoModel2) {
+		CorrespondenceModel[] selfSimModels = new CorrespondenceModel[database.getNumLanguages()];
+		selfSimModels[lang1ID] = lang1SelfCorr;
+		selfSimModels[lang2ID] = lang2SelfCorr;
+		return inferCorrModelForPair(database, symbolTable, lang1ID, lang2ID, globalCorr, infoModel1, infoModel2,
+				SelfSimilarityTable.forModel(database, globalCorr), new SelfSimilarityTable(database, selfSimModels));
+	}
+
+	/**
+	 * Variant of inferCorrModelForPair() for precomputed self-similarities of the
+	 * forms, under the global model and under the self-similarity models of the two
+	 * languages, which can be shared between the language pairs.
+	 */
+	public static CorrespondenceModel inferCorrModelForPair(LexicalDatabase database, PhoneticSymbolTable symbolTable,
+			int lang1ID, int lang2ID, CorrespondenceModel globalCorr, InformationModel infoModel1,
+			InformationModel infoModel2, SelfSimilarityTable globalSelfSimilarities,
+			SelfSimilarityTable localSelfSimilarities) {
 		System.err.print("  Pair " + database.getLanguageCode(lang1ID) + "/" + database.getLanguageCode(lang2ID) + ":\n");
 
 		CategoricalDistribution randomCorrespondenceDistForPair = new CategoricalDistribution(
 				symbolTable.getSize() * symbolTable.getSize());
 		System.err.print("    Step 1: " + NUM_RANDOM_PAIRS_LOCAL
 				+ " random alignments to model the distribution in absence of correspondences ...");
+		NeedlemanWunschAligner aligner = NeedlemanWunschAligner.forCurrentThread();
+		SplittableRandom random = randomForPair(lang1ID, lang2ID);
 		for (int i = 0; i < NUM_RANDOM_PAIRS_LOCAL; i++) {
-			PhoneticString form1 = database.getRandomFormForLanguage(lang1ID);
-			PhoneticString form2 = database.getRandomFormForLanguage(lang2ID);
-			PhoneticStringAlignment alignment = NeedlemanWunschAlgorithm.constructAlignment(form1, form2, globalCorr,
-					globalCorr, globalCorr, globalCorr);
-			double[] infoScores = new double[alignment.getLength()];
-			if (infoModel1 == null || infoModel2 == null) {
-				Arrays.fill(infoScores, 1.0);
-			}
-			else {
-				infoScores = InformationWeightedSequenceAlignment.combinedInfoScoresForAlignment(alignment, infoModel1, infoModel2);
-			}
-			for (int pos = 0; pos < alignment.getLength(); pos++) {
-				randomCorrespondenceDistForPair.addObservation(alignment.getSymbolPairIDAtPos(pos, symbolTable), infoScores[pos]);
-			}
+			int form1ID = database.getRandomFormIDForLanguage(lang1ID, random);
+			int form2ID = database.getRandomFormIDForLanguage(lang2ID, random);
+			aligner.align(database.getForm(form1ID), database.getForm(form2ID), globalCorr, globalCorr, globalCorr,
+					globalCorr);
+			addAlignmentObservations(randomCorrespondenceDistForPair, aligner, symbolTable,
+					database.getInformationContents(form1ID, infoModel1),
+					database.getInformationContents(form2ID, infoModel2));
 		}
 		System.err.print(" done.\n");
 
@@ -469,21 +748,13 @@ public class CorrespondenceModelInference {
 				PhoneticString lang1Form = database.getForm(lang1FormID);
 				for (int lang2FormID : formsPerLang.get(lang2ID)) {
 					PhoneticString lang2Form = database.getForm(lang2FormID);
-					PhoneticStringAlignment alignment = NeedlemanWunschAlgorithm.constructAlignment(lang1Form,
-							lang2Form, globalCorr, globalCorr, globalCorr, globalCorr);
 					numPairs++;
-					double[] infoScores = new double[alignment.getLength()];
-					if (infoModel1 == null || infoModel2 == null) {
-						Arrays.fill(infoScores, 1.0);
-					}
-					else {
-						infoScores = InformationWeightedSequenceAlignment.combinedInfoScoresForAlignment(alignment, infoModel1, infoModel2);
-					}
-					if (alignment.normalizedDistanceScore <= COGNACY_CANDIDATE_WED_THRESHOLD) {
-						for (int pos = 0; pos < alignment.getLength(); pos++) {
-							cognateCorrespondenceDistForPair
-									.addObservation(alignment.getSymbolPairIDAtPos(pos, symbolTable), infoScores[pos]);
-						}
+					if (aligner.alignWithinThreshold(lang1Form, lang2Form, globalCorr, globalCorr,
+							globalSelfSimilarities.getSelfSimilarity(lang1FormID),
+							globalSelfSimilarities.getSelfSimilarity(lang2FormID), COGNACY_CANDIDATE_WED_THRESHOLD)) {
+						addAlignmentObservations(cognateCorrespondenceDistForPair, aligner, symbolTable,
+								database.getInformationContents(lang1FormID, infoModel1),
+								database.getInformationContents(lang2FormID, infoModel2));
 						numCognatePairs++;
 					}
 				}
@@ -493,7 +764,7 @@ public class CorrespondenceModelInference {
 				+ " look like cognates (weighted edit distance <= " + COGNACY_CANDIDATE_WED_THRESHOLD + ")\n");
 
 		System.err.print("          Comparing the distributions of symbol pairs to reestimate PMI scores ...");
-		CorrespondenceModel localCorr = new CorrespondenceModel(symbolTable);
+		CorrespondenceModel localCorr = createLocalModel(symbolTable);
 		for (int symbolPairID = 0; symbolPairID < symbolTable.getSize() * symbolTable.getSize(); symbolPairID++) {
 			if (getMinUnigramCount(randomCorrespondenceDistForPair, symbolPairID, symbolTable.getSize()) == 0)
 				continue;
@@ -518,21 +789,14 @@ public class CorrespondenceModelInference {
 					PhoneticString lang1Form = database.getForm(lang1FormID);
 					for (int lang2FormID : formsPerLang.get(lang2ID)) {
 						PhoneticString lang2Form = database.getForm(lang2FormID);
-						PhoneticStringAlignment alignment = NeedlemanWunschAlgorithm.constructAlignment(lang1Form,
-								lang2Form, globalCorr, localCorr, lang1SelfCorr, lang2SelfCorr);
+						aligner.align(lang1Form, lang2Form, globalCorr, localCorr,
+								localSelfSimilarities.getSelfSimilarity(lang1FormID),
+								localSelfSimilarities.getSelfSimilarity(lang2FormID));
 						numPairs++;
-						double[] infoScores = new double[alignment.getLength()];
-						if (infoModel1 == null || infoModel2 == null) {
-							Arrays.fill(infoScores, 1.0);
-						}
-						else {
-							infoScores = InformationWeightedSequenceAlignment.combinedInfoScoresForAlignment(alignment, infoModel1, infoModel2);
-						}
-						if (alignment.normalizedDistanceScore <= COGNACY_CANDIDATE_WED_THRESHOLD) {
-							for (int pos = 0; pos < alignment.getLength(); pos++) {
-								cognateCorrespondenceDistForPair
-										.addObservation(alignment.getSymbolPairIDAtPos(pos, symbolTable), infoScores[pos]);
-							}
+						if (aligner.getNormalizedDistanceScore() <= COGNACY_CANDIDATE_WED_THRESHOLD) {
+							addAlignmentObservations(cognateCorrespondenceDistForPair, aligner, symbolTable,
+									database.getInformationContents(lang1FormID, infoModel1),
+									database.getInformationContents(lang2FormID, infoModel2));
 							numCognatePairs++;
 						}
 					}
@@ -544,7 +808,7 @@ public class CorrespondenceModelInference {
 							+ COGNACY_CANDIDATE_WED_THRESHOLD + ")\n");
 
 			System.err.print("          Comparing the distributions of symbol pairs to reestimate PMI scores ...");
-			localCorr = new CorrespondenceModel(symbolTable);
+			localCorr = createLocalModel(symbolTable);
 			for (int symbolPairID = 0; symbolPairID < symbolTable.getSize() * symbolTable.getSize(); symbolPairID++) {
 				if (getMinUnigramCount(randomCorrespondenceDistForPair, symbolPairID, symbolTable.getSize()) == 0)
 					continue;
@@ -586,34 +850,38 @@ public class CorrespondenceModelInference {
 	public static CorrespondenceModel inferCorrModelForPair(CLDFWordlistDatabase database, PhoneticSymbolTable symbolTable,
 															String lang1, String lang2, CorrespondenceModel globalCorr, CorrespondenceModel lang1SelfCorr,
 															CorrespondenceModel lang2SelfCorr, InformationModel infoModel1, InformationModel infoModel2) {
+		CLDFFormIndex formIndex = CLDFFormIndex.of(database, symbolTable);
+		return inferCorrModelForPair(database, symbolTable, formIndex, formIndex.getLangIndex(lang1),
+				formIndex.getLangIndex(lang2), globalCorr, lang1SelfCorr, lang2SelfCorr, infoModel1, infoModel2);
+	}
+
+	/**
+	 * Variant of inferCorrModelForPair() which takes the languages by their index
+	 * in the (pre-encoded) forms of the database.
+	 */
+	public static CorrespondenceModel inferCorrModelForPair(CLDFWordlistDatabase database, PhoneticSymbolTable symbolTable,
+															CLDFFormIndex formIndex, int lang1Idx, int lang2Idx,
+															CorrespondenceModel globalCorr, CorrespondenceModel lang1SelfCorr,
+															CorrespondenceModel lang2SelfCorr, InformationModel infoModel1, InformationModel infoModel2) {
+		String lang1 = formIndex.getLangIDs().get(lang1Idx);
+		String lang2 = formIndex.getLangIDs().get(lang2Idx);
 		System.err.print("  Pair " + lang1 + "/" + lang2 + ":\n");
+		NeedlemanWunschAligner aligner = NeedlemanWunschAligner.forCurrentThread();
 		CategoricalDistribution randomCorrespondenceDistForPair = new CategoricalDistribution(
 				symbolTable.getSize() * symbolTable.getSize());
 		System.err.print("    Step 1: " + NUM_RANDOM_PAIRS_LOCAL
 				+ " random alignments to model the distribution in absence of correspondences ...");
+		SplittableRandom random = randomForPair(lang1Idx, lang2Idx);
 		for (int i = 0; i < NUM_RANDOM_PAIRS_LOCAL; i++) {
-			CLDFForm form1inCLDF = database.getRandomFormForLanguage(lang1);
-			CLDFForm form2inCLDF = database.getRandomFormForLanguage(lang2);
+			PhoneticString form1 = formIndex.getRandomForm(lang1Idx, random);
+			PhoneticString form2 = formIndex.getRandomForm(lang2Idx, random);
 
-			if (form1inCLDF == null || form2inCLDF == null) {
+			if (form1 == null || form2 == null) {
 				continue;
 			}
 
-			// get the segments from the CLDFForm, encode them as ints and construct PhoneticString objects
-			PhoneticString form1 = new PhoneticString(symbolTable.encode(form1inCLDF.getSegments()));
-			PhoneticString form2 = new PhoneticString(symbolTable.encode(form2inCLDF.getSegments()));
-			PhoneticStringAlignment alignment = NeedlemanWunschAlgorithm.constructAlignment(form1, form2, globalCorr,
-					globalCorr, globalCorr, globalCorr);
-			double[] infoScores = new double[alignment.getLength()];
-			if (infoModel1 == null || infoModel2 == null) {
-				Arrays.fill(infoScores, 1.0);
-			}
-			else {
-				infoScores = InformationWeightedSequenceAlignment.combinedInfoScoresForAlignment(alignment, infoModel1, infoModel2);
-			}
-			for (int pos = 0; pos < alignment.getLength(); pos++) {
-				randomCorrespondenceDistForPair.addObservation(alignment.getSymbolPairIDAtPos(pos, symbolTable), infoScores[pos]);
-			}
+			aligner.align(form1, form2, globalCorr, globalCorr, globalCorr, globalCorr);
+			addAlignmentObservations(randomCorrespondenceDistForPair, aligner, symbolTable, infoModel1, infoModel2);
 		}
 		System.err.print(" done.\n");
 
@@ -624,35 +892,19 @@ public class CorrespondenceModelInference {
 		int numCognatePairs = 0;
 		System.err.print("    Step 2: Finding cognate candidates based on global WED ...");
 
-		for (String paramID : database.getConceptMap().keySet()) {
-			Map<String, List<CLDFForm>> formsByParamID = database.getFormsByLanguageByParamID(paramID);
-			if (formsByParamID == null) {
-				continue;
-			}
-			List<CLDFForm> lang1Forms = formsByParamID.get(lang1);
-			List<CLDFForm> lang2Forms = formsByParamID.get(lang2);
+		for (String paramID : formIndex.getParamIDs()) {
+			PhoneticString[][] formsPerLang = formIndex.getFormsPerLanguage(paramID);
+			PhoneticString[] lang1Forms = formsPerLang[lang1Idx];
+			PhoneticString[] lang2Forms = formsPerLang[lang2Idx];
 			if (lang1Forms == null || lang2Forms == null) {
 				continue;
 			}
-			for (CLDFForm form1inCLDF : lang1Forms) {
-				PhoneticString form1 = new PhoneticString(symbolTable.encode(form1inCLDF.getSegments()));
-				for (CLDFForm form2inCLDF : lang2Forms) {
-					PhoneticString form2 = new PhoneticString(symbolTable.encode(form2inCLDF.getSegments()));
-					PhoneticStringAlignment alignment = NeedlemanWunschAlgorithm.constructAlignment(form1,
-							form2, globalCorr, globalCorr, globalCorr, globalCorr);
+			for (PhoneticString form1 : lang1Forms) {
+				for (PhoneticString form2 : lang2Forms) {
 					numPairs++;
-					double[] infoScores = new double[alignment.getLength()];
-					if (infoModel1 == null || infoModel2 == null) {
-						Arrays.fill(infoScores, 1.0);
-					}
-					else {
-						infoScores = InformationWeightedSequenceAlignment.combinedInfoScoresForAlignment(alignment, infoModel1, infoModel2);
-					}
-					if (alignment.normalizedDistanceScore <= COGNACY_CANDIDATE_WED_THRESHOLD) {
-						for (int pos = 0; pos < alignment.getLength(); pos++) {
-							cognateCorrespondenceDistForPair
-									.addObservation(alignment.getSymbolPairIDAtPos(pos, symbolTable), infoScores[pos]);
-						}
+					if (aligner.alignWithinThreshold(form1, form2, globalCorr, globalCorr, globalCorr, globalCorr,
+							COGNACY_CANDIDATE_WED_THRESHOLD)) {
+						addAlignmentObservations(cognateCorrespondenceDistForPair, aligner, symbolTable, infoModel1, infoModel2);
 						numCognatePairs++;
 					}
 				}
@@ -663,7 +915,7 @@ public class CorrespondenceModelInference {
 				+ " look like cognates (weighted edit distance <= " + COGNACY_CANDIDATE_WED_THRESHOLD + ")\n");
 
 		System.err.print("          Comparing the distributions of symbol pairs to reestimate PMI scores ...");
-		CorrespondenceModel localCorr = new CorrespondenceModel(symbolTable);
+		CorrespondenceModel localCorr = createLocalModel(symbolTable);
 		for (int symbolPairID = 0; symbolPairID < symbolTable.getSize() * symbolTable.getSize(); symbolPairID++) {
 			if (getMinUnigramCount(randomCorrespondenceDistForPair, symbolPairID, symbolTable.getSize()) == 0)
 				continue;
@@ -682,33 +934,18 @@ public class CorrespondenceModelInference {
 			numPairs = 0;
 			numCognatePairs = 0;
 			cognateCorrespondenceDistForPair = new CategoricalDistribution(symbolTable.getSize() * symbolTable.getSize());
-			for (String paramID : database.getConceptMap().keySet()) {
-				Map<String, List<CLDFForm>> formsByParamID = database.getFormsByLanguageByParamID(paramID);
-				if (formsByParamID == null) {
-					continue;
-				}
-				List<CLDFForm> lang1Forms = formsByParamID.get(lang1);
-				List<CLDFForm> lang2Forms = formsByParamID.get(lang2);
+			for (String paramID : formIndex.getParamIDs()) {
+				PhoneticString[][] formsPerLang = formIndex.getFormsPerLanguage(paramID);
+				PhoneticString[] lang1Forms = formsPerLang[lang1Idx];
+				PhoneticString[] lang2Forms = formsPerLang[lang2Idx];
 				if (lang1Forms == null || lang2Forms == null) {
 					continue;
 				}
-				for (CLDFForm form1inCLDF : lang1Forms) {
-					PhoneticString form1 = new PhoneticString(symbolTable.encode(form1inCLDF.getSegments()));
-					for (CLDFForm form2inCLDF : lang2Forms) {
-						PhoneticString form2 = new PhoneticString(symbolTable.encode(form2inCLDF.getSegments()));
-						PhoneticStringAlignment alignment = NeedlemanWunschAlgorithm.constructAlignment(form1,
-								form2, globalCorr, localCorr, lang1SelfCorr, lang2SelfCorr);
-						double[] infoScores = new double[alignment.getLength()];
-						if (infoModel1 == null || infoModel2 == null) {
-							Arrays.fill(infoScores, 1.0);
-						} else {
-							infoScores = InformationWeightedSequenceAlignment.combinedInfoScoresForAlignment(alignment, infoModel1, infoModel2);
-						}
-						if (alignment.normalizedDistanceScore <= COGNACY_CANDIDATE_WED_THRESHOLD) {
-							for (int pos = 0; pos < alignment.getLength(); pos++) {
-								cognateCorrespondenceDistForPair
-										.addObservation(alignment.getSymbolPairIDAtPos(pos, symbolTable), infoScores[pos]);
-							}
+				for (PhoneticString form1 : lang1Forms) {
+					for (PhoneticString form2 : lang2Forms) {
+						aligner.align(form1, form2, globalCorr, localCorr, lang1SelfCorr, lang2SelfCorr);
+						if (aligner.getNormalizedDistanceScore() <= COGNACY_CANDIDATE_WED_THRESHOLD) {
+							addAlignmentObservations(cognateCorrespondenceDistForPair, aligner, symbolTable, infoModel1, infoModel2);
 							numCognatePairs++;
 						}
 					}
@@ -720,7 +957,7 @@ public class CorrespondenceModelInference {
 							+ COGNACY_CANDIDATE_WED_THRESHOLD + ")\n");
 
 			System.err.print("          Comparing the distributions of symbol pairs to reestimate PMI scores ...");
-			localCorr = new CorrespondenceModel(symbolTable);
+			localCorr = createLocalModel(symbolTable);
 			for (int symbolPairID = 0; symbolPairID < symbolTable.getSize() * symbolTable.getSize(); symbolPairID++) {
 				if (getMinUnigramCount(randomCorrespondenceDistForPair, symbolPairID, symbolTable.getSize()) == 0)
 					continue;
@@ -760,6 +997,86 @@ public class CorrespondenceModelInference {
 		return localCorr;
 	}
 	
+	/**
+	 * Adds the symbol pairs of the last alignment computed by the aligner to a
+	 * distribution, weighted by their information content if information models
+	 * are given.
+	 */
+	static void addAlignmentObservations(ObservationSink dist, NeedlemanWunschAligner aligner,
+			PhoneticSymbolTable symbolTable, InformationModel infoModel1, InformationModel infoModel2) {
+		if (infoModel1 == null || infoModel2 == null) {
+			for (int pos = 0; pos < aligner.getLength(); pos++) {
+				dist.addObservation(aligner.getSymbolPairIDAtPos(pos, symbolTable), 1.0);
+			}
+		} else {
+			double[] infoScores = InformationWeightedSequenceAlignment
+					.combinedInfoScoresForAlignment(aligner.toAlignment(), infoModel1, infoModel2);
+			for (int pos = 0; pos < aligner.getLength(); pos++) {
+				dist.addObservation(aligner.getSymbolPairIDAtPos(pos, symbolTable), infoScores[pos]);
+			}
+		}
+	}
+
+	/**
+	 * Variant of addAlignmentObservations() for precomputed information content
+	 * vectors of the two aligned forms; uniform weights are used if either is null.
+	 */
+	static void addAlignmentObservations(ObservationSink dist, NeedlemanWunschAligner aligner,
+			PhoneticSymbolTable symbolTable, double[] infoContents1, double[] infoContents2) {
+		if (infoContents1 == null || infoContents2 == null) {
+			for (int pos = 0; pos < aligner.getLength(); pos++) {
+				dist.addObservation(aligner.getSymbolPairIDAtPos(pos, symbolTable), 1.0);
+			}
+			return;
+		}
+		int pos1 = -1;
+		int pos2 = -1;
+		for (int pos = 0; pos < aligner.getLength(); pos++) {
+			int symbol1 = aligner.getSymbol1IDAtPos(pos);
+			int symbol2 = aligner.getSymbol2IDAtPos(pos);
+			if (symbol1 > 1)
+				pos1++;
+			if (symbol2 > 1)
+				pos2++;
+			double infoScore;
+			if (symbol1 == 1) {
+				infoScore = InformationWeightedSequenceAlignment.getMeanInfoScore(infoContents2[pos2], infoContents2[pos2]);
+			} else if (symbol2 == 1) {
+				infoScore = InformationWeightedSequenceAlignment.getMeanInfoScore(infoContents1[pos1], infoContents1[pos1]);
+			} else {
+				infoScore = InformationWeightedSequenceAlignment.getMeanInfoScore(infoContents1[pos1], infoContents2[pos2]);
+			}
+			dist.addObservation(aligner.getSymbolPairIDAtPos(pos, symbolTable), infoScore);
+		}
+	}
+
+	/**
+	 * Variant of addAlignmentObservations() for an alignment object, e.g. a cached
+	 * one; uniform weights are used if either information content vector is null.
+	 */
+	static void addAlignmentObservations(ObservationSink dist, PhoneticStringAlignment alignment,
+			PhoneticSymbolTable symbolTable, double[] infoContents1, double[] infoContents2) {
+		if (infoContents1 == null || infoContents2 == null) {
+			for (int pos = 0; pos < alignment.getLength(); pos++) {
+				dist.addObservation(alignment.getSymbolPairIDAtPos(pos, symbolTable), 1.0);
+			}
+			return;
+		}
+		double[] infoScores = InformationWeightedSequenceAlignment.combinedInfoScoresForAlignment(alignment,
+				infoContents1, infoContents2);
+		for (int pos = 0; pos < alignment.getLength(); pos++) {
+			dist.addObservation(alignment.getSymbolPairIDAtPos(pos, symbolTable), infoScores[pos]);
+		}
+	}
+
+	private static CorrespondenceModel createGlobalModel(PhoneticSymbolTable symbolTable) {
+		return DENSE_GLOBAL_MODEL ? new DenseCorrespondenceModel(symbolTable) : new CorrespondenceModel(symbolTable);
+	}
+
+	private static CorrespondenceModel createLocalModel(PhoneticSymbolTable symbolTable) {
+		return DENSE_LOCAL_MODELS ? new DenseCorrespondenceModel(symbolTable) : new CorrespondenceModel(symbolTable);
+	}
+
 	public static double getMinUnigramCount(CategoricalDistribution dist, int bigramID, int symbolTableSize)
 	{
 		int i = bigramID / symbolTableSize;
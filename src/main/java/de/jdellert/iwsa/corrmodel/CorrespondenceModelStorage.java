@@ -30,7 +30,7 @@ public class CorrespondenceModelStorage {
                 IOUtils.writeAsBytes(symbolIter.next(), out);
             IOUtils.writeNewline(out);
 
-            for (Map.Entry<Long, Double> next : globalCorrModel.scores.entrySet()) {
+            for (Map.Entry<Long, Double> next : globalCorrModel.getScores().entrySet()) {
                 //TODO: this will lead to problems when storing models where keys reach beyond the integer range
                 IOUtils.writeInt(next.getKey().intValue(), out);
                 IOUtils.writeDouble(next.getValue(), out);
@@ -42,6 +42,10 @@ public class CorrespondenceModelStorage {
     }
 
     public static CorrespondenceModel readGlobalModelFromFile(String fileName) {
+        return readGlobalModelFromFile(fileName, false);
+    }
+
+    public static CorrespondenceModel readGlobalModelFromFile(String fileName, boolean dense) {
         List<String> symbols = new ArrayList<>();
         Map<Long, Double> scores = new HashMap<>();
         try (BufferedInputStream in = new BufferedInputStream(Objects.requireNonNull(
@@ -61,9 +65,7 @@ public class CorrespondenceModelStorage {
         } catch (IOException e) {
             e.printStackTrace();
         }
-        CorrespondenceModel corrModel = new CorrespondenceModel(new PhoneticSymbolTable(symbols));
-        corrModel.scores = scores;
-        return corrModel;
+        return createModel(new PhoneticSymbolTable(symbols), scores, dense);
     }
 
     public static void serializeGlobalModelToFile(CorrespondenceModel globalCorrModel, String fileName)
@@ -71,7 +73,7 @@ public class CorrespondenceModelStorage {
         System.err.print("Writing global correspondence model to " + fileName + " ...");
         ObjectOutputStream outputStream = new ObjectOutputStream(new FileOutputStream(new File(fileName)));
         outputStream.writeObject(globalCorrModel.symbolTable);
-        outputStream.writeObject(globalCorrModel.scores);
+        outputStream.writeObject(globalCorrModel.getScores());
         outputStream.close();
         System.err.println("done.");
     }
@@ -87,7 +89,7 @@ public class CorrespondenceModelStorage {
                 if (localCorrModels[i][j] == null) {
                     outputStream.writeObject(new TreeMap<Integer, Double>());
                 } else {
-                    outputStream.writeObject(localCorrModels[i][j].scores);
+                    outputStream.writeObject(localCorrModels[i][j].getScores());
                 }
             }
         }
@@ -97,23 +99,29 @@ public class CorrespondenceModelStorage {
 
     public static CorrespondenceModel deserializeCorrespondenceModel(ObjectInputStream in)
             throws IOException, ClassNotFoundException {
+        return deserializeCorrespondenceModel(in, false);
+    }
+
+    public static CorrespondenceModel deserializeCorrespondenceModel(ObjectInputStream in, boolean dense)
+            throws IOException, ClassNotFoundException {
         PhoneticSymbolTable symbolTable = (PhoneticSymbolTable) in.readObject();
         Map<Long, Double> scores = (Map<Long, Double>) in.readObject();
-        CorrespondenceModel correspondenceModel = new CorrespondenceModel(symbolTable);
-        correspondenceModel.scores = scores;
-        return correspondenceModel;
+        return createModel(symbolTable, scores, dense);
     }
 
     public static CorrespondenceModel[][] deserializeCorrespondenceModels(ObjectInputStream in)
             throws IOException, ClassNotFoundException {
+        return deserializeCorrespondenceModels(in, false);
+    }
+
+    public static CorrespondenceModel[][] deserializeCorrespondenceModels(ObjectInputStream in, boolean dense)
+            throws IOException, ClassNotFoundException {
         String langIDs[] = (String[]) in.readObject();
         PhoneticSymbolTable symbolTable = (PhoneticSymbolTable) in.readObject();
         CorrespondenceModel[][] correspondenceModels = new CorrespondenceModel[langIDs.length][langIDs.length];
         for (int i = 0; i < langIDs.length; i++) {
             for (int j = 0; j < langIDs.length; j++) {
-                CorrespondenceModel correspondenceModel = new CorrespondenceModel(symbolTable);
-                correspondenceModel.scores = (Map<Long, Double>) in.readObject();
-                correspondenceModels[i][j] = correspondenceModel;
+                correspondenceModels[i][j] = createModel(symbolTable, (Map<Long, Double>) in.readObject(), dense);
             }
         }
         return correspondenceModels;
@@ -121,6 +129,12 @@ public class CorrespondenceModelStorage {
 
     public static CorrespondenceModel[][] deserializeCorrespondenceModels(ObjectInputStream in, Map<String, Integer> langToID)
             throws IOException, ClassNotFoundException {
+        return deserializeCorrespondenceModels(in, langToID, false);
+    }
+
+    public static CorrespondenceModel[][] deserializeCorrespondenceModels(ObjectInputStream in, Map<String, Integer> langToID,
+                                                                          boolean dense)
+            throws IOException, ClassNotFoundException {
         String langIDs[] = (String[]) in.readObject();
         int maxID = 0;
         for (int langID : langToID.values()) {
@@ -138,13 +152,22 @@ public class CorrespondenceModelStorage {
                 if (langToID.get(langIDs[fileJ]) != null) {
                     j = langToID.get(langIDs[fileJ]);
                 }
-                CorrespondenceModel correspondenceModel = new CorrespondenceModel(symbolTable);
-                correspondenceModel.scores = (Map<Long, Double>) in.readObject();
+                Map<Long, Double> scores = (Map<Long, Double>) in.readObject();
                 if (i >= 0 && j >= 0) {
-                    correspondenceModels[i][j] = correspondenceModel;
+                    correspondenceModels[i][j] = createModel(symbolTable, scores, dense);
                 }
             }
         }
         return correspondenceModels;
     }
-}
\ No newline at end of file
+
+    private static CorrespondenceModel createModel(PhoneticSymbolTable symbolTable, Map<Long, Double> scores,
+                                                   boolean dense) {
+        if (dense) {
+            return new DenseCorrespondenceModel(symbolTable, scores);
+        }
+        CorrespondenceModel correspondenceModel = new CorrespondenceModel(symbolTable);
+        correspondenceModel.scores = scores;
+        return correspondenceModel;
+    }
+}
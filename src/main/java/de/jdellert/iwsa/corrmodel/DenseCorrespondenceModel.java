@@ -0,0 +1,118 @@
+package de.jdellert.iwsa.corrmodel;
+
+import java.util.Map;
+import java.util.TreeMap;
+
+import de.jdellert.iwsa.sequence.PhoneticSymbolTable;
+
+/**
+ * Correspondence model storing the PMI scores in a flat array indexed by symbol
+ * pair ID, which avoids boxing and tree walks in the inner loops of the
+ * alignment algorithms. A bitmap records which pairs were actually set, so
+ * getScoreOrNull() still returns null for undefined pairs, and the fallback
+ * from local to global models works as with the map-based representation.
+ * 
+ * The matrix is sized by the symbol table at construction time, so symbols
+ * defined afterwards cannot receive scores. Memory use is quadratic in the
+ * number of symbols, which makes this a good choice for global models, but
+ * usually not for large numbers of sparse pair-specific models.
+ */
+public class DenseCorrespondenceModel extends CorrespondenceModel {
+	int size;
+	// symbol pair ID => PMI score
+	double[] scoreMatrix;
+	// bitmap over symbol pair IDs: is the score defined?
+	long[] definedPairs;
+
+	public DenseCorrespondenceModel(PhoneticSymbolTable symbolTable) {
+		super(symbolTable);
+		this.size = symbolTable.getSize();
+		this.scoreMatrix = new double[size * size];
+		this.definedPairs = new long[(size * size + 63) >>> 6];
+	}
+
+	/**
+	 * Builds a dense copy of an existing (map-based) correspondence model.
+	 */
+	public DenseCorrespondenceModel(CorrespondenceModel model) {
+		this(model.getSymbolTable(), model.getScores());
+		this.dbPath = model.dbPath;
+	}
+
+	DenseCorrespondenceModel(PhoneticSymbolTable symbolTable, Map<Long, Double> scores) {
+		this(symbolTable);
+		for (Map.Entry<Long, Double> entry : scores.entrySet()) {
+			setScore(entry.getKey(), entry.getValue());
+		}
+	}
+
+	private boolean isDefined(int symbolPairID) {
+		return (definedPairs[symbolPairID >>> 6] & (1L << symbolPairID)) != 0;
+	}
+
+	private int pairIndexOrMinusOne(int symbol1ID, int symbol2ID) {
+		if (symbol1ID < 0 || symbol2ID < 0 || symbol1ID >= size || symbol2ID >= size)
+			return -1;
+		int symbolPairID = symbol1ID * size + symbol2ID;
+		return isDefined(symbolPairID) ? symbolPairID : -1;
+	}
+
+	@Override
+	public void setScore(long symbolPairID, double score) {
+		int idx = (int) symbolPairID;
+		scoreMatrix[idx] = score;
+		definedPairs[idx >>> 6] |= (1L << idx);
+	}
+
+	@Override
+	public void setScore(int symbol1ID, int symbol2ID, double score) {
+		setScore(symbol1ID * size + symbol2ID, score);
+	}
+
+	@Override
+	public double getScore(long symbolPairID) {
+		if (symbolPairID < 0 || symbolPairID >= scoreMatrix.length)
+			return 0.0;
+		// undefined entries are 0.0 in the array anyway
+		return scoreMatrix[(int) symbolPairID];
+	}
+
+	@Override
+	public double getScore(int symbol1ID, int symbol2ID) {
+		int idx = pairIndexOrMinusOne(symbol1ID, symbol2ID);
+		return (idx == -1) ? 0.0 : scoreMatrix[idx];
+	}
+
+	@Override
+	public Double getScoreOrNull(long symbolPairID) {
+		if (symbolPairID < 0 || symbolPairID >= scoreMatrix.length || !isDefined((int) symbolPairID))
+			return null;
+		return scoreMatrix[(int) symbolPairID];
+	}
+
+	@Override
+	public Double getScoreOrNull(int symbol1ID, int symbol2ID) {
+		int idx = pairIndexOrMinusOne(symbol1ID, symbol2ID);
+		return (idx == -1) ? null : scoreMatrix[idx];
+	}
+
+	@Override
+	public double getScoreOrFallback(int symbol1ID, int symbol2ID, CorrespondenceModel fallbackModel) {
+		int idx = pairIndexOrMinusOne(symbol1ID, symbol2ID);
+		if (idx != -1)
+			return scoreMatrix[idx];
+		if (fallbackModel == null)
+			return 0.0;
+		return fallbackModel.getScoreOrFallback(symbol1ID, symbol2ID, null);
+	}
+
+	@Override
+	Map<Long, Double> getScores() {
+		Map<Long, Double> scores = new TreeMap<Long, Double>();
+		for (int symbolPairID = 0; symbolPairID < scoreMatrix.length; symbolPairID++) {
+			if (isDefined(symbolPairID))
+				scores.put((long) symbolPairID, scoreMatrix[symbolPairID]);
+		}
+		return scores;
+	}
+}
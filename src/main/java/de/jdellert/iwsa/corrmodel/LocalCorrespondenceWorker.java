@@ -1,5 +1,6 @@
 package de.jdellert.iwsa.corrmodel;
 
+import de.jdellert.iwsa.data.CLDFFormIndex;
 import de.jdellert.iwsa.infomodel.InformationModel;
 import de.jdellert.iwsa.sequence.PhoneticSymbolTable;
 import de.tuebingen.sfs.cldfjava.data.CLDFWordlistDatabase;
@@ -31,17 +32,21 @@ public class LocalCorrespondenceWorker implements Runnable{
 
 
     public void run() {
-        for (String lang1ID : localRelevantLangIDs) {
-            int lang1LocalIdx = localRelevantLangIDs.indexOf(lang1ID);
+        CLDFFormIndex formIndex = CLDFFormIndex.of(database, symbolTable);
+        for (int lang1LocalIdx = 0; lang1LocalIdx < localRelevantLangIDs.size(); lang1LocalIdx++) {
+            String lang1ID = localRelevantLangIDs.get(lang1LocalIdx);
             int lang1GlobalIdx = allRelevantLangIDs.indexOf(lang1ID);
-            for (String lang2ID : allRelevantLangIDs) {
-                int lang2Idx = allRelevantLangIDs.indexOf(lang2ID);
+            int lang1DatabaseIdx = formIndex.getLangIndex(lang1ID);
+            for (int lang2Idx = 0; lang2Idx < allRelevantLangIDs.size(); lang2Idx++) {
                 if (lang1GlobalIdx == lang2Idx) {
                     continue;
                 }
+                String lang2ID = allRelevantLangIDs.get(lang2Idx);
+                int lang2DatabaseIdx = formIndex.getLangIndex(lang2ID);
                 System.err.println("Storing local correspondence model for " + lang1ID + " and " + lang2ID);
-                localCorrModels[lang1LocalIdx][lang2Idx] = CorrespondenceModelInference.inferCorrModelForPair(database, symbolTable, lang1ID, lang2ID,
-                        globalCorr, selfCorrModels[lang1GlobalIdx], selfCorrModels[lang2Idx], infoModels[lang1GlobalIdx], infoModels[lang2Idx]);
+                localCorrModels[lang1LocalIdx][lang2Idx] = CorrespondenceModelInference.inferCorrModelForPair(database, symbolTable, formIndex,
+                        lang1DatabaseIdx, lang2DatabaseIdx, globalCorr, selfCorrModels[lang1GlobalIdx], selfCorrModels[lang2Idx],
+                        infoModels[lang1DatabaseIdx], infoModels[lang2DatabaseIdx]);
             }
         }
     }
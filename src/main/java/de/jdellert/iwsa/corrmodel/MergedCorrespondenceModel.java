@@ -0,0 +1,188 @@
+package de.jdellert.iwsa.corrmodel;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.stream.IntStream;
+
+import de.jdellert.iwsa.data.LexicalDatabase;
+
+/**
+ * Immutable view of a local correspondence model in which the local-over-global
+ * lookup of getScoreOrFallback() has been compiled into a flat score matrix,
+ * so that the aligners pay one array read per cell instead of up to two map
+ * lookups. The matrix covers the symbols occurring in the two languages,
+ * together with the boundary and gap symbols, so that it stays small even for
+ * large symbol tables. The diagonal of the local model is kept in an array as
+ * well, for the self-similarity scores of getScore().
+ *
+ * All scores are exactly those of the local model and the global model it was
+ * compiled with. Lookups with another fallback model, or for symbols outside
+ * the matrix, are passed on to the local model.
+ */
+public class MergedCorrespondenceModel extends CorrespondenceModel {
+	private final CorrespondenceModel localModel;
+	private final CorrespondenceModel globalModel;
+	// symbol ID => row (column) in the score matrix, or -1 if not covered
+	private final int[] rowOfSymbol;
+	private final int[] columnOfSymbol;
+	private final int numColumns;
+	// row * numColumns + column => local score, or global score if undefined locally
+	private final double[] scoreMatrix;
+	// symbol ID => score of the local model for the pair of the symbol with itself
+	private final double[] localDiagonal;
+
+	/**
+	 * @param symbols1 the symbols which can occur in the first string
+	 * @param symbols2 the symbols which can occur in the second string
+	 */
+	public MergedCorrespondenceModel(CorrespondenceModel localModel, CorrespondenceModel globalModel,
+			int[] symbols1, int[] symbols2) {
+		super(localModel.getSymbolTable());
+		this.localModel = localModel;
+		this.globalModel = globalModel;
+		this.dbPath = localModel.dbPath;
+		int size = symbolTable.getSize();
+		this.rowOfSymbol = indexSymbols(symbols1, size);
+		this.columnOfSymbol = indexSymbols(symbols2, size);
+		int numRows = 0;
+		int numColumns = 0;
+		for (int symbol = 0; symbol < size; symbol++) {
+			numRows = Math.max(numRows, rowOfSymbol[symbol] + 1);
+			numColumns = Math.max(numColumns, columnOfSymbol[symbol] + 1);
+		}
+		this.numColumns = numColumns;
+		this.scoreMatrix = new double[numRows * numColumns];
+		for (int symbol1 = 0; symbol1 < size; symbol1++) {
+			int row = rowOfSymbol[symbol1];
+			if (row == -1)
+				continue;
+			for (int symbol2 = 0; symbol2 < size; symbol2++) {
+				int column = columnOfSymbol[symbol2];
+				if (column != -1)
+					scoreMatrix[row * numColumns + column] = localModel.getScoreOrFallback(symbol1, symbol2, globalModel);
+			}
+		}
+		this.localDiagonal = new double[size];
+		for (int symbol = 0; symbol < size; symbol++) {
+			localDiagonal[symbol] = localModel.getScore(symbol, symbol);
+		}
+	}
+
+	/**
+	 * Compiles the local models of all pairs of relevant languages (including the
+	 * self-similarity models) with the global model, over the symbols occurring in
+	 * the respective languages.
+	 *
+	 * @return a matrix of the same shape as localCorrModels, with merged models
+	 *         for the relevant pairs and the other entries taken over
+	 */
+	public static CorrespondenceModel[][] compile(LexicalDatabase database, int[] relevantLangIDs,
+			CorrespondenceModel[][] localCorrModels, CorrespondenceModel globalCorr) {
+		int[][] symbolsPerLang = new int[database.getNumLanguages()][];
+		for (int langID : relevantLangIDs) {
+			symbolsPerLang[langID] = getSymbolsForLanguage(database, langID);
+		}
+		CorrespondenceModel[][] mergedModels = new CorrespondenceModel[localCorrModels.length][];
+		for (int i = 0; i < localCorrModels.length; i++) {
+			mergedModels[i] = localCorrModels[i] == null ? null : localCorrModels[i].clone();
+		}
+		IntStream.range(0, relevantLangIDs.length * relevantLangIDs.length).parallel().forEach(pair -> {
+			int lang1ID = relevantLangIDs[pair / relevantLangIDs.length];
+			int lang2ID = relevantLangIDs[pair % relevantLangIDs.length];
+			CorrespondenceModel localCorr = localCorrModels[lang1ID][lang2ID];
+			if (localCorr != null) {
+				mergedModels[lang1ID][lang2ID] = new MergedCorrespondenceModel(localCorr, globalCorr,
+						symbolsPerLang[lang1ID], symbolsPerLang[lang2ID]);
+			}
+		});
+		return mergedModels;
+	}
+
+	/**
+	 * Compiles the local model of a single language pair with the global model.
+	 */
+	public static MergedCorrespondenceModel compile(LexicalDatabase database, int lang1ID, int lang2ID,
+			CorrespondenceModel localCorr, CorrespondenceModel globalCorr) {
+		return new MergedCorrespondenceModel(localCorr, globalCorr, getSymbolsForLanguage(database, lang1ID),
+				getSymbolsForLanguage(database, lang2ID));
+	}
+
+	private static int[] getSymbolsForLanguage(LexicalDatabase database, int langID) {
+		boolean[] occurs = new boolean[database.getSymbolTable().getSize()];
+		for (int formID : database.getFormIDsForLanguage(langID)) {
+			for (int symbol : database.getForm(formID).segments) {
+				if (symbol >= 0 && symbol < occurs.length)
+					occurs[symbol] = true;
+			}
+		}
+		return IntStream.range(0, occurs.length).filter(symbol -> occurs[symbol]).toArray();
+	}
+
+	private static int[] indexSymbols(int[] symbols, int size) {
+		int[] indexOfSymbol = new int[size];
+		Arrays.fill(indexOfSymbol, -1);
+		int numIndices = 0;
+		// boundary and gap symbols
+		for (int symbol = 0; symbol <= 1 && symbol < size; symbol++) {
+			indexOfSymbol[symbol] = numIndices++;
+		}
+		for (int symbol : symbols) {
+			if (symbol >= 0 && symbol < size && indexOfSymbol[symbol] == -1)
+				indexOfSymbol[symbol] = numIndices++;
+		}
+		return indexOfSymbol;
+	}
+
+	public CorrespondenceModel getLocalModel() {
+		return localModel;
+	}
+
+	@Override
+	public double getScoreOrFallback(int symbol1ID, int symbol2ID, CorrespondenceModel fallbackModel) {
+		if (fallbackModel == globalModel && symbol1ID >= 0 && symbol2ID >= 0 && symbol1ID < rowOfSymbol.length
+				&& symbol2ID < columnOfSymbol.length) {
+			int row = rowOfSymbol[symbol1ID];
+			int column = columnOfSymbol[symbol2ID];
+			if (row != -1 && column != -1)
+				return scoreMatrix[row * numColumns + column];
+		}
+		return localModel.getScoreOrFallback(symbol1ID, symbol2ID, fallbackModel);
+	}
+
+	@Override
+	public double getScore(int symbol1ID, int symbol2ID) {
+		if (symbol1ID == symbol2ID && symbol1ID >= 0 && symbol1ID < localDiagonal.length)
+			return localDiagonal[symbol1ID];
+		return localModel.getScore(symbol1ID, symbol2ID);
+	}
+
+	@Override
+	public double getScore(long symbolPairID) {
+		return localModel.getScore(symbolPairID);
+	}
+
+	@Override
+	public Double getScoreOrNull(long symbolPairID) {
+		return localModel.getScoreOrNull(symbolPairID);
+	}
+
+	@Override
+	public Double getScoreOrNull(int symbol1ID, int symbol2ID) {
+		return localModel.getScoreOrNull(symbol1ID, symbol2ID);
+	}
+
+	@Override
+	public void setScore(long symbolPairID, double score) {
+		throw new UnsupportedOperationException("merged correspondence models are immutable");
+	}
+
+	@Override
+	public void setScore(int symbol1ID, int symbol2ID, double score) {
+		throw new UnsupportedOperationException("merged correspondence models are immutable");
+	}
+
+	@Override
+	Map<Long, Double> getScores() {
+		return localModel.getScores();
+	}
+}
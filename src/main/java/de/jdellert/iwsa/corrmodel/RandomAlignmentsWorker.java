@@ -3,62 +3,62 @@ package de.jdellert.iwsa.corrmodel;
 import de.jdellert.iwsa.align.InformationWeightedSequenceAlignment;
 import de.jdellert.iwsa.align.LevenshteinAlignmentAlgorithm;
 import de.jdellert.iwsa.align.PhoneticStringAlignment;
+import de.jdellert.iwsa.data.CLDFFormIndex;
 import de.jdellert.iwsa.infomodel.InformationModel;
 import de.jdellert.iwsa.sequence.PhoneticString;
 import de.jdellert.iwsa.sequence.PhoneticSymbolTable;
-import de.jdellert.iwsa.stat.CategoricalDistribution;
-import de.tuebingen.sfs.cldfjava.data.CLDFForm;
+import de.jdellert.iwsa.stat.ObservationBuffer;
 import de.tuebingen.sfs.cldfjava.data.CLDFWordlistDatabase;
 
 import java.util.Arrays;
 import java.util.List;
+import java.util.SplittableRandom;
 
 public class RandomAlignmentsWorker implements Runnable{
     CLDFWordlistDatabase database;
     PhoneticSymbolTable symbolTable;
     InformationModel[] infoModels;
-    CategoricalDistribution randomPairCorrespondenceDist;
-    boolean verbose;
+    ObservationBuffer randomPairObservations;
     int numRandomPairs;
     List<String> langIDs;
-    int onePercentOfRandomPairs;
+    CLDFFormIndex formIndex;
+    SplittableRandom random;
 
+    /**
+     * Creates a worker for a block of random pairs, whose observations are recorded
+     * in the order they are made, so that the blocks can be combined in a fixed
+     * order.
+     *
+     * @param random the generator of this block, e.g. split off from a seeded
+     *               generator, so that runs are reproducible and workers do not
+     *               compete for a shared generator
+     */
     public RandomAlignmentsWorker(CLDFWordlistDatabase database,
                                   PhoneticSymbolTable symbolTable,
                                   InformationModel[] infoModels,
                                   int numRandomPairs,
-                                  boolean verbose) {
+                                  SplittableRandom random) {
         this.database = database;
         this.symbolTable = symbolTable;
         this.infoModels = infoModels;
         this.numRandomPairs = numRandomPairs;
-        this.verbose = verbose;
-        randomPairCorrespondenceDist = new CategoricalDistribution(symbolTable.getSize() * symbolTable.getSize());
-        onePercentOfRandomPairs = numRandomPairs / 100;
-        langIDs = database.getLangIDs();
+        this.random = random;
+        randomPairObservations = new ObservationBuffer();
+        formIndex = CLDFFormIndex.of(database, symbolTable);
+        langIDs = formIndex.getLangIDs();
     }
 
     public void run() {
+        // sampling only among languages with forms makes retries unnecessary
+        int[] langIndicesWithForms = formIndex.getLangIndicesWithForms();
+        if (langIndicesWithForms.length == 0) {
+            return;
+        }
         for (int i = 0; i < numRandomPairs; i++) {
-            if (verbose && i % onePercentOfRandomPairs == 0) {
-                System.err.println("Processed " + i + " of " + numRandomPairs + " random pairs (" + (i * 100) / numRandomPairs + "%)");
-            }
-            int randomLangIdx1 = (int) (Math.random() * database.getLanguageMap().size());
-            int randomLangIdx2 = (int) (Math.random() * database.getLanguageMap().size());
-            String randomLangId1 = langIDs.get(randomLangIdx1);
-            String randomLangId2 = langIDs.get(randomLangIdx2);
-
-            CLDFForm form1inCLDF = database.getRandomFormForLanguage(randomLangId1);
-            CLDFForm form2inCLDF = database.getRandomFormForLanguage(randomLangId2);
-
-            if (form1inCLDF == null || form2inCLDF == null) {
-                i--;
-                continue;
-            }
-
-            // get the segments from the CLDFForm, encode them as ints and construct PhoneticString objects
-            PhoneticString form1 = new PhoneticString(symbolTable.encode(form1inCLDF.getSegments()));
-            PhoneticString form2 = new PhoneticString(symbolTable.encode(form2inCLDF.getSegments()));
+            int randomLangIdx1 = langIndicesWithForms[random.nextInt(langIndicesWithForms.length)];
+            int randomLangIdx2 = langIndicesWithForms[random.nextInt(langIndicesWithForms.length)];
+            PhoneticString form1 = formIndex.getRandomForm(randomLangIdx1, random);
+            PhoneticString form2 = formIndex.getRandomForm(randomLangIdx2, random);
             PhoneticStringAlignment alignment = LevenshteinAlignmentAlgorithm.constructAlignment(form1, form2);
             double[] infoScores = new double[alignment.getLength()];
             if (infoModels == null) {
@@ -67,12 +67,12 @@ public class RandomAlignmentsWorker implements Runnable{
                 infoScores = InformationWeightedSequenceAlignment.combinedInfoScoresForAlignment(alignment, infoModels[randomLangIdx1], infoModels[randomLangIdx2]);
             }
             for (int pos = 0; pos < alignment.getLength(); pos++) {
-                randomPairCorrespondenceDist.addObservation(alignment.getSymbolPairIDAtPos(pos, symbolTable), infoScores[pos]);
+                randomPairObservations.addObservation(alignment.getSymbolPairIDAtPos(pos, symbolTable), infoScores[pos]);
             }
         }
     }
 
-    public CategoricalDistribution getRandomPairCorrespondenceDist() {
-        return randomPairCorrespondenceDist;
+    public ObservationBuffer getRandomPairObservations() {
+        return randomPairObservations;
     }
 }
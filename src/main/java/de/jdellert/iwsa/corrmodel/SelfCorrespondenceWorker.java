@@ -1,5 +1,6 @@
 package de.jdellert.iwsa.corrmodel;
 
+import de.jdellert.iwsa.data.CLDFFormIndex;
 import de.jdellert.iwsa.infomodel.InformationModel;
 import de.jdellert.iwsa.sequence.PhoneticSymbolTable;
 import de.tuebingen.sfs.cldfjava.data.CLDFWordlistDatabase;
@@ -25,10 +26,12 @@ public class SelfCorrespondenceWorker implements Runnable {
     }
 
     public void run() {
-        for (String langID : relevantLangIDs) {
-            int langIdx = relevantLangIDs.indexOf(langID);
+        CLDFFormIndex formIndex = CLDFFormIndex.of(database, symbolTable);
+        for (int i = 0; i < relevantLangIDs.size(); i++) {
+            String langID = relevantLangIDs.get(i);
+            int langIdx = formIndex.getLangIndex(langID);
             System.err.println("Storing local correspondence model for " + langID + " and " + langID);
-            selfCorrespondences[langIdx] = CorrespondenceModelInference.inferCorrModelForPair(database, symbolTable, langID, langID,
+            selfCorrespondences[i] = CorrespondenceModelInference.inferCorrModelForPair(database, symbolTable, formIndex, langIdx, langIdx,
                     globalCorr, globalCorr, globalCorr, infoModels[langIdx], infoModels[langIdx]);
         }
     }
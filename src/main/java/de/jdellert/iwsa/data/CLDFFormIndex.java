@@ -0,0 +1,179 @@
+package de.jdellert.iwsa.data;
+
+import de.jdellert.iwsa.sequence.PhoneticString;
+import de.jdellert.iwsa.sequence.PhoneticSymbolTable;
+import de.tuebingen.sfs.cldfjava.data.CLDFForm;
+import de.tuebingen.sfs.cldfjava.data.CLDFWordlistDatabase;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.WeakHashMap;
+
+/**
+ * Forms of a CLDF wordlist database, encoded once with a symbol table, so that
+ * the correspondence inference workers do not re-encode the segments of a form
+ * for every pair it takes part in. The forms of each concept are stored per
+ * language index, which is the position of the language in
+ * CLDFWordlistDatabase.getLangIDs() and also indexes the information models.
+ *
+ * An index is built once per database and symbol table, see of().
+ */
+public class CLDFFormIndex {
+    private static final Map<CLDFWordlistDatabase, CLDFFormIndex> INDEX_PER_DATABASE = new WeakHashMap<>();
+
+    private final PhoneticSymbolTable symbolTable;
+    private final List<String> langIDs;
+    private final Map<String, Integer> langIndex;
+    // CLDF form => encoded form (identity-based, to avoid hashing form IDs)
+    private final Map<CLDFForm, PhoneticString> encodedForms;
+    // concept ID => language index => encoded forms (null if there are none)
+    private final Map<String, PhoneticString[][]> formsPerConcept;
+    private final List<String> paramIDs;
+    // language index => all encoded forms of the language, for random sampling
+    private final PhoneticString[][] formsPerLanguage;
+    private final int[] langIndicesWithForms;
+
+    /**
+     * @return the index for the database, built on first use and shared afterwards
+     */
+    public static CLDFFormIndex of(CLDFWordlistDatabase database, PhoneticSymbolTable symbolTable) {
+        synchronized (INDEX_PER_DATABASE) {
+            CLDFFormIndex index = INDEX_PER_DATABASE.get(database);
+            if (index == null || index.symbolTable != symbolTable) {
+                index = new CLDFFormIndex(database, symbolTable);
+                INDEX_PER_DATABASE.put(database, index);
+            }
+            return index;
+        }
+    }
+
+    public CLDFFormIndex(CLDFWordlistDatabase database, PhoneticSymbolTable symbolTable) {
+        this.symbolTable = symbolTable;
+        this.langIDs = Collections.unmodifiableList(new ArrayList<>(database.getLangIDs()));
+        this.langIndex = new HashMap<>();
+        for (int i = 0; i < langIDs.size(); i++) {
+            langIndex.put(langIDs.get(i), i);
+        }
+
+        this.encodedForms = new IdentityHashMap<>();
+        List<List<PhoneticString>> formListsPerLanguage = new ArrayList<>(langIDs.size());
+        for (int i = 0; i < langIDs.size(); i++) {
+            formListsPerLanguage.add(new ArrayList<>());
+        }
+        for (CLDFForm form : database.getFormsMap().values()) {
+            PhoneticString encoded = new PhoneticString(symbolTable.encode(form.getSegments()));
+            encodedForms.put(form, encoded);
+            Integer index = langIndex.get(form.getLangID());
+            if (index != null) {
+                formListsPerLanguage.get(index).add(encoded);
+            }
+        }
+        this.formsPerLanguage = new PhoneticString[langIDs.size()][];
+        int numLangsWithForms = 0;
+        for (int i = 0; i < langIDs.size(); i++) {
+            formsPerLanguage[i] = formListsPerLanguage.get(i).toArray(new PhoneticString[0]);
+            if (formsPerLanguage[i].length > 0) {
+                numLangsWithForms++;
+            }
+        }
+        this.langIndicesWithForms = new int[numLangsWithForms];
+        for (int i = 0, j = 0; i < langIDs.size(); i++) {
+            if (formsPerLanguage[i].length > 0) {
+                langIndicesWithForms[j++] = i;
+            }
+        }
+
+        this.formsPerConcept = new LinkedHashMap<>();
+        for (String paramID : database.getConceptMap().keySet()) {
+            Map<String, List<CLDFForm>> formsPerLang = database.getFormsByLanguageByParamID(paramID);
+            if (formsPerLang == null) {
+                continue;
+            }
+            PhoneticString[][] formsPerLangIndex = new PhoneticString[langIDs.size()][];
+            for (Map.Entry<String, List<CLDFForm>> entry : formsPerLang.entrySet()) {
+                Integer index = langIndex.get(entry.getKey());
+                if (index == null || entry.getValue() == null) {
+                    continue;
+                }
+                PhoneticString[] forms = new PhoneticString[entry.getValue().size()];
+                for (int i = 0; i < forms.length; i++) {
+                    forms[i] = encode(entry.getValue().get(i));
+                }
+                formsPerLangIndex[index] = forms;
+            }
+            formsPerConcept.put(paramID, formsPerLangIndex);
+        }
+        this.paramIDs = Collections.unmodifiableList(new ArrayList<>(formsPerConcept.keySet()));
+    }
+
+    public List<String> getLangIDs() {
+        return langIDs;
+    }
+
+    public int getNumLanguages() {
+        return langIDs.size();
+    }
+
+    /**
+     * @return the index of the language, or -1 if it is not in the database
+     */
+    public int getLangIndex(String langID) {
+        Integer index = langIndex.get(langID);
+        return index == null ? -1 : index;
+    }
+
+    /**
+     * @return the concept IDs which have forms, in the order of the database
+     */
+    public List<String> getParamIDs() {
+        return paramIDs;
+    }
+
+    /**
+     * @return the encoded forms of the concept per language index (with null
+     *         entries for languages without forms), or null if the concept has no
+     *         forms
+     */
+    public PhoneticString[][] getFormsPerLanguage(String paramID) {
+        return formsPerConcept.get(paramID);
+    }
+
+    /**
+     * @return the indices of the languages which have at least one form
+     */
+    public int[] getLangIndicesWithForms() {
+        return langIndicesWithForms;
+    }
+
+    /**
+     * Draws a form of the language uniformly at random, using the given generator
+     * so that the caller controls seeding and no generator is shared by threads.
+     *
+     * @return a random encoded form, or null if the language has no forms
+     */
+    public PhoneticString getRandomForm(int langIdx, SplittableRandom random) {
+        PhoneticString[] forms = formsPerLanguage[langIdx];
+        if (forms.length == 0) {
+            return null;
+        }
+        return forms[random.nextInt(forms.length)];
+    }
+
+    /**
+     * @return the encoded form, which is only computed if the form was not known
+     *         when the index was built
+     */
+    public PhoneticString encode(CLDFForm form) {
+        PhoneticString encoded = encodedForms.get(form);
+        if (encoded == null) {
+            encoded = new PhoneticString(symbolTable.encode(form.getSegments()));
+        }
+        return encoded;
+    }
+}
@@ -5,8 +5,10 @@ import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
+import java.util.SplittableRandom;
 import java.util.TreeMap;
 
+import de.jdellert.iwsa.infomodel.InformationModel;
 import de.jdellert.iwsa.sequence.PhoneticString;
 import de.jdellert.iwsa.sequence.PhoneticSymbolTable;
 
@@ -23,6 +25,10 @@ public class LexicalDatabase {
 	// form ID => preprocessed phonetic string for efficient alignment
 	protected ArrayList<PhoneticString> forms;
 
+	// form ID => information content of each segment, see cacheInformationContents()
+	protected volatile ArrayList<double[]> infoContents;
+	protected volatile InformationModel[] infoContentModels;
+
 	// form annotations (used e.g. for orthography, loanword status)
 	protected Map<String, List<String>> annotations;
 
@@ -105,6 +111,48 @@ public class LexicalDatabase {
 		return formID;
 	}
 
+	/**
+	 * Precomputes the information content vectors of all forms under the given
+	 * language-specific information models (indexed by language ID). Nothing is
+	 * done if the vectors have already been computed for the same models.
+	 */
+	public synchronized void cacheInformationContents(InformationModel[] infoModels) {
+		if (infoModels == infoContentModels)
+			return;
+		ArrayList<double[]> result = new ArrayList<double[]>(forms.size());
+		for (int formID = 0; formID < forms.size(); formID++) {
+			InformationModel infoModel = infoModels[formToLang.get(formID)];
+			result.add(infoModel == null ? null : infoModel.informationContents(forms.get(formID).segments));
+		}
+		infoContents = result;
+		infoContentModels = infoModels;
+	}
+
+	/**
+	 * @return the cached information content vector of the form, or null if
+	 *         cacheInformationContents() has not been called yet
+	 */
+	public double[] getInformationContents(int formID) {
+		if (infoContents == null || formID >= infoContents.size())
+			return null;
+		return infoContents.get(formID);
+	}
+
+	/**
+	 * @return the cached information content vector of the form if it was computed
+	 *         under the given information model, otherwise a freshly computed one
+	 */
+	public double[] getInformationContents(int formID, InformationModel infoModel) {
+		if (infoModel == null)
+			return null;
+		if (infoContentModels != null && infoContentModels[formToLang.get(formID)] == infoModel) {
+			double[] cached = getInformationContents(formID);
+			if (cached != null)
+				return cached;
+		}
+		return infoModel.informationContents(forms.get(formID).segments);
+	}
+
 	public List<Integer> getFormIDsForLanguage(int langID) {
 		List<Integer> result = new ArrayList<Integer>();
 		for (List<Integer> formList : langAndConceptToForms.get(langID)) {
@@ -223,6 +271,27 @@ public class LexicalDatabase {
 		return forms.get(formsForRandomConcept.get((int) (Math.random() * formsForRandomConcept.size())));
 	}
 
+	/**
+	 * Variant of getRandomFormForLanguage() which draws from the given generator,
+	 * for reproducible sampling without a generator shared by all threads.
+	 */
+	public PhoneticString getRandomFormForLanguage(int langID, SplittableRandom random) {
+		return forms.get(getRandomFormIDForLanguage(langID, random));
+	}
+
+	/**
+	 * Variant of getRandomFormForLanguage() which returns the ID of the form, e.g.
+	 * for looking up its cached information contents.
+	 */
+	public int getRandomFormIDForLanguage(int langID, SplittableRandom random) {
+		List<List<Integer>> conceptToFormsForLang = langAndConceptToForms.get(langID);
+		List<Integer> formsForRandomConcept = conceptToFormsForLang.get(random.nextInt(conceptToFormsForLang.size()));
+		while (formsForRandomConcept.size() == 0) {
+			formsForRandomConcept = conceptToFormsForLang.get(random.nextInt(conceptToFormsForLang.size()));
+		}
+		return formsForRandomConcept.get(random.nextInt(formsForRandomConcept.size()));
+	}
+
 	public PhoneticString getFormForLangConceptOrth(String lang, String concept, String orth) {
 		int langID = getIDForLanguageCode(lang);
 		if (langID == -1)
@@ -238,11 +307,15 @@ public class LexicalDatabase {
 		return null;
 	}
 
-	public int getCognateSetID(int formID) {
+	public synchronized int getCognateSetID(int formID) {
 		return cognateSetForForm.get(formID);
 	}
 
-	public void addCognateSet(List<Integer> cognateSetFormIDs) {
+	/**
+	 * Assigns the next cognate set ID to the forms. Cognate sets can be added from
+	 * several threads, but the IDs then depend on the order of the calls.
+	 */
+	public synchronized void addCognateSet(List<Integer> cognateSetFormIDs) {
 		int cognateSetID = cognateSets.size() + 1;
 		for (int formID : cognateSetFormIDs) {
 			cognateSetForForm.set(formID, cognateSetID);
@@ -4,17 +4,17 @@ import java.io.BufferedWriter;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.io.OutputStreamWriter;
-import java.util.Map;
-import java.util.TreeMap;
+import java.util.Arrays;
 
 import de.jdellert.iwsa.sequence.PhoneticSymbolTable;
+import de.jdellert.iwsa.util.collections.IntIntHashMap;
 import de.jdellert.iwsa.util.io.Formatting;
 
 public class InformationModel {
 	public static boolean VERBOSE = false;
 	
-	// gappy bigrams are also stored in this structure
-	Map<Integer, Integer> observationCounts;
+	// trigram ID => count; gappy bigrams are also stored in this structure
+	IntIntHashMap observationCounts;
 	// only 1/4 of the some of observation counts due to representation of gappy
 	// bigrams
 	double observationCountsSum = 0.0;
@@ -32,7 +32,11 @@ public class InformationModel {
 		this.numTrigrams = (numSymbols - 1) * (numSymbols - 1) * (numSymbols - 1);
 		this.numGappyBigrams = (numSymbols - 1) * (numSymbols - 1);
 
-		this.observationCounts = new TreeMap<Integer, Integer>();
+		this.observationCounts = new IntIntHashMap();
+	}
+
+	public PhoneticSymbolTable getSymbolTable() {
+		return symbolTable;
 	}
 
 	public void setSmoothingMassRatio(double ratio) {
@@ -47,10 +51,7 @@ public class InformationModel {
 	}
 
 	public int trigramCount(int a, int b, int c) {
-		Integer observationCount = observationCounts.get(trigramID(a, b, c));
-		if (observationCount == null)
-			observationCount = 0;
-		return observationCount;
+		return observationCounts.get(trigramID(a, b, c));
 	}
 
 	public double smoothedTrigramCount(int a, int b, int c) {
@@ -74,6 +75,33 @@ public class InformationModel {
 		return informationContent(a, b, c, d, e);
 	}
 
+	/**
+	 * Computes the information content of every position in a segment sequence, so
+	 * that alignment algorithms can look it up instead of recomputing it per cell.
+	 */
+	public double[] informationContents(int[] s) {
+		double[] result = new double[s.length];
+		for (int i = 0; i < s.length; i++) {
+			result[i] = informationContent(s, i);
+		}
+		return result;
+	}
+
+	/**
+	 * @return a hash of the observation counts, by which results computed with
+	 *         this model can be recognized as outdated when the model has changed
+	 */
+	public long fingerprint() {
+		int[] trigramIDs = observationCounts.keys();
+		Arrays.sort(trigramIDs);
+		long fingerprint = 31 * Double.doubleToLongBits(smoothingMassRatio) + numSymbols;
+		for (int trigramID : trigramIDs) {
+			fingerprint = 31 * fingerprint + trigramID;
+			fingerprint = 31 * fingerprint + observationCounts.get(trigramID);
+		}
+		return fingerprint;
+	}
+
 	public double informationContent(int a, int b, int c, int d, int e) {
 		if (VERBOSE) System.out.print("c(" + Formatting.intRPad(a, 3) + "," + Formatting.intRPad(b, 3) + ","
 				+ Formatting.intRPad(c, 3) + "," + Formatting.intRPad(d, 3) + "," + Formatting.intRPad(e, 3) + "):  ");
@@ -94,20 +122,12 @@ public class InformationModel {
 	}
 
 	private void storeObservation(int trigramID) {
-		Integer count = observationCounts.get(trigramID);
-		if (count == null) {
-			count = 0;
-		}
-		observationCounts.put(trigramID, count + 1);
+		observationCounts.add(trigramID, 1);
 		observationCountsSum += 1.0;
 	}
 
 	private void storeGappyObservation(int trigramID) {
-		Integer count = observationCounts.get(trigramID);
-		if (count == null) {
-			count = 0;
-		}
-		observationCounts.put(trigramID, count + 1);
+		observationCounts.add(trigramID, 1);
 	}
 
 	public int trigramID(int symbolA, int symbolB, int symbolC) {
@@ -20,6 +20,40 @@ public class InformationModelInference {
 		return infoModels;
 	}
 
+	/**
+	 * Completes previously inferred information models by the models of the
+	 * languages which are missing, e.g. because they have been added to the
+	 * database since. The previous models are kept even if forms have been added
+	 * to their languages.
+	 *
+	 * @param infoModels the previous models, which are not modified; may be
+	 *                   smaller than the number of languages
+	 * @return the previous models together with the inferred ones, indexed by the
+	 *         language IDs of the database
+	 */
+	public static InformationModel[] inferMissingInformationModels(LexicalDatabase database,
+			PhoneticSymbolTable symbolTable, InformationModel[] infoModels) {
+		InformationModel[] result = new InformationModel[database.getNumLanguages()];
+		for (int langID = 0; langID < database.getNumLanguages(); langID++) {
+			if (langID < infoModels.length && infoModels[langID] != null) {
+				result[langID] = infoModels[langID];
+			} else {
+				result[langID] = inferInformationModelForLanguage(langID, database, symbolTable);
+			}
+		}
+		return result;
+	}
+
+	public static int countMissingInformationModels(LexicalDatabase database, InformationModel[] infoModels) {
+		int numMissing = 0;
+		for (int langID = 0; langID < database.getNumLanguages(); langID++) {
+			if (langID >= infoModels.length || infoModels[langID] == null) {
+				numMissing++;
+			}
+		}
+		return numMissing;
+	}
+
 	public static InformationModel inferInformationModelForLanguage(int langID, LexicalDatabase database,
 			PhoneticSymbolTable symbolTable) {
 		InformationModel model = new InformationModel(symbolTable);
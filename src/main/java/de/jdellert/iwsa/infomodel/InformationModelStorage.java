@@ -0,0 +1,82 @@
+package de.jdellert.iwsa.infomodel;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.Map;
+
+import de.jdellert.iwsa.sequence.PhoneticSymbolTable;
+import de.jdellert.iwsa.util.collections.IntIntHashMap;
+
+/**
+ * Stores the information models of the languages of a database, so that they
+ * can be reused when forms are added to the database later. The format follows
+ * that of the local correspondence models in CorrespondenceModelStorage.
+ */
+public class InformationModelStorage {
+
+	public static void serializeInformationModelsToFile(InformationModel[] infoModels, String[] langIDs,
+			PhoneticSymbolTable symbolTable, String fileName) throws FileNotFoundException, IOException {
+		System.err.print("Writing information models to " + fileName + " ...");
+		ObjectOutputStream outputStream = new ObjectOutputStream(new FileOutputStream(new File(fileName)));
+		outputStream.writeObject(langIDs);
+		outputStream.writeObject(symbolTable);
+		for (int i = 0; i < langIDs.length; i++) {
+			InformationModel infoModel = i < infoModels.length ? infoModels[i] : null;
+			outputStream.writeBoolean(infoModel != null);
+			if (infoModel != null) {
+				int[] trigramIDs = infoModel.observationCounts.keys();
+				int[] counts = new int[trigramIDs.length];
+				for (int j = 0; j < trigramIDs.length; j++) {
+					counts[j] = infoModel.observationCounts.get(trigramIDs[j]);
+				}
+				outputStream.writeDouble(infoModel.smoothingMassRatio);
+				outputStream.writeDouble(infoModel.observationCountsSum);
+				outputStream.writeObject(trigramIDs);
+				outputStream.writeObject(counts);
+			}
+		}
+		outputStream.close();
+		System.err.println("done.");
+	}
+
+	/**
+	 * Reads the models of the languages in langToID, using the symbol table they
+	 * were stored with.
+	 *
+	 * @return the models indexed by the IDs in langToID, null for the languages
+	 *         which are not in the file
+	 */
+	public static InformationModel[] deserializeInformationModels(ObjectInputStream in, Map<String, Integer> langToID)
+			throws IOException, ClassNotFoundException {
+		String[] langIDs = (String[]) in.readObject();
+		int maxID = -1;
+		for (int langID : langToID.values()) {
+			if (langID > maxID)
+				maxID = langID;
+		}
+		PhoneticSymbolTable symbolTable = (PhoneticSymbolTable) in.readObject();
+		InformationModel[] infoModels = new InformationModel[maxID + 1];
+		for (int fileI = 0; fileI < langIDs.length; fileI++) {
+			if (!in.readBoolean())
+				continue;
+			InformationModel infoModel = new InformationModel(symbolTable);
+			infoModel.smoothingMassRatio = in.readDouble();
+			infoModel.observationCountsSum = in.readDouble();
+			int[] trigramIDs = (int[]) in.readObject();
+			int[] counts = (int[]) in.readObject();
+			infoModel.observationCounts = new IntIntHashMap(trigramIDs.length);
+			for (int j = 0; j < trigramIDs.length; j++) {
+				infoModel.observationCounts.put(trigramIDs[j], counts[j]);
+			}
+			Integer i = langToID.get(langIDs[fileI]);
+			if (i != null) {
+				infoModels[i] = infoModel;
+			}
+		}
+		return infoModels;
+	}
+}
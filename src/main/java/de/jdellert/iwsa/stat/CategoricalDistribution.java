@@ -1,6 +1,6 @@
 package de.jdellert.iwsa.stat;
 
-public class CategoricalDistribution {
+public class CategoricalDistribution implements ObservationSink {
 	// internal representation: number of observations, sum of observations
 	double[] observationCounts;
 	double observationCountsSum;
@@ -43,11 +43,13 @@ public class CategoricalDistribution {
 	}
 
 	public double getProb(int i) {
+		double observationCount = getObservationCount(i);
+		double observationCountsSum = getObservationCountsSum();
 		switch (smoothingMethod) {
 		case NONE:
-			return observationCounts[i] / observationCountsSum;
+			return observationCount / observationCountsSum;
 		case LAPLACE:
-			return (observationCounts[i] + ((smoothingMassRatio * observationCountsSum) / observationCounts.length))
+			return (observationCount + ((smoothingMassRatio * observationCountsSum) / observationCounts.length))
 					/ ((1.0 + smoothingMassRatio) * observationCountsSum);
 		default:
 			break;
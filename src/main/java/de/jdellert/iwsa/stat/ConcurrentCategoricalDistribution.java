@@ -0,0 +1,74 @@
+package de.jdellert.iwsa.stat;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Categorical distribution which can be fed by many threads at once without
+ * locking. Every thread adds its observations to its own shard of counts, and
+ * the shards are only summed up when counts or probabilities are read.
+ * 
+ * Reads are exact only once all adding threads are done (e.g. after joining
+ * them or after the tasks of an executor have completed), which is how
+ * distributions are used during correspondence model inference.
+ */
+public class ConcurrentCategoricalDistribution extends CategoricalDistribution {
+	// per-thread counts; the last cell of each shard holds the sum of its observations
+	private final ThreadLocal<double[]> shardPerThread;
+	private final Queue<double[]> shards;
+
+	public ConcurrentCategoricalDistribution(int k) {
+		this(k, SmoothingMethod.LAPLACE);
+	}
+
+	public ConcurrentCategoricalDistribution(int k, SmoothingMethod smoothingMethod) {
+		super(k, smoothingMethod);
+		this.shards = new ConcurrentLinkedQueue<double[]>();
+		this.shardPerThread = ThreadLocal.withInitial(() -> {
+			double[] shard = new double[k + 1];
+			shards.add(shard);
+			return shard;
+		});
+	}
+
+	@Override
+	public void addObservation(int i) {
+		addObservation(i, 1.0);
+	}
+
+	@Override
+	public void addObservation(int i, double observationWeight) {
+		double[] shard = shardPerThread.get();
+		shard[i] += observationWeight;
+		shard[shard.length - 1] += observationWeight;
+	}
+
+	@Override
+	public double getObservationCount(int i) {
+		double count = observationCounts[i];
+		for (double[] shard : shards) {
+			count += shard[i];
+		}
+		return count;
+	}
+
+	@Override
+	public double getObservationCountsSum() {
+		double sum = observationCountsSum;
+		for (double[] shard : shards) {
+			sum += shard[shard.length - 1];
+		}
+		return sum;
+	}
+
+	/**
+	 * Merges the counts of all shards into a plain CategoricalDistribution with
+	 * the same smoothing settings, which is cheaper to query repeatedly.
+	 */
+	public CategoricalDistribution merge() {
+		CategoricalDistribution result = new CategoricalDistribution(observationCounts.length, smoothingMethod);
+		result.setSmoothingMassRatio(smoothingMassRatio);
+		result.concatenate(this);
+		return result;
+	}
+}
@@ -0,0 +1,48 @@
+package de.jdellert.iwsa.stat;
+
+import java.util.Arrays;
+
+/**
+ * Records weighted observations in the order in which they are made, so that
+ * they can later be added to a distribution in exactly that order. Parallel
+ * tasks can fill buffers of their own, which are then replayed in a fixed task
+ * order to get results that do not depend on thread scheduling.
+ */
+public class ObservationBuffer implements ObservationSink {
+	private int[] categories;
+	private double[] weights;
+	private int size;
+
+	public ObservationBuffer() {
+		this(64);
+	}
+
+	public ObservationBuffer(int initialCapacity) {
+		this.categories = new int[Math.max(initialCapacity, 1)];
+		this.weights = new double[Math.max(initialCapacity, 1)];
+		this.size = 0;
+	}
+
+	public void addObservation(int i, double observationWeight) {
+		if (size == categories.length) {
+			categories = Arrays.copyOf(categories, size * 2);
+			weights = Arrays.copyOf(weights, size * 2);
+		}
+		categories[size] = i;
+		weights[size] = observationWeight;
+		size++;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Adds all recorded observations to the sink, in the order they were recorded.
+	 */
+	public void addTo(ObservationSink sink) {
+		for (int j = 0; j < size; j++) {
+			sink.addObservation(categories[j], weights[j]);
+		}
+	}
+}
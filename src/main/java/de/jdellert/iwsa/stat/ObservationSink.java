@@ -0,0 +1,8 @@
+package de.jdellert.iwsa.stat;
+
+/**
+ * Anything that weighted observations of categories can be added to.
+ */
+public interface ObservationSink {
+	public void addObservation(int i, double observationWeight);
+}
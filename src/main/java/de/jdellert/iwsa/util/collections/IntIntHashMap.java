@@ -0,0 +1,168 @@
+package de.jdellert.iwsa.util.collections;
+
+/**
+ * Hash map from int keys to int values with open addressing (linear probing),
+ * storing keys and values in two primitive arrays. This avoids boxing both keys
+ * and values as in a Map<Integer, Integer>, and lookups only touch a few array
+ * cells instead of walking a tree.
+ * 
+ * Entries cannot be removed, which is all that count tables need.
+ */
+public class IntIntHashMap {
+	// marks unused slots; an entry for this key is stored outside the table
+	private static final int FREE_KEY = 0;
+
+	private static final double MAX_LOAD_FACTOR = 0.6;
+
+	private int[] keys;
+	private int[] values;
+	private int mask;
+	private int size;
+	private int resizeThreshold;
+
+	private boolean hasFreeKey;
+	private int freeKeyValue;
+
+	public IntIntHashMap() {
+		this(16);
+	}
+
+	public IntIntHashMap(int expectedSize) {
+		int capacity = 16;
+		while (capacity * MAX_LOAD_FACTOR < expectedSize) {
+			capacity <<= 1;
+		}
+		allocate(capacity);
+	}
+
+	private void allocate(int capacity) {
+		keys = new int[capacity];
+		values = new int[capacity];
+		mask = capacity - 1;
+		resizeThreshold = (int) (capacity * MAX_LOAD_FACTOR);
+	}
+
+	private static int hash(int key) {
+		int h = key * 0x9E3779B9;
+		return h ^ (h >>> 16);
+	}
+
+	/**
+	 * @return the value stored for the key, or defaultValue if there is none
+	 */
+	public int get(int key, int defaultValue) {
+		if (key == FREE_KEY)
+			return hasFreeKey ? freeKeyValue : defaultValue;
+		int slot = hash(key) & mask;
+		while (true) {
+			int slotKey = keys[slot];
+			if (slotKey == key)
+				return values[slot];
+			if (slotKey == FREE_KEY)
+				return defaultValue;
+			slot = (slot + 1) & mask;
+		}
+	}
+
+	public int get(int key) {
+		return get(key, 0);
+	}
+
+	public boolean containsKey(int key) {
+		if (key == FREE_KEY)
+			return hasFreeKey;
+		int slot = hash(key) & mask;
+		while (true) {
+			int slotKey = keys[slot];
+			if (slotKey == key)
+				return true;
+			if (slotKey == FREE_KEY)
+				return false;
+			slot = (slot + 1) & mask;
+		}
+	}
+
+	public void put(int key, int value) {
+		if (key == FREE_KEY) {
+			if (!hasFreeKey)
+				size++;
+			hasFreeKey = true;
+			freeKeyValue = value;
+			return;
+		}
+		// the slot must be found before accessing values, which a rehash replaces
+		int slot = findOrInsertSlot(key);
+		values[slot] = value;
+	}
+
+	/**
+	 * Adds delta to the value stored for the key, treating a missing entry as 0.
+	 * 
+	 * @return the new value
+	 */
+	public int add(int key, int delta) {
+		if (key == FREE_KEY) {
+			if (!hasFreeKey)
+				size++;
+			hasFreeKey = true;
+			return freeKeyValue += delta;
+		}
+		int slot = findOrInsertSlot(key);
+		return values[slot] += delta;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * @return the keys of all entries, in no particular order
+	 */
+	public int[] keys() {
+		int[] result = new int[size];
+		int i = 0;
+		if (hasFreeKey)
+			result[i++] = FREE_KEY;
+		for (int slotKey : keys) {
+			if (slotKey != FREE_KEY)
+				result[i++] = slotKey;
+		}
+		return result;
+	}
+
+	private int findOrInsertSlot(int key) {
+		int slot = hash(key) & mask;
+		while (true) {
+			int slotKey = keys[slot];
+			if (slotKey == key)
+				return slot;
+			if (slotKey == FREE_KEY)
+				break;
+			slot = (slot + 1) & mask;
+		}
+		if (size >= resizeThreshold) {
+			rehash(keys.length << 1);
+			return findOrInsertSlot(key);
+		}
+		keys[slot] = key;
+		size++;
+		return slot;
+	}
+
+	private void rehash(int newCapacity) {
+		int[] oldKeys = keys;
+		int[] oldValues = values;
+		allocate(newCapacity);
+		for (int i = 0; i < oldKeys.length; i++) {
+			int key = oldKeys[i];
+			if (key == FREE_KEY)
+				continue;
+			int slot = hash(key) & mask;
+			while (keys[slot] != FREE_KEY) {
+				slot = (slot + 1) & mask;
+			}
+			keys[slot] = key;
+			values[slot] = oldValues[i];
+		}
+	}
+}
@@ -0,0 +1,56 @@
+package de.jdellert.iwsa.align;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import de.jdellert.iwsa.sequence.PhoneticString;
+
+public class AlignmentCacheTest {
+    public static void main(String[] args) {
+        int errors = 0;
+        AlignmentCache<String> cache = new AlignmentCache<>(100);
+        AtomicInteger computations = new AtomicInteger();
+        Object model1 = new Object();
+        Object model2 = new Object();
+        PhoneticString str1 = new PhoneticString(new int[] { 2, 3, 4 });
+        PhoneticString str2 = new PhoneticString(new int[] { 2, 5 });
+        // a different object with the same content as str1
+        PhoneticString str1Copy = new PhoneticString(new int[] { 2, 3, 4 });
+
+        String result = cache.get(str1, str2, () -> "a" + computations.incrementAndGet(), model1);
+        if (!cache.get(str1Copy, str2, () -> "b" + computations.incrementAndGet(), model1).equals(result)) {
+            System.err.println("identical forms were not served from the cache");
+            errors++;
+        }
+        if (cache.get(str2, str1, () -> "c" + computations.incrementAndGet(), model1).equals(result)) {
+            System.err.println("reversed pair was served from the cache");
+            errors++;
+        }
+        if (cache.get(str1, str2, () -> "d" + computations.incrementAndGet(), model2).equals(result)) {
+            System.err.println("pair under another model was served from the cache");
+            errors++;
+        }
+        cache.get(str2, str2, () -> null, model1);
+        if (cache.get(str2, str2, () -> "e", model1) != null) {
+            System.err.println("null result was not cached");
+            errors++;
+        }
+        if (cache.getHits() != 2 || cache.getMisses() != 4 || computations.get() != 3) {
+            System.err.println("counters: " + cache + ", " + computations.get() + " computations");
+            errors++;
+        }
+
+        // more distinct pairs than the capacity
+        for (int i = 0; i < 1000; i++) {
+            cache.get(new PhoneticString(new int[] { i }), str2, () -> "f", model1);
+        }
+        if (cache.getEvictions() < 1000 + 4 - 100) {
+            System.err.println("too few evictions: " + cache);
+            errors++;
+        }
+
+        if (errors > 0) {
+            throw new AssertionError(errors + " failed checks of AlignmentCache");
+        }
+        System.err.println("AlignmentCache passed all checks.");
+    }
+}
@@ -0,0 +1,41 @@
+package de.jdellert.iwsa.align;
+
+import java.util.Random;
+
+import de.jdellert.iwsa.sequence.PhoneticString;
+
+public class BitParallelEditDistanceTest {
+    public static void main(String[] args) {
+        Random random = new Random(42);
+        BitParallelEditDistance bitParallel = new BitParallelEditDistance();
+        int errors = 0;
+        for (int t = 0; t < 100000; t++) {
+            // lengths around the word size, few symbols to get many matches, -1 for undefined symbols
+            PhoneticString query = randomString(random, t % 10 == 0 ? 70 : 12, 6);
+            bitParallel.setQuery(query);
+            for (int k = 0; k < 3; k++) {
+                PhoneticString target = randomString(random, t % 10 == 0 ? 70 : 12, 6);
+                int expected = LevenshteinAlignmentAlgorithm.editDistance(query, target);
+                int actual = bitParallel.editDistance(target);
+                if (expected != actual) {
+                    if (errors < 10) {
+                        System.err.println("edit distance of " + query + " and " + target + ": " + actual + " != " + expected);
+                    }
+                    errors++;
+                }
+            }
+        }
+        if (errors > 0) {
+            throw new AssertionError(errors + " failed checks of BitParallelEditDistance");
+        }
+        System.err.println("Bit-parallel and dynamic programming edit distances agree.");
+    }
+
+    private static PhoneticString randomString(Random random, int maxLength, int numSymbols) {
+        int[] segments = new int[random.nextInt(maxLength + 1)];
+        for (int i = 0; i < segments.length; i++) {
+            segments[i] = random.nextInt(100) == 0 ? -1 : 2 + random.nextInt(numSymbols);
+        }
+        return new PhoneticString(segments);
+    }
+}
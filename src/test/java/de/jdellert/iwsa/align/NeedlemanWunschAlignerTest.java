@@ -0,0 +1,205 @@
+package de.jdellert.iwsa.align;
+
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Random;
+
+import de.jdellert.iwsa.corrmodel.CorrespondenceModel;
+import de.jdellert.iwsa.corrmodel.DenseCorrespondenceModel;
+import de.jdellert.iwsa.data.RandomLexicalDatabase;
+import de.jdellert.iwsa.sequence.PhoneticString;
+import de.jdellert.iwsa.sequence.PhoneticSymbolTable;
+
+public class NeedlemanWunschAlignerTest {
+    public static void main(String[] args) {
+        PhoneticSymbolTable symbolTable = RandomLexicalDatabase.symbolTable(8);
+        Random random = new Random(42);
+        NeedlemanWunschAligner aligner = new NeedlemanWunschAligner();
+        double[] thresholds = { -0.1, 0.0, 0.2, 0.35, 0.6, 1.0, 1.2 };
+        int errors = 0;
+        for (boolean newTransformation : new boolean[] { true, false }) {
+            NeedlemanWunschAlgorithm.NEW_DISTANCE_TRANSFORMATION = newTransformation;
+            for (int t = 0; t < 10000; t++) {
+                // scores rounded to halves, so that the tie-breaking matters
+                CorrespondenceModel gloCorrModel = randomModel(symbolTable, 1.0, t % 2 == 0, random);
+                CorrespondenceModel locCorrModel = t % 4 == 0 ? gloCorrModel : randomModel(symbolTable, 0.4, false, random);
+                CorrespondenceModel selfSimModel1 = t % 4 == 0 ? gloCorrModel : randomModel(symbolTable, 0.5, false, random);
+                CorrespondenceModel selfSimModel2 = t % 4 == 0 ? gloCorrModel : randomModel(symbolTable, 0.5, t % 3 == 0, random);
+                // aligned strings of varying lengths, so that the buffers of the aligner are reused
+                PhoneticString str1 = RandomLexicalDatabase.randomString(symbolTable, random.nextInt(13), random);
+                PhoneticString str2 = t % 2 == 0 ? RandomLexicalDatabase.mutate(symbolTable, str1, random.nextInt(4), random)
+                        : RandomLexicalDatabase.randomString(symbolTable, random.nextInt(13), random);
+                String pair = str1 + " / " + str2;
+
+                PhoneticStringAlignment expected = referenceAlignment(str1, str2, gloCorrModel, locCorrModel,
+                        selfSimModel1, selfSimModel2);
+                aligner.align(str1, str2, gloCorrModel, locCorrModel, selfSimModel1, selfSimModel2);
+                errors += check("align(" + pair + ")", expected, aligner);
+
+                // accepted exactly if within the threshold, and then with the same alignment
+                double threshold = thresholds[t % thresholds.length];
+                errors += checkThreshold(aligner, str1, str2, gloCorrModel, locCorrModel, selfSimModel1,
+                        selfSimModel2, threshold, expected, pair);
+                if (!Double.isNaN(expected.normalizedDistanceScore)) {
+                    errors += checkThreshold(aligner, str1, str2, gloCorrModel, locCorrModel, selfSimModel1,
+                            selfSimModel2, expected.normalizedDistanceScore, expected, pair);
+                    errors += checkThreshold(aligner, str1, str2, gloCorrModel, locCorrModel, selfSimModel1,
+                            selfSimModel2, Math.nextDown(expected.normalizedDistanceScore), expected, pair);
+                }
+            }
+        }
+        NeedlemanWunschAlgorithm.NEW_DISTANCE_TRANSFORMATION = true;
+
+        if (errors > 0) {
+            throw new AssertionError(errors + " failed checks of NeedlemanWunschAligner");
+        }
+        System.err.println("NeedlemanWunschAligner agrees with the reference implementation.");
+    }
+
+    private static int checkThreshold(NeedlemanWunschAligner aligner, PhoneticString str1, PhoneticString str2,
+            CorrespondenceModel gloCorrModel, CorrespondenceModel locCorrModel, CorrespondenceModel selfSimModel1,
+            CorrespondenceModel selfSimModel2, double threshold, PhoneticStringAlignment expected, String pair) {
+        boolean accepted = aligner.alignWithinThreshold(str1, str2, gloCorrModel, locCorrModel, selfSimModel1,
+                selfSimModel2, threshold);
+        if (accepted != expected.normalizedDistanceScore <= threshold) {
+            System.err.println("alignWithinThreshold(" + pair + ", " + threshold + ") = " + accepted
+                    + " for distance " + expected.normalizedDistanceScore);
+            return 1;
+        }
+        return accepted ? check("alignWithinThreshold(" + pair + ", " + threshold + ")", expected, aligner) : 0;
+    }
+
+    private static int check(String description, PhoneticStringAlignment expected, NeedlemanWunschAligner aligner) {
+        PhoneticStringAlignment actual = aligner.toAlignment();
+        boolean sameScores = Double.compare(expected.alignmentScore, aligner.getAlignmentScore()) == 0
+                && Double.compare(expected.normalizedDistanceScore, aligner.getNormalizedDistanceScore()) == 0;
+        if (sameScores && expected.str1.equals(actual.str1) && expected.str2.equals(actual.str2)
+                && aligner.getLength() == expected.getLength())
+            return 0;
+        System.err.println(description + ": expected " + expected.str1 + " " + expected.str2 + " "
+                + expected.normalizedDistanceScore + ", got " + actual.str1 + " " + actual.str2 + " "
+                + aligner.getNormalizedDistanceScore());
+        return 1;
+    }
+
+    private static CorrespondenceModel randomModel(PhoneticSymbolTable symbolTable, double density, boolean dense,
+            Random random) {
+        CorrespondenceModel model = dense ? new DenseCorrespondenceModel(symbolTable)
+                : new CorrespondenceModel(symbolTable);
+        for (int i = 0; i < symbolTable.getSize(); i++) {
+            for (int j = 0; j < symbolTable.getSize(); j++) {
+                if (random.nextDouble() < density)
+                    model.setScore(i, j, Math.round(random.nextGaussian() * 4) / 2.0 + (i == j ? 3 : 0));
+            }
+        }
+        return model;
+    }
+
+    /**
+     * The original, allocating implementation of
+     * NeedlemanWunschAlgorithm.constructAlignment().
+     */
+    private static PhoneticStringAlignment referenceAlignment(PhoneticString str1, PhoneticString str2,
+            CorrespondenceModel gloCorrModel, CorrespondenceModel locCorrModel, CorrespondenceModel selfSimModel1,
+            CorrespondenceModel selfSimModel2) {
+        int m = str1.getLength() + 1;
+        int n = str2.getLength() + 1;
+
+        double[][] mtx = new double[m][n];
+        int[][] aSubst = new int[m][n];
+        int[][] bSubst = new int[m][n];
+        for (int i = 1; i < m; i++) {
+            mtx[i][0] = mtx[i - 1][0] + referenceScore(gloCorrModel, locCorrModel, str1.segments[i - 1], 1);
+            aSubst[i][0] = str1.segments[i - 1];
+            bSubst[i][0] = 1;
+        }
+        for (int j = 1; j < n; j++) {
+            mtx[0][j] = mtx[0][j - 1] + referenceScore(gloCorrModel, locCorrModel, 1, str2.segments[j - 1]);
+            aSubst[0][j] = 1;
+            bSubst[0][j] = str2.segments[j - 1];
+        }
+        for (int i = 1; i < m; i++) {
+            for (int j = 1; j < n; j++) {
+                double matchValue = mtx[i - 1][j - 1]
+                        + referenceScore(gloCorrModel, locCorrModel, str1.segments[i - 1], str2.segments[j - 1]);
+                double insertionValue = mtx[i][j - 1]
+                        + referenceScore(gloCorrModel, locCorrModel, 1, str2.segments[j - 1]);
+                double deletionValue = mtx[i - 1][j]
+                        + referenceScore(gloCorrModel, locCorrModel, str1.segments[i - 1], 1);
+                if (insertionValue > matchValue) {
+                    if (deletionValue > insertionValue) {
+                        mtx[i][j] = deletionValue;
+                        aSubst[i][j] = str1.segments[i - 1];
+                        bSubst[i][j] = 1;
+                    } else {
+                        mtx[i][j] = insertionValue;
+                        aSubst[i][j] = 1;
+                        bSubst[i][j] = str2.segments[j - 1];
+                    }
+                } else {
+                    if (deletionValue > matchValue) {
+                        mtx[i][j] = deletionValue;
+                        aSubst[i][j] = str1.segments[i - 1];
+                        bSubst[i][j] = 1;
+                    } else {
+                        mtx[i][j] = matchValue;
+                        aSubst[i][j] = str1.segments[i - 1];
+                        bSubst[i][j] = str2.segments[j - 1];
+                    }
+                }
+            }
+        }
+
+        int i = m - 1;
+        int j = n - 1;
+        List<Integer> result1 = new LinkedList<Integer>();
+        List<Integer> result2 = new LinkedList<Integer>();
+        while (i > 0 || j > 0) {
+            int aPart = aSubst[i][j];
+            int bPart = bSubst[i][j];
+            result1.add(0, aPart);
+            result2.add(0, bPart);
+            if (aPart != 1)
+                i--;
+            if (bPart != 1)
+                j--;
+            if (aPart == 1 && bPart == 1) {
+                i--;
+                j--;
+            }
+            if (i < 0 || j < 0)
+                break;
+        }
+
+        double similarityScore = mtx[m - 1][n - 1];
+        double str1SelfSimilarity = 0.0;
+        for (int segmentID : str1.segments) {
+            str1SelfSimilarity += selfSimModel1.getScore(segmentID, segmentID);
+        }
+        double str2SelfSimilarity = 0.0;
+        for (int segmentID : str2.segments) {
+            str2SelfSimilarity += selfSimModel2.getScore(segmentID, segmentID);
+        }
+        if (NeedlemanWunschAlgorithm.NEW_DISTANCE_TRANSFORMATION) {
+            similarityScore /= result1.size();
+            str1SelfSimilarity /= m - 1;
+            str2SelfSimilarity /= n - 1;
+        }
+
+        PhoneticStringAlignment alignment = new PhoneticStringAlignment();
+        alignment.str1 = new PhoneticString(result1.stream().mapToInt(Integer::intValue).toArray());
+        alignment.str2 = new PhoneticString(result2.stream().mapToInt(Integer::intValue).toArray());
+        alignment.alignmentScore = similarityScore;
+        alignment.normalizedDistanceScore = 1 - (2 * similarityScore) / (str1SelfSimilarity + str2SelfSimilarity);
+        return alignment;
+    }
+
+    private static double referenceScore(CorrespondenceModel gloCorrModel, CorrespondenceModel locCorrModel, int ci,
+            int cj) {
+        Double score = locCorrModel.getScoreOrNull(ci, cj);
+        if (score == null) {
+            score = gloCorrModel.getScoreOrNull(ci, cj);
+        }
+        return score == null ? 0.0 : score;
+    }
+}
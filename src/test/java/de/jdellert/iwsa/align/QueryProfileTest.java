@@ -0,0 +1,145 @@
+package de.jdellert.iwsa.align;
+
+import java.util.Random;
+
+import de.jdellert.iwsa.corrmodel.CorrespondenceModel;
+import de.jdellert.iwsa.corrmodel.CorrespondenceModelInference;
+import de.jdellert.iwsa.corrmodel.DenseCorrespondenceModel;
+import de.jdellert.iwsa.corrmodel.MergedCorrespondenceModel;
+import de.jdellert.iwsa.data.LexicalDatabase;
+import de.jdellert.iwsa.data.RandomLexicalDatabase;
+import de.jdellert.iwsa.infomodel.InformationModel;
+import de.jdellert.iwsa.infomodel.InformationModelInference;
+import de.jdellert.iwsa.sequence.PhoneticString;
+import de.jdellert.iwsa.sequence.PhoneticSymbolTable;
+
+public class QueryProfileTest {
+    public static void main(String[] args) {
+        if (!QueryProfile.vectorKernelAvailable()) {
+            System.err.println("Vector API kernel not loaded, only the scalar loop is tested (build with the vector-api"
+                    + " profile and run with --add-modules jdk.incubator.vector to cover it).");
+        }
+        PhoneticSymbolTable symbolTable = RandomLexicalDatabase.symbolTable(10);
+        Random random = new Random(42);
+        QueryProfile profile = new QueryProfile();
+        int errors = 0;
+
+        // random models; the local model is used as it is, or merged with the global model over some of the symbols
+        for (int t = 0; t < 4000; t++) {
+            CorrespondenceModel gloCorrModel = randomModel(symbolTable, 1.0, t % 2 == 0, random);
+            CorrespondenceModel locCorrModel = randomModel(symbolTable, 0.4, false, random);
+            CorrespondenceModel selfSimModel1 = randomModel(symbolTable, 0.5, false, random);
+            CorrespondenceModel selfSimModel2 = randomModel(symbolTable, 0.5, t % 3 == 0, random);
+            CorrespondenceModel profileLocCorrModel = t % 2 == 0 ? locCorrModel
+                    : new MergedCorrespondenceModel(locCorrModel, gloCorrModel, randomSymbols(symbolTable, random),
+                            randomSymbols(symbolTable, random));
+            InformationModel infoModel1 = randomInfoModel(symbolTable, random);
+            InformationModel infoModel2 = randomInfoModel(symbolTable, random);
+            // queries around and above the vector lengths, so that both the vector loop and its tail are used
+            PhoneticString query = RandomLexicalDatabase.randomString(symbolTable, 1 + random.nextInt(20), random);
+            PhoneticString[] targets = new PhoneticString[5];
+            for (int k = 0; k < targets.length; k++) {
+                targets[k] = k % 2 == 0 ? RandomLexicalDatabase.mutate(symbolTable, query, random.nextInt(4), random)
+                        : RandomLexicalDatabase.randomString(symbolTable, 1 + random.nextInt(20), random);
+            }
+
+            for (boolean useVectorAPI : new boolean[] { false, true }) {
+                QueryProfile.USE_VECTOR_API = useVectorAPI;
+                profile.setQuery(query, gloCorrModel, profileLocCorrModel, selfSimModel1, (double[]) null);
+                for (PhoneticString target : targets) {
+                    double expected = NeedlemanWunschAlgorithm.distanceOnly(query, target, gloCorrModel, locCorrModel,
+                            selfSimModel1, selfSimModel2);
+                    errors += check("unweighted", useVectorAPI, query, target, expected,
+                            profile.distance(target, selfSimModel2, null));
+                }
+                profile.setQuery(query, gloCorrModel, profileLocCorrModel, selfSimModel1,
+                        infoModel1.informationContents(query.segments));
+                for (PhoneticString target : targets) {
+                    double expected = InformationWeightedSequenceAlignment.distanceOnly(query, target, gloCorrModel,
+                            locCorrModel, selfSimModel1, selfSimModel2, infoModel1, infoModel2);
+                    errors += check("weighted", useVectorAPI, query, target, expected,
+                            profile.distance(target, selfSimModel2, infoModel2.informationContents(target.segments)));
+                }
+            }
+        }
+
+        // inferred local models, merged as in the clustering drivers, with precomputed self-similarities
+        LexicalDatabase database = RandomLexicalDatabase.create(symbolTable, 3, 30, random);
+        InformationModel[] infoModels = InformationModelInference.inferInformationModels(database, symbolTable);
+        CorrespondenceModelInference.NUM_RANDOM_PAIRS_LOCAL = 2000;
+        int[] relevantLangIDs = { 0, 1, 2 };
+        CorrespondenceModel gloCorrModel = CorrespondenceModelInference.inferGlobalCorrespondenceModel(database,
+                symbolTable, infoModels);
+        CorrespondenceModel[][] localCorrModels = CorrespondenceModelInference.inferLocalCorrespondenceModels(database,
+                symbolTable, relevantLangIDs, gloCorrModel, infoModels);
+        CorrespondenceModel[][] mergedCorrModels = MergedCorrespondenceModel.compile(database, relevantLangIDs,
+                localCorrModels, gloCorrModel);
+        database.cacheInformationContents(infoModels);
+        SelfSimilarityTable selfSimilarities = new SelfSimilarityTable(database, gloCorrModel,
+                SelfSimilarityTable.selfSimModels(mergedCorrModels), infoModels);
+        for (boolean useVectorAPI : new boolean[] { false, true }) {
+            QueryProfile.USE_VECTOR_API = useVectorAPI;
+            for (int lang1ID : relevantLangIDs) {
+                for (int lang2ID : relevantLangIDs) {
+                    for (int formID1 : database.getFormIDsForLanguage(lang1ID)) {
+                        PhoneticString query = database.getForm(formID1);
+                        profile.setQuery(query, gloCorrModel, mergedCorrModels[lang1ID][lang2ID],
+                                selfSimilarities.getSelfSimilarity(formID1), database.getInformationContents(formID1));
+                        for (int formID2 : database.getFormIDsForLanguage(lang2ID)) {
+                            PhoneticString target = database.getForm(formID2);
+                            double expected = InformationWeightedSequenceAlignment.distanceOnly(query, target,
+                                    gloCorrModel, localCorrModels[lang1ID][lang2ID], localCorrModels[lang1ID][lang1ID],
+                                    localCorrModels[lang2ID][lang2ID], infoModels[lang1ID], infoModels[lang2ID]);
+                            errors += check("merged", useVectorAPI, query, target, expected, profile.distance(target,
+                                    selfSimilarities.getSelfSimilarity(formID2), database.getInformationContents(formID2)));
+                        }
+                    }
+                }
+            }
+        }
+        QueryProfile.USE_VECTOR_API = true;
+
+        if (errors > 0) {
+            throw new AssertionError(errors + " failed checks of QueryProfile");
+        }
+        System.err.println("QueryProfile agrees with the pairwise alignment algorithms"
+                + (QueryProfile.vectorKernelAvailable() ? ", with and without the Vector API." : " (scalar loop only)."));
+    }
+
+    private static int check(String description, boolean useVectorAPI, PhoneticString query, PhoneticString target,
+            double expected, double actual) {
+        if (Double.compare(expected, actual) == 0)
+            return 0;
+        System.err.println(description + " distance of " + query + " and " + target
+                + (useVectorAPI ? " with" : " without") + " Vector API: expected " + expected + ", got " + actual);
+        return 1;
+    }
+
+    private static CorrespondenceModel randomModel(PhoneticSymbolTable symbolTable, double density, boolean dense,
+            Random random) {
+        CorrespondenceModel model = dense ? new DenseCorrespondenceModel(symbolTable)
+                : new CorrespondenceModel(symbolTable);
+        for (int i = 0; i < symbolTable.getSize(); i++) {
+            for (int j = 0; j < symbolTable.getSize(); j++) {
+                if (random.nextDouble() < density)
+                    model.setScore(i, j, Math.round(random.nextGaussian() * 4) / 2.0 + (i == j ? 3 : 0));
+            }
+        }
+        return model;
+    }
+
+    private static InformationModel randomInfoModel(PhoneticSymbolTable symbolTable, Random random) {
+        InformationModel infoModel = new InformationModel(symbolTable);
+        for (int k = 0; k < 300; k++) {
+            int[] segments = RandomLexicalDatabase.randomString(symbolTable, 3 + random.nextInt(5), random).segments;
+            for (int i = 0; i + 2 < segments.length; i++) {
+                infoModel.addTrigramObservation(segments[i], segments[i + 1], segments[i + 2]);
+            }
+        }
+        return infoModel;
+    }
+
+    private static int[] randomSymbols(PhoneticSymbolTable symbolTable, Random random) {
+        return random.ints(symbolTable.getSize(), 0, symbolTable.getSize()).distinct().toArray();
+    }
+}
@@ -0,0 +1,115 @@
+package de.jdellert.iwsa.align;
+
+import java.util.Random;
+
+import de.jdellert.iwsa.bootstrap.LexicalDatabaseConceptBootstrapSample;
+import de.jdellert.iwsa.corrmodel.CorrespondenceModel;
+import de.jdellert.iwsa.corrmodel.CorrespondenceModelInference;
+import de.jdellert.iwsa.corrmodel.MergedCorrespondenceModel;
+import de.jdellert.iwsa.data.LexicalDatabase;
+import de.jdellert.iwsa.data.RandomLexicalDatabase;
+import de.jdellert.iwsa.infomodel.InformationModel;
+import de.jdellert.iwsa.infomodel.InformationModelInference;
+import de.jdellert.iwsa.sequence.PhoneticString;
+import de.jdellert.iwsa.sequence.PhoneticSymbolTable;
+
+public class SelfSimilarityTableTest {
+    public static void main(String[] args) {
+        PhoneticSymbolTable symbolTable = RandomLexicalDatabase.symbolTable(10);
+        LexicalDatabase database = RandomLexicalDatabase.create(symbolTable, 4, 30, new Random(42));
+        InformationModel[] infoModels = InformationModelInference.inferInformationModels(database, symbolTable);
+        CorrespondenceModelInference.NUM_RANDOM_PAIRS_LOCAL = 2000;
+        // languages 0 to 2 are relevant, language 3 has no local models
+        int[] relevantLangIDs = { 0, 1, 2 };
+        CorrespondenceModel gloCorrModel = CorrespondenceModelInference.inferGlobalCorrespondenceModel(database,
+                symbolTable, infoModels);
+        CorrespondenceModel[][] localCorrModels = MergedCorrespondenceModel.compile(database, relevantLangIDs,
+                CorrespondenceModelInference.inferLocalCorrespondenceModels(database, symbolTable, relevantLangIDs,
+                        gloCorrModel, infoModels),
+                gloCorrModel);
+        CorrespondenceModel[] selfSimModels = SelfSimilarityTable.selfSimModels(localCorrModels);
+
+        int errors = 0;
+        // a sample of an identical database, whose information contents have not been cached yet
+        LexicalDatabase sample = new LexicalDatabaseConceptBootstrapSample(
+                RandomLexicalDatabase.create(symbolTable, 4, 30, new Random(42)));
+        for (LexicalDatabase db : new LexicalDatabase[] { database, sample }) {
+            String name = db == database ? "database" : "bootstrap sample";
+            // weighted tables with and without cached information contents
+            SelfSimilarityTable weighted = new SelfSimilarityTable(db, gloCorrModel, selfSimModels, infoModels);
+            errors += check(name + ", weighted", db, weighted, gloCorrModel, selfSimModels, infoModels);
+            db.cacheInformationContents(infoModels);
+            weighted = new SelfSimilarityTable(db, gloCorrModel, selfSimModels, infoModels);
+            errors += check(name + ", weighted with cached contents", db, weighted, gloCorrModel, selfSimModels,
+                    infoModels);
+            SelfSimilarityTable unweighted = new SelfSimilarityTable(db, selfSimModels);
+            errors += check(name + ", unweighted", db, unweighted, gloCorrModel, selfSimModels, null);
+
+            SelfSimilarityTable global = SelfSimilarityTable.forModel(db, gloCorrModel);
+            for (int formID = 0; formID < db.getNumForms(); formID++) {
+                if (global.getSelfSimilarity(formID) != NeedlemanWunschAlgorithm.selfSimilarity(db.getForm(formID),
+                        gloCorrModel)) {
+                    System.err.println(name + ", global model: self-similarity of form #" + formID + " differs");
+                    errors++;
+                }
+            }
+
+            // tables are reused for the same models only
+            if (weighted.forModels(gloCorrModel, selfSimModels, infoModels) != weighted
+                    || weighted.forModels(gloCorrModel, selfSimModels, null) == weighted
+                    || unweighted.forModels(null, selfSimModels, null) != unweighted
+                    || unweighted.forModels(gloCorrModel, selfSimModels.clone(), null) != unweighted
+                    || global.forModels(gloCorrModel, selfSimModels, null) == global) {
+                System.err.println(name + ": forModels() does not match the models of the tables");
+                errors++;
+            }
+        }
+
+        if (errors > 0) {
+            throw new AssertionError(errors + " failed checks of SelfSimilarityTable");
+        }
+        System.err.println("SelfSimilarityTable agrees with the self-similarities computed per form.");
+    }
+
+    // compares the table with the self-similarities as the aligners computed them for every pair before,
+    // NaN for languages without a model
+    private static int check(String description, LexicalDatabase database, SelfSimilarityTable table,
+            CorrespondenceModel gloCorrModel, CorrespondenceModel[] selfSimModels, InformationModel[] infoModels) {
+        int errors = 0;
+        for (int formID = 0; formID < database.getNumForms(); formID++) {
+            int langID = database.getIDForLanguageCode(database.getLanguageCodeForForm(formID));
+            PhoneticString form = database.getForm(formID);
+            double expected = Double.NaN;
+            if (selfSimModels[langID] != null) {
+                expected = 0.0;
+                for (int i = 0; i < form.getLength(); i++) {
+                    int segment = form.segments[i];
+                    if (infoModels == null) {
+                        expected += selfSimModels[langID].getScore(segment, segment);
+                    } else {
+                        double infoContent = infoModels[langID].informationContent(form.segments, i);
+                        expected += referenceScore(gloCorrModel, selfSimModels[langID], segment)
+                                * Math.sqrt((infoContent * infoContent + infoContent * infoContent) / 2);
+                    }
+                }
+            }
+            if (Double.compare(expected, table.getSelfSimilarity(formID)) != 0) {
+                if (errors < 5) {
+                    System.err.println(description + ": self-similarity of form #" + formID + " is "
+                            + table.getSelfSimilarity(formID) + " instead of " + expected);
+                }
+                errors++;
+            }
+        }
+        return errors;
+    }
+
+    private static double referenceScore(CorrespondenceModel gloCorrModel, CorrespondenceModel selfSimModel,
+            int segment) {
+        Double score = selfSimModel.getScoreOrNull(segment, segment);
+        if (score == null) {
+            score = gloCorrModel.getScoreOrNull(segment, segment);
+        }
+        return score == null ? 0.0 : score;
+    }
+}
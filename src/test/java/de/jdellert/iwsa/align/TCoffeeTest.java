@@ -0,0 +1,301 @@
+package de.jdellert.iwsa.align;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import de.jdellert.iwsa.corrmodel.CorrespondenceModel;
+import de.jdellert.iwsa.corrmodel.DenseCorrespondenceModel;
+import de.jdellert.iwsa.data.RandomLexicalDatabase;
+import de.jdellert.iwsa.sequence.PhoneticString;
+import de.jdellert.iwsa.sequence.PhoneticSymbolTable;
+
+public class TCoffeeTest {
+    public static void main(String[] args) {
+        Random random = new Random(42);
+        int errors = 0;
+
+        // neighbor joining on random similarity matrices, with ties, asymmetric ones, and large ones for the parallel scan
+        for (int t = 0; t < 400; t++) {
+            int n = t < 390 ? 1 + random.nextInt(20) : 150 + random.nextInt(150);
+            double[][] scores = new double[n][n];
+            for (int i = 0; i < n; i++) {
+                for (int j = 0; j < n; j++) {
+                    scores[i][j] = t % 3 == 0 ? random.nextInt(4) / 4.0 : random.nextDouble();
+                }
+            }
+            if (t % 2 == 0) {
+                for (int i = 0; i < n; i++) {
+                    for (int j = 0; j < i; j++) {
+                        scores[i][j] = scores[j][i];
+                    }
+                }
+            }
+            List<String> leaves = new ArrayList<>();
+            for (int i = 0; i < n; i++) {
+                leaves.add("L" + random.nextInt(1000) + "_" + i);
+            }
+            double[] dist = new double[n * n];
+            for (int i = 0; i < n; i++) {
+                for (int j = 0; j < n; j++) {
+                    dist[i * n + j] = 1.0 - scores[i][j];
+                }
+            }
+            errors += check("neighbor joining of " + n + " leaves", referenceGuideTree(leaves, scores),
+                    NeighborJoining.guideTree(leaves, dist));
+        }
+
+        // library and guide tree of random word sets
+        PhoneticSymbolTable symbolTable = RandomLexicalDatabase.symbolTable(8);
+        for (int t = 0; t < 200; t++) {
+            int n = 2 + random.nextInt(12);
+            CorrespondenceModel corrModel = t % 2 == 0 ? new DenseCorrespondenceModel(symbolTable)
+                    : new CorrespondenceModel(symbolTable);
+            for (int i = 0; i < symbolTable.getSize(); i++) {
+                for (int j = 0; j < symbolTable.getSize(); j++) {
+                    corrModel.setScore(i, j, Math.round(random.nextGaussian() * 4) / 2.0 + (i == j ? 3 : 0));
+                }
+            }
+            List<PhoneticString> sequences = new ArrayList<>();
+            List<String> languages = new ArrayList<>();
+            PhoneticString word = RandomLexicalDatabase.randomString(symbolTable, 1 + random.nextInt(8), random);
+            for (int i = 0; i < n; i++) {
+                sequences.add(random.nextBoolean() ? RandomLexicalDatabase.mutate(symbolTable, word, random.nextInt(4), random)
+                        : RandomLexicalDatabase.randomString(symbolTable, 1 + random.nextInt(8), random));
+                languages.add("L" + i);
+            }
+
+            ReferenceLibrary expected = new ReferenceLibrary(sequences, corrModel);
+            TCoffee tCoffee = new TCoffee(sequences, languages, corrModel, null);
+            int weightErrors = 0;
+            for (int w1 = 0; w1 < n; w1++) {
+                for (int w2 = 0; w2 < n; w2++) {
+                    if (Double.compare(expected.scores[w1][w2], tCoffee.getLibraryScore(w1, w2)) != 0) {
+                        weightErrors++;
+                    }
+                    for (int k = 0; k < sequences.get(w1).getLength(); k++) {
+                        for (int l = 0; l < sequences.get(w2).getLength(); l++) {
+                            if (Double.compare(expected.matrices[w1][w2][k][l],
+                                    tCoffee.getLibraryWeight(w1, w2, k, l)) != 0) {
+                                weightErrors++;
+                            }
+                        }
+                    }
+                }
+            }
+            if (weightErrors > 0) {
+                System.err.println(weightErrors + " library scores and weights differ for " + sequences);
+                errors++;
+            }
+            errors += check("guide tree of " + sequences, referenceGuideTree(languages, expected.scores),
+                    tCoffee.getGuideTree());
+        }
+
+        if (errors > 0) {
+            throw new AssertionError(errors + " failed checks of TCoffee");
+        }
+        System.err.println("TCoffee library and guide trees agree with the reference implementation.");
+    }
+
+    private static int check(String description, GuideTree expected, GuideTree actual) {
+        if (expected.paths.equals(actual.paths) && expected.parents.equals(actual.parents)
+                && expected.children.equals(actual.children))
+            return 0;
+        System.err.println(description + ": expected " + expected.paths + ", got " + actual.paths);
+        return 1;
+    }
+
+    /**
+     * The original neighbor joining of TCoffee, which allocates a new distance
+     * matrix and reorders the node list for every join. Its update of the
+     * distances to the joined node reads the rows of the joined nodes at the new
+     * indices of the other nodes, which makes the distances asymmetric.
+     */
+    private static GuideTree referenceGuideTree(List<String> leaves, double[][] scores) {
+        List<String> languages = new ArrayList<>(leaves);
+        int n = languages.size();
+        Map<String, Set<String>> ancestorOf = new HashMap<>();
+        Map<String, LinkedList<String>> paths = new HashMap<>();
+        for (int i = 0; i < n; i++)
+            paths.put(languages.get(i), new LinkedList<>());
+        int node = 0;
+
+        double[][] dist = new double[n][n];
+        for (int i = 0; i < n; i++)
+            for (int j = 0; j < n; j++)
+                dist[i][j] = 1.0 - scores[i][j];
+
+        for (int x = 0; x < n - 2; x++) {
+            int m = n - x;
+
+            double[] r = new double[m];
+            for (int i = 0; i < m; i++) {
+                for (int j = 0; j < m; j++)
+                    r[i] += dist[i][j];
+                r[i] /= m - 2;
+            }
+
+            int minI = -1;
+            int minJ = -1;
+            double minVal = Double.MAX_VALUE;
+            for (int i = 0; i < m; i++) {
+                for (int j = 0; j < m; j++) {
+                    if (i != j) {
+                        double m_ij = dist[i][j] - (r[i] + r[j]);
+                        if (m_ij < minVal) {
+                            minVal = m_ij;
+                            minI = i;
+                            minJ = j;
+                        }
+                    }
+                }
+            }
+
+            String newNode = "proto" + node;
+            String child1 = languages.remove(Math.max(minI, minJ));
+            String child2 = languages.remove(Math.min(minI, minJ));
+            languages.add(newNode);
+            Set<String> descendants = new HashSet<>();
+            if (ancestorOf.containsKey(child1))
+                descendants.addAll(ancestorOf.remove(child1));
+            else
+                descendants.add(child1);
+            if (ancestorOf.containsKey(child2))
+                descendants.addAll(ancestorOf.remove(child2));
+            else
+                descendants.add(child2);
+            ancestorOf.put(newNode, descendants);
+            for (String descendant : descendants) {
+                paths.get(descendant).push(newNode);
+            }
+            node++;
+
+            double[][] newDist = new double[m - 1][m - 1];
+            int skipI = 0;
+            for (int i = 0; i < m; i++) {
+                if (i == minI || i == minJ)
+                    skipI++;
+                else {
+                    int skipJ = 0;
+                    for (int j = 0; j < m; j++) {
+                        if (j == minI || j == minJ)
+                            skipJ++;
+                        else
+                            newDist[i - skipI][j - skipJ] = dist[i][j];
+                    }
+                    newDist[m - 3][i - skipI] = (dist[minI][i - skipI] + dist[minJ][i - skipI] - dist[minI][minJ]) / 2;
+                    newDist[i - skipI][m - 3] = newDist[m - 3][i - skipI];
+                }
+            }
+            dist = newDist;
+        }
+
+        GuideTree guideTree = new GuideTree();
+        for (String leaf : paths.keySet())
+            guideTree.enlargeTreeByPath(paths.get(leaf), leaf);
+        return guideTree;
+    }
+
+    /**
+     * The original library of TCoffee, with a dense 0/1 matrix for each pairwise
+     * alignment, extended by multiplying the matrices through every intermediate
+     * word.
+     */
+    private static class ReferenceLibrary {
+        // [word1][word2][pos1][pos2]
+        double[][][][] matrices;
+        // [word1][word2]
+        double[][] scores;
+
+        ReferenceLibrary(List<PhoneticString> sequences, CorrespondenceModel corrModel) {
+            int n = sequences.size();
+            matrices = new double[n][n][][];
+            scores = new double[n][n];
+            for (int i = 0; i < n; i++) {
+                for (int j = 0; j < n; j++) {
+                    if (j < i) {
+                        matrices[i][j] = transpose(matrices[j][i]);
+                        scores[i][j] = scores[j][i];
+                        continue;
+                    }
+                    PhoneticString seq1 = sequences.get(i);
+                    PhoneticString seq2 = sequences.get(j);
+                    PhoneticStringAlignment align = NeedlemanWunschAlgorithm.constructAlignment(seq1, seq2, corrModel,
+                            corrModel, corrModel, corrModel);
+                    double[][] matrix = new double[seq1.getLength()][seq2.getLength()];
+                    double hammingDist = 0;
+                    int comparisons = 0;
+                    int k = 0;
+                    int l = 0;
+                    for (int a = 0; a < align.getLength(); a++) {
+                        int inSym = align.getSymbol1IDAtPos(a);
+                        int outSym = align.getSymbol2IDAtPos(a);
+                        if (inSym == PhoneticSymbolTable.EMPTY_ID)
+                            l++;
+                        else if (outSym == PhoneticSymbolTable.EMPTY_ID)
+                            k++;
+                        else {
+                            matrix[k][l] = 1;
+                            comparisons++;
+                            if (inSym != outSym)
+                                hammingDist++;
+                            k++;
+                            l++;
+                        }
+                    }
+                    matrices[i][j] = matrix;
+                    scores[i][j] = 1.0;
+                    if (comparisons > 0)
+                        scores[i][j] -= hammingDist / comparisons;
+                }
+            }
+
+            double[][][][] ext = new double[n][n][][];
+            for (int w1 = 0; w1 < n; w1++) {
+                for (int w2 = 0; w2 < n; w2++) {
+                    double[][] dm = new double[sequences.get(w1).getLength()][sequences.get(w2).getLength()];
+                    for (int w3 = 0; w3 < n; w3++) {
+                        double[][] product = dotProduct(matrices[w1][w3], matrices[w3][w2]);
+                        double a = scores[w1][w3] + scores[w3][w2];
+                        for (int k = 0; k < dm.length; k++) {
+                            for (int l = 0; l < dm[k].length; l++) {
+                                dm[k][l] = dm[k][l] + a * product[k][l];
+                            }
+                        }
+                    }
+                    ext[w1][w2] = dm;
+                }
+            }
+            matrices = ext;
+        }
+
+        private static double[][] transpose(double[][] matrix) {
+            int n = matrix.length == 0 ? 0 : matrix[0].length;
+            double[][] transposed = new double[n][matrix.length];
+            for (int i = 0; i < matrix.length; i++) {
+                for (int j = 0; j < n; j++) {
+                    transposed[j][i] = matrix[i][j];
+                }
+            }
+            return transposed;
+        }
+
+        private static double[][] dotProduct(double[][] m1, double[][] m2) {
+            int n = m2.length == 0 ? 0 : m2[0].length;
+            double[][] product = new double[m1.length][n];
+            for (int i = 0; i < m1.length; i++) {
+                for (int j = 0; j < m2.length; j++) {
+                    for (int k = 0; k < n; k++) {
+                        product[i][k] += m1[i][j] * m2[j][k];
+                    }
+                }
+            }
+            return product;
+        }
+    }
+}
@@ -0,0 +1,69 @@
+package de.jdellert.iwsa.bootstrap;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import de.jdellert.iwsa.corrmodel.CorrespondenceModel;
+import de.jdellert.iwsa.corrmodel.CorrespondenceModelInference;
+import de.jdellert.iwsa.data.LexicalDatabase;
+import de.jdellert.iwsa.data.RandomLexicalDatabase;
+import de.jdellert.iwsa.infomodel.InformationModel;
+import de.jdellert.iwsa.infomodel.InformationModelInference;
+import de.jdellert.iwsa.sequence.PhoneticSymbolTable;
+
+public class LexicalDatabaseConceptBootstrapSampleTest {
+    public static void main(String[] args) throws IOException {
+        PhoneticSymbolTable symbolTable = RandomLexicalDatabase.symbolTable(10);
+        LexicalDatabase database = RandomLexicalDatabase.create(symbolTable, 4, 30, new Random(42));
+        InformationModel[] infoModels = InformationModelInference.inferInformationModels(database, symbolTable);
+        CorrespondenceModelInference.NUM_RANDOM_PAIRS_LOCAL = 2000;
+        CorrespondenceModel globalCorrModel = CorrespondenceModelInference.inferGlobalCorrespondenceModel(database,
+                symbolTable, infoModels);
+        int errors = 0;
+
+        // the sample hands the information contents of the forms on to the original database
+        LexicalDatabase sample = new LexicalDatabaseConceptBootstrapSample(database);
+        if (sample.getInformationContents(0, infoModels[0]) == null) {
+            System.err.println("no information contents before caching");
+            errors++;
+        }
+        sample.cacheInformationContents(infoModels);
+        for (int formID = 0; formID < database.getNumForms(); formID++) {
+            InformationModel infoModel = infoModels[database.getIDForLanguageCode(database.getLanguageCodeForForm(formID))];
+            double[] expected = infoModel.informationContents(database.getForm(formID).segments);
+            if (!Arrays.equals(sample.getInformationContents(formID), expected)
+                    || !Arrays.equals(sample.getInformationContents(formID, infoModel), expected)) {
+                System.err.println("information contents of form #" + formID + " differ from the original database");
+                errors++;
+            }
+        }
+
+        // one bootstrap sample of CognateOverlapAvgFormDistBootstrap, with information weighting
+        int[] relevantLangIDs = { 0, 1, 2, 3 };
+        File matrixFile = File.createTempFile("iwsa-bootstrap", ".tsv");
+        matrixFile.deleteOnExit();
+        CognateOverlapAvgFormDistBootstrap.produceMatricesForSample(matrixFile.getPath(),
+                new LexicalDatabaseConceptBootstrapSample(database), relevantLangIDs, globalCorrModel, infoModels);
+        List<String> lines = Files.readAllLines(matrixFile.toPath());
+        if (lines.size() != relevantLangIDs.length * relevantLangIDs.length) {
+            System.err.println("expected a line for each language pair, got " + lines.size() + " lines");
+            errors++;
+        }
+        for (String line : lines) {
+            String[] fields = line.split("\t");
+            if (fields[0].equals(fields[1]) && !fields[2].equals("1.0000")) {
+                System.err.println("cognate overlap of a language with itself is not 1: " + line);
+                errors++;
+            }
+        }
+
+        if (errors > 0) {
+            throw new AssertionError(errors + " failed checks of LexicalDatabaseConceptBootstrapSample");
+        }
+        System.err.println("LexicalDatabaseConceptBootstrapSample passed all checks.");
+    }
+}
@@ -0,0 +1,123 @@
+package de.jdellert.iwsa.cluster;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+public class FlatClusteringTest {
+    public static void main(String[] args) {
+        int errors = 0;
+
+        // points on a line at 0, 1, 3, 7 and 8
+        double[] positions = { 0, 1, 3, 7, 8 };
+        double[][] distMtx = new double[positions.length][positions.length];
+        for (int i = 0; i < positions.length; i++) {
+            for (int j = 0; j < positions.length; j++) {
+                distMtx[i][j] = Math.abs(positions[i] - positions[j]);
+            }
+        }
+        errors += check("single linkage", FlatClustering.singleLinkageClustering(distMtx, 2.2),
+                partition(new int[] { 0, 1, 2 }, new int[] { 3, 4 }));
+        errors += check("complete linkage", FlatClustering.completeLinkageClustering(distMtx, 2.6),
+                partition(new int[] { 0, 1 }, new int[] { 2 }, new int[] { 3, 4 }));
+        errors += check("average linkage", FlatClustering.upgma(distMtx, 2.2),
+                partition(new int[] { 0, 1 }, new int[] { 2 }, new int[] { 3, 4 }));
+        errors += check("average linkage", FlatClustering.upgma(distMtx, 2.6),
+                partition(new int[] { 0, 1, 2 }, new int[] { 3, 4 }));
+        errors += check("empty matrix", FlatClustering.upgma(new double[0][0], 1.0), partition());
+        errors += check("single point", FlatClustering.upgma(new double[1][1], 1.0), partition(new int[] { 0 }));
+
+        // single linkage clusters are the connected components under the threshold
+        Random random = new Random(42);
+        for (int trial = 0; trial < 100; trial++) {
+            int n = random.nextInt(60);
+            double[][] randomMtx = new double[n][n];
+            for (int i = 0; i < n; i++) {
+                for (int j = i + 1; j < n; j++) {
+                    randomMtx[i][j] = randomMtx[j][i] = random.nextInt(20) / 20.0;
+                }
+            }
+            errors += check("single linkage on random matrix",
+                    FlatClustering.singleLinkageClustering(randomMtx, 0.1), components(randomMtx, 0.1));
+
+            // clustering the components separately gives the same clusters (without ties)
+            for (int i = 0; i < n; i++) {
+                for (int j = i + 1; j < n; j++) {
+                    randomMtx[i][j] = randomMtx[j][i] = random.nextDouble();
+                }
+            }
+            FlatClustering.PREPARTITION = false;
+            Set<Set<Integer>> withoutPrepartition = FlatClustering.upgma(randomMtx, 0.2);
+            FlatClustering.PREPARTITION = true;
+            errors += check("average linkage with prepartitioning", FlatClustering.upgma(randomMtx, 0.2),
+                    withoutPrepartition);
+        }
+        CondensedDistanceMatrix condensedMtx = CondensedDistanceMatrix.fromSquare(distMtx);
+        errors += check("threshold components", partition(FlatClustering.thresholdComponents(condensedMtx, 2.0)
+                .toArray(new int[0][])), partition(new int[] { 0, 1, 2 }, new int[] { 3, 4 }));
+        errors += check("average linkage on condensed matrix", FlatClustering.upgma(condensedMtx, 2.6),
+                partition(new int[] { 0, 1, 2 }, new int[] { 3, 4 }));
+        if (!Arrays.deepEquals(condensedMtx.toSquare(), distMtx) || condensedMtx.get(4, 1) != 7.0) {
+            System.err.println("condensed matrix does not match the square matrix");
+            errors++;
+        }
+        condensedMtx.set(3, 1, 0.5);
+        if (condensedMtx.get(1, 3) != 0.5 || condensedMtx.get(2, 2) != 0.0) {
+            System.err.println("condensed matrix is not symmetric with a zero diagonal");
+            errors++;
+        }
+
+        if (errors > 0) {
+            throw new AssertionError(errors + " failed checks of FlatClustering");
+        }
+        System.err.println("FlatClustering passed all checks.");
+    }
+
+    private static int check(String description, Set<Set<Integer>> result, Set<Set<Integer>> expected) {
+        if (result.equals(expected))
+            return 0;
+        System.err.println(description + ": expected " + expected + ", got " + result);
+        return 1;
+    }
+
+    private static Set<Set<Integer>> partition(int[]... clusters) {
+        Set<Set<Integer>> partition = new HashSet<>();
+        for (int[] cluster : clusters) {
+            Set<Integer> set = new HashSet<>();
+            for (int point : cluster) {
+                set.add(point);
+            }
+            partition.add(set);
+        }
+        return partition;
+    }
+
+    private static Set<Set<Integer>> components(double[][] distMtx, double threshold) {
+        int n = distMtx.length;
+        int[] component = new int[n];
+        Arrays.fill(component, -1);
+        Set<Set<Integer>> components = new HashSet<>();
+        for (int start = 0; start < n; start++) {
+            if (component[start] != -1)
+                continue;
+            Set<Integer> members = new HashSet<>();
+            int[] stack = new int[n];
+            int stackSize = 0;
+            stack[stackSize++] = start;
+            component[start] = start;
+            while (stackSize > 0) {
+                int point = stack[--stackSize];
+                members.add(point);
+                for (int other = 0; other < n; other++) {
+                    if (component[other] == -1 && distMtx[point][other] <= threshold) {
+                        component[other] = start;
+                        stack[stackSize++] = other;
+                    }
+                }
+            }
+            components.add(members);
+        }
+        return components;
+    }
+}
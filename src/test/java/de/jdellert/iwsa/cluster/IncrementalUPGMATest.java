@@ -0,0 +1,94 @@
+package de.jdellert.iwsa.cluster;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.Set;
+
+public class IncrementalUPGMATest {
+    public static void main(String[] args) throws IOException, ClassNotFoundException {
+        int errors = 0;
+        Random random = new Random(7);
+        for (int trial = 0; trial < 200; trial++) {
+            int n = 1 + random.nextInt(50);
+            double threshold = 0.2 + 0.3 * random.nextDouble();
+            double[][] distMtx = new double[n][n];
+            for (int i = 0; i < n; i++) {
+                for (int j = i + 1; j < n; j++) {
+                    distMtx[i][j] = distMtx[j][i] = random.nextDouble();
+                }
+            }
+
+            // all points at once: the same clusters as UPGMA on the whole matrix
+            IncrementalUPGMA clustering = new IncrementalUPGMA(threshold);
+            for (int i = 0; i < n; i++) {
+                clustering.addPoint(Arrays.copyOf(distMtx[i], i));
+            }
+            Set<Set<Integer>> clusters = clustering.fuse();
+            if (!clusters.equals(FlatClustering.upgma(distMtx, threshold))) {
+                System.err.println("clusters differ from UPGMA: " + clusters);
+                errors++;
+            }
+
+            // in batches, with a round trip through serialization
+            clustering = new IncrementalUPGMA(threshold);
+            for (int i = 0; i < n; i++) {
+                clustering.addPoint(Arrays.copyOf(distMtx[i], i));
+                if (random.nextInt(8) == 0) {
+                    clustering.fuse();
+                    clustering = roundTrip(clustering);
+                }
+            }
+            clusters = clustering.fuse();
+            errors += checkPartition(clusters, distMtx, threshold);
+        }
+
+        if (errors > 0) {
+            throw new AssertionError(errors + " failed checks of IncrementalUPGMA");
+        }
+        System.err.println("IncrementalUPGMA passed all checks.");
+    }
+
+    // every point in exactly one cluster, and no two clusters within the threshold under average linkage
+    private static int checkPartition(Set<Set<Integer>> clusters, double[][] distMtx, double threshold) {
+        int numPoints = 0;
+        for (Set<Integer> cluster : clusters) {
+            numPoints += cluster.size();
+        }
+        if (numPoints != distMtx.length) {
+            System.err.println("clusters do not partition the points: " + clusters);
+            return 1;
+        }
+        for (Set<Integer> cluster1 : clusters) {
+            for (Set<Integer> cluster2 : clusters) {
+                if (cluster1 == cluster2)
+                    continue;
+                double sum = 0.0;
+                for (int i : cluster1) {
+                    for (int j : cluster2) {
+                        sum += distMtx[i][j];
+                    }
+                }
+                if (sum / (cluster1.size() * cluster2.size()) <= threshold) {
+                    System.err.println("clusters within the threshold left apart: " + cluster1 + " " + cluster2);
+                    return 1;
+                }
+            }
+        }
+        return 0;
+    }
+
+    private static IncrementalUPGMA roundTrip(IncrementalUPGMA clustering) throws IOException, ClassNotFoundException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(clustering);
+        }
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+            return (IncrementalUPGMA) in.readObject();
+        }
+    }
+}
@@ -0,0 +1,91 @@
+package de.jdellert.iwsa.corrmodel;
+
+import java.util.Random;
+
+import de.jdellert.iwsa.data.LexicalDatabase;
+import de.jdellert.iwsa.data.RandomLexicalDatabase;
+import de.jdellert.iwsa.infomodel.InformationModel;
+import de.jdellert.iwsa.infomodel.InformationModelInference;
+import de.jdellert.iwsa.sequence.PhoneticSymbolTable;
+
+public class CorrespondenceModelInferenceTest {
+    public static void main(String[] args) {
+        PhoneticSymbolTable symbolTable = RandomLexicalDatabase.symbolTable(10);
+        LexicalDatabase database = RandomLexicalDatabase.create(symbolTable, 4, 30, new Random(42));
+        InformationModel[] infoModels = InformationModelInference.inferInformationModels(database, symbolTable);
+        CorrespondenceModelInference.NUM_RANDOM_PAIRS_LOCAL = 2000;
+        CorrespondenceModel globalCorr = CorrespondenceModelInference.inferGlobalCorrespondenceModel(database,
+                symbolTable, infoModels);
+        int[] allLangIDs = { 0, 1, 2, 3 };
+        CorrespondenceModel[][] expected = CorrespondenceModelInference.inferLocalCorrespondenceModels(database,
+                symbolTable, allLangIDs, globalCorr, infoModels);
+        int errors = 0;
+
+        // the models of the first languages, as stored before language 3 was added (without a row for it)
+        // and with a language that was not relevant (stored without scores)
+        int[] previousLangIDs = { 0, 1, 2 };
+        CorrespondenceModel[][] previous = CorrespondenceModelInference.inferLocalCorrespondenceModels(database,
+                symbolTable, previousLangIDs, globalCorr, infoModels);
+        CorrespondenceModel[][] stored = new CorrespondenceModel[3][3];
+        for (int lang1ID : previousLangIDs) {
+            for (int lang2ID : previousLangIDs) {
+                stored[lang1ID][lang2ID] = lang1ID == 2 || lang2ID == 2 ? new CorrespondenceModel(symbolTable)
+                        : previous[lang1ID][lang2ID];
+            }
+        }
+        if (CorrespondenceModelInference.countMissingLocalCorrespondenceModels(stored, allLangIDs) != 16 - 4) {
+            System.err.println("the models with language 2 or 3 are not recognized as missing");
+            errors++;
+        }
+
+        CorrespondenceModel[][] completed = CorrespondenceModelInference.inferMissingLocalCorrespondenceModels(
+                database, symbolTable, allLangIDs, globalCorr, infoModels, stored);
+        if (CorrespondenceModelInference.countMissingLocalCorrespondenceModels(completed, allLangIDs) != 0) {
+            System.err.println("models are still missing after the completion");
+            errors++;
+        }
+        for (int lang1ID : allLangIDs) {
+            for (int lang2ID : allLangIDs) {
+                if (lang1ID < 2 && lang2ID < 2 && completed[lang1ID][lang2ID] != stored[lang1ID][lang2ID]) {
+                    System.err.println("the stored model [" + lang1ID + "][" + lang2ID + "] has been replaced");
+                    errors++;
+                }
+                // the completed models are those that would have been inferred for all languages at once
+                if (completed[lang1ID][lang2ID].fingerprint() != expected[lang1ID][lang2ID].fingerprint()) {
+                    System.err.println("the completed model [" + lang1ID + "][" + lang2ID
+                            + "] differs from the one inferred with all languages");
+                    errors++;
+                }
+            }
+        }
+        if (stored.length != 3 || stored[0][1] != previous[0][1]) {
+            System.err.println("the stored models have been modified");
+            errors++;
+        }
+
+        // fingerprints change with the models
+        CorrespondenceModel changed = new CorrespondenceModel(symbolTable);
+        changed.scores.putAll(expected[0][1].getScores());
+        long fingerprint = changed.fingerprint();
+        if (new DenseCorrespondenceModel(changed).fingerprint() != fingerprint) {
+            System.err.println("the fingerprint of the dense model differs");
+            errors++;
+        }
+        changed.setScore(2, 3, changed.getScore(2, 3) + 0.5);
+        if (changed.fingerprint() == fingerprint) {
+            System.err.println("the fingerprint does not change with the scores");
+            errors++;
+        }
+        fingerprint = infoModels[0].fingerprint();
+        infoModels[0].addTrigramObservation(2, 3, 4);
+        if (infoModels[0].fingerprint() == fingerprint) {
+            System.err.println("the fingerprint does not change with the observations");
+            errors++;
+        }
+
+        if (errors > 0) {
+            throw new AssertionError(errors + " failed checks of the local model inference");
+        }
+        System.err.println("Missing local correspondence models are inferred as with all languages.");
+    }
+}
@@ -0,0 +1,57 @@
+package de.jdellert.iwsa.corrmodel;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import de.jdellert.iwsa.sequence.PhoneticSymbolTable;
+
+public class DenseCorrespondenceModelTest {
+    public static void main(String[] args) {
+        PhoneticSymbolTable symbolTable = new PhoneticSymbolTable(Arrays.asList("a", "e", "i", "p", "b", "t", "d", "k"));
+        int size = symbolTable.getSize();
+        Random random = new Random(42);
+
+        CorrespondenceModel sparseModel = new CorrespondenceModel(symbolTable);
+        CorrespondenceModel globalModel = new CorrespondenceModel(symbolTable);
+        for (int i = 0; i < size; i++) {
+            for (int j = 0; j < size; j++) {
+                globalModel.setScore(i, j, random.nextGaussian());
+                if (random.nextDouble() < 0.3) sparseModel.setScore(i, j, random.nextGaussian());
+            }
+        }
+        CorrespondenceModel denseModel = new DenseCorrespondenceModel(sparseModel);
+
+        int errors = 0;
+        for (int i = 0; i < size; i++) {
+            for (int j = 0; j < size; j++) {
+                Double sparseScore = sparseModel.getScoreOrNull(i, j);
+                Double denseScore = denseModel.getScoreOrNull(i, j);
+                if (sparseScore == null ? denseScore != null : !sparseScore.equals(denseScore)) {
+                    System.err.println("getScoreOrNull(" + i + "," + j + "): " + sparseScore + " != " + denseScore);
+                    errors++;
+                }
+                if (sparseModel.getScore(i, j) != denseModel.getScore(i, j)) {
+                    System.err.println("getScore(" + i + "," + j + "): " + sparseModel.getScore(i, j) + " != " + denseModel.getScore(i, j));
+                    errors++;
+                }
+                if (sparseModel.getScoreOrFallback(i, j, globalModel) != denseModel.getScoreOrFallback(i, j, globalModel)) {
+                    System.err.println("getScoreOrFallback(" + i + "," + j + ") differs");
+                    errors++;
+                }
+            }
+        }
+        // undefined symbols (ID -1) never have a score
+        if (denseModel.getScoreOrNull(-1, 2) != null || denseModel.getScoreOrNull(2, -1) != null) {
+            System.err.println("undefined symbol received a score");
+            errors++;
+        }
+        if (!sparseModel.getScores().equals(denseModel.getScores())) {
+            System.err.println("score maps for storage differ");
+            errors++;
+        }
+        if (errors > 0) {
+            throw new AssertionError(errors + " failed checks of DenseCorrespondenceModel");
+        }
+        System.err.println("Dense and map-based models agree.");
+    }
+}
@@ -0,0 +1,62 @@
+package de.jdellert.iwsa.corrmodel;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import de.jdellert.iwsa.sequence.PhoneticSymbolTable;
+
+public class MergedCorrespondenceModelTest {
+    public static void main(String[] args) {
+        PhoneticSymbolTable symbolTable = new PhoneticSymbolTable(Arrays.asList("a", "e", "i", "p", "b", "t", "d", "k"));
+        int size = symbolTable.getSize();
+        Random random = new Random(42);
+
+        CorrespondenceModel localModel = new CorrespondenceModel(symbolTable);
+        CorrespondenceModel globalModel = new DenseCorrespondenceModel(symbolTable);
+        CorrespondenceModel otherGlobalModel = new CorrespondenceModel(symbolTable);
+        for (int i = 0; i < size; i++) {
+            for (int j = 0; j < size; j++) {
+                globalModel.setScore(i, j, random.nextGaussian());
+                otherGlobalModel.setScore(i, j, random.nextGaussian());
+                if (random.nextDouble() < 0.3) localModel.setScore(i, j, random.nextGaussian());
+            }
+        }
+        // the matrix only covers some of the symbols, the others are looked up in the local model
+        int[] symbols1 = { symbolTable.toInt("a"), symbolTable.toInt("p"), symbolTable.toInt("t") };
+        int[] symbols2 = { symbolTable.toInt("e"), symbolTable.toInt("p"), symbolTable.toInt("k"), symbolTable.toInt("p") };
+        CorrespondenceModel mergedModel = new MergedCorrespondenceModel(localModel, globalModel, symbols1, symbols2);
+
+        int errors = 0;
+        for (int i = -1; i < size; i++) {
+            for (int j = -1; j < size; j++) {
+                if (localModel.getScoreOrFallback(i, j, globalModel) != mergedModel.getScoreOrFallback(i, j, globalModel)) {
+                    System.err.println("getScoreOrFallback(" + i + "," + j + ") differs");
+                    errors++;
+                }
+                if (localModel.getScoreOrFallback(i, j, otherGlobalModel) != mergedModel.getScoreOrFallback(i, j, otherGlobalModel)) {
+                    System.err.println("getScoreOrFallback(" + i + "," + j + ") with another fallback model differs");
+                    errors++;
+                }
+                if (localModel.getScore(i, j) != mergedModel.getScore(i, j)) {
+                    System.err.println("getScore(" + i + "," + j + "): " + localModel.getScore(i, j) + " != " + mergedModel.getScore(i, j));
+                    errors++;
+                }
+            }
+        }
+        try {
+            mergedModel.setScore(2, 2, 1.0);
+            System.err.println("merged model accepted a new score");
+            errors++;
+        } catch (UnsupportedOperationException e) {
+            // expected
+        }
+        if (!localModel.getScores().equals(mergedModel.getScores())) {
+            System.err.println("score maps for storage differ");
+            errors++;
+        }
+        if (errors > 0) {
+            throw new AssertionError(errors + " failed checks of MergedCorrespondenceModel");
+        }
+        System.err.println("Merged and local models agree.");
+    }
+}
@@ -0,0 +1,83 @@
+package de.jdellert.iwsa.data;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import de.jdellert.iwsa.sequence.PhoneticString;
+import de.jdellert.iwsa.sequence.PhoneticSymbolTable;
+
+/**
+ * Small synthetic databases for the tests: for every concept, each language has
+ * one or two forms derived from a common random word by a few substitutions,
+ * insertions and deletions, so that there are cognate candidates as well as
+ * unrelated pairs.
+ */
+public class RandomLexicalDatabase {
+
+    public static PhoneticSymbolTable symbolTable(int numSymbols) {
+        List<String> symbols = new ArrayList<>();
+        for (int i = 0; i < numSymbols; i++) {
+            symbols.add(String.valueOf((char) ('a' + i)));
+        }
+        return new PhoneticSymbolTable(symbols);
+    }
+
+    public static LexicalDatabase create(PhoneticSymbolTable symbolTable, int numLangs, int numConcepts, Random random) {
+        String[] langs = new String[numLangs];
+        for (int i = 0; i < numLangs; i++) {
+            langs[i] = "lang" + i;
+        }
+        String[] concepts = new String[numConcepts];
+        for (int i = 0; i < numConcepts; i++) {
+            concepts[i] = "concept" + i;
+        }
+        LexicalDatabase database = new LexicalDatabase(symbolTable, langs, concepts);
+        for (String concept : concepts) {
+            PhoneticString word = randomString(symbolTable, 2 + random.nextInt(5), random);
+            for (String lang : langs) {
+                int numForms = random.nextInt(4) == 0 ? 2 : 1;
+                for (int k = 0; k < numForms; k++) {
+                    database.addForm(lang, concept, mutate(symbolTable, word, random.nextInt(3), random));
+                }
+            }
+        }
+        return database;
+    }
+
+    public static PhoneticString randomString(PhoneticSymbolTable symbolTable, int length, Random random) {
+        int[] segments = new int[length];
+        for (int i = 0; i < length; i++) {
+            segments[i] = randomSymbol(symbolTable, random);
+        }
+        return new PhoneticString(segments);
+    }
+
+    /**
+     * @return a copy of the string with the given number of random edits, which
+     *         never remove the last segment
+     */
+    public static PhoneticString mutate(PhoneticSymbolTable symbolTable, PhoneticString str, int numEdits,
+            Random random) {
+        List<Integer> segments = new ArrayList<>();
+        for (int segment : str.segments) {
+            segments.add(segment);
+        }
+        for (int k = 0; k < numEdits; k++) {
+            int edit = random.nextInt(3);
+            if (edit == 0 && segments.size() > 1) {
+                segments.remove(random.nextInt(segments.size()));
+            } else if (edit == 1 || segments.isEmpty()) {
+                segments.add(random.nextInt(segments.size() + 1), randomSymbol(symbolTable, random));
+            } else {
+                segments.set(random.nextInt(segments.size()), randomSymbol(symbolTable, random));
+            }
+        }
+        return new PhoneticString(segments.stream().mapToInt(Integer::intValue).toArray());
+    }
+
+    // the IDs 0 and 1 are reserved for the word boundary and the gap
+    private static int randomSymbol(PhoneticSymbolTable symbolTable, Random random) {
+        return 2 + random.nextInt(symbolTable.getSize() - 2);
+    }
+}
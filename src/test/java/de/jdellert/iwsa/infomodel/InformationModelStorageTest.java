@@ -0,0 +1,75 @@
+package de.jdellert.iwsa.infomodel;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+import de.jdellert.iwsa.data.LexicalDatabase;
+import de.jdellert.iwsa.data.RandomLexicalDatabase;
+import de.jdellert.iwsa.sequence.PhoneticSymbolTable;
+
+public class InformationModelStorageTest {
+    public static void main(String[] args) throws IOException, ClassNotFoundException {
+        PhoneticSymbolTable symbolTable = RandomLexicalDatabase.symbolTable(10);
+        LexicalDatabase database = RandomLexicalDatabase.create(symbolTable, 4, 30, new Random(42));
+        InformationModel[] expected = InformationModelInference.inferInformationModels(database, symbolTable);
+        Map<String, Integer> langToID = new TreeMap<String, Integer>();
+        for (int langID = 0; langID < database.getNumLanguages(); langID++) {
+            langToID.put(database.getLanguageCode(langID), langID);
+        }
+        int errors = 0;
+
+        // the models of the first languages, stored before language 3 was added
+        File modelFile = File.createTempFile("iwsa-info", ".models");
+        modelFile.deleteOnExit();
+        InformationModel[] previous = { expected[0], expected[1], expected[2] };
+        InformationModelStorage.serializeInformationModelsToFile(previous, database.getLanguageCodes(), symbolTable,
+                modelFile.getPath());
+        InformationModel[] stored;
+        try (ObjectInputStream in = new ObjectInputStream(new FileInputStream(modelFile))) {
+            stored = InformationModelStorage.deserializeInformationModels(in, langToID);
+        }
+        if (stored.length != 4 || stored[3] != null
+                || InformationModelInference.countMissingInformationModels(database, stored) != 1) {
+            System.err.println("the model of language 3 is not recognized as missing");
+            errors++;
+        }
+        for (int langID = 0; langID < 3; langID++) {
+            if (stored[langID] == null || stored[langID].fingerprint() != expected[langID].fingerprint()) {
+                System.err.println("the stored model of language " + langID + " differs");
+                errors++;
+                continue;
+            }
+            int[] s = database.getForm(database.getFormIDsForLanguage(langID).get(0)).segments;
+            for (int i = 0; i < s.length; i++) {
+                if (Double.compare(stored[langID].informationContent(s, i),
+                        expected[langID].informationContent(s, i)) != 0) {
+                    System.err.println("the stored model of language " + langID + " yields other information contents");
+                    errors++;
+                }
+            }
+        }
+
+        InformationModel[] completed = InformationModelInference.inferMissingInformationModels(database, symbolTable,
+                stored);
+        for (int langID = 0; langID < 4; langID++) {
+            if (langID < 3 && completed[langID] != stored[langID]) {
+                System.err.println("the stored model of language " + langID + " has been replaced");
+                errors++;
+            }
+            if (completed[langID].fingerprint() != expected[langID].fingerprint()) {
+                System.err.println("the completed model of language " + langID + " differs");
+                errors++;
+            }
+        }
+
+        if (errors > 0) {
+            throw new AssertionError(errors + " failed checks of the information model storage");
+        }
+        System.err.println("Stored information models agree with the inferred ones.");
+    }
+}
@@ -0,0 +1,63 @@
+package de.jdellert.iwsa.util.collections;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+public class IntIntHashMapTest {
+    public static void main(String[] args) {
+        Random random = new Random(42);
+        IntIntHashMap map = new IntIntHashMap();
+        Map<Integer, Integer> reference = new HashMap<Integer, Integer>();
+
+        for (int i = 0; i < 200000; i++) {
+            // small key range to get many repeated keys, including the free key 0 and negative keys
+            int key = random.nextInt(20000) - 1000;
+            if (random.nextInt(10) == 0) {
+                int value = random.nextInt();
+                map.put(key, value);
+                reference.put(key, value);
+            } else {
+                map.add(key, 1);
+                reference.merge(key, 1, Integer::sum);
+            }
+        }
+
+        int errors = 0;
+        if (map.size() != reference.size()) {
+            System.err.println("size " + map.size() + " != " + reference.size());
+            errors++;
+        }
+        for (int key = -2000; key < 20000; key++) {
+            Integer expected = reference.get(key);
+            if (map.containsKey(key) != (expected != null) || map.get(key, -1) != (expected == null ? -1 : expected)) {
+                System.err.println("entry for " + key + ": " + map.get(key, -1) + " != " + expected);
+                errors++;
+            }
+        }
+        int[] keys = map.keys();
+        Arrays.sort(keys);
+        if (!Arrays.equals(keys, reference.keySet().stream().mapToInt(Integer::intValue).sorted().toArray())) {
+            System.err.println("key sets differ");
+            errors++;
+        }
+
+        // a map filled by put only, which grows on inserting a new key
+        IntIntHashMap putMap = new IntIntHashMap();
+        for (int key = 1; key <= 1000; key++) {
+            putMap.put(key, -key);
+        }
+        for (int key = 1; key <= 1000; key++) {
+            if (putMap.get(key, 0) != -key) {
+                System.err.println("entry for " + key + " after put: " + putMap.get(key, 0) + " != " + -key);
+                errors++;
+            }
+        }
+
+        if (errors > 0) {
+            throw new AssertionError(errors + " mismatches between IntIntHashMap and HashMap");
+        }
+        System.err.println("IntIntHashMap agrees with HashMap.");
+    }
+}
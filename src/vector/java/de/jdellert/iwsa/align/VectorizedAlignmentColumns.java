@@ -0,0 +1,60 @@
+package de.jdellert.iwsa.align;
+
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * SIMD part of the column update in QueryProfile, based on the incubating
+ * Vector API. Within a column of the alignment matrix, the match and insertion
+ * candidates of all cells only depend on the previous column, so they are
+ * computed and compared in vector lanes; only the deletion candidates, which
+ * chain along the column, remain for a scalar pass.
+ *
+ * This class is kept apart from the main sources so that the default build does
+ * not depend on the incubator module; it is only compiled with the Maven profile
+ * vector-api. QueryProfile instantiates it by reflection if the module
+ * jdk.incubator.vector is present at runtime (e.g. when running with
+ * --add-modules jdk.incubator.vector).
+ */
+final class VectorizedAlignmentColumns implements QueryProfile.ColumnKernel {
+	private static final VectorSpecies<Double> SPECIES = DoubleVector.SPECIES_PREFERRED;
+
+	VectorizedAlignmentColumns() {
+	}
+
+	@Override
+	public int laneCount() {
+		return SPECIES.length();
+	}
+
+	@Override
+	public void matchOrInsertion(double[] prevScores, double[] matchScores, double[] squaredQueryInfoContents,
+			double squaredTargetInfoContent, double insertionScore, int m, double[] scores, boolean[] fromInsertion) {
+		int bound = SPECIES.loopBound(m);
+		int k = 0;
+		for (; k < bound; k += SPECIES.length()) {
+			DoubleVector match = DoubleVector.fromArray(SPECIES, matchScores, k);
+			if (squaredQueryInfoContents != null) {
+				match = match.mul(DoubleVector.fromArray(SPECIES, squaredQueryInfoContents, k)
+						.add(squaredTargetInfoContent).div(2).lanewise(VectorOperators.SQRT));
+			}
+			DoubleVector matchValue = DoubleVector.fromArray(SPECIES, prevScores, k).add(match);
+			DoubleVector insertionValue = DoubleVector.fromArray(SPECIES, prevScores, k + 1).add(insertionScore);
+			VectorMask<Double> insertion = insertionValue.compare(VectorOperators.GT, matchValue);
+			matchValue.blend(insertionValue, insertion).intoArray(scores, k + 1);
+			insertion.intoArray(fromInsertion, k + 1);
+		}
+		for (; k < m; k++) {
+			double matchScore = matchScores[k];
+			if (squaredQueryInfoContents != null) {
+				matchScore *= Math.sqrt((squaredQueryInfoContents[k] + squaredTargetInfoContent) / 2);
+			}
+			double matchValue = prevScores[k] + matchScore;
+			double insertionValue = prevScores[k + 1] + insertionScore;
+			fromInsertion[k + 1] = insertionValue > matchValue;
+			scores[k + 1] = fromInsertion[k + 1] ? insertionValue : matchValue;
+		}
+	}
+}